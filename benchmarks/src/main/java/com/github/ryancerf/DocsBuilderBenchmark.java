@@ -0,0 +1,145 @@
+package com.github.ryancerf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end builds of a generated docs tree.
+ *
+ * <p>Cold runs start from a new {@link DocsBuilder}, so every source file is parsed again. Warm
+ * runs reuse what an earlier build left behind: the snippet cache of the same builder, or the
+ * manifest and snippet index of an incremental build. The OS page cache is warm in every run on disk.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DocsBuilderBenchmark {
+
+  @Param({SyntheticDocsTree.JIMFS, SyntheticDocsTree.DISK})
+  public String fileSystem;
+
+  @Param({"100", "1000"})
+  public int contentFiles;
+
+  @Param({"20"})
+  public int sourceFiles;
+
+  @Param({"10"})
+  public int snippetsPerSourceFile;
+
+  @Param({"20"})
+  public int linesPerSnippet;
+
+  @Param({"1", "4"})
+  public int parallelism;
+
+  @Param({"1", "4"})
+  public int writeParallelism;
+
+  @Param({"1", "4"})
+  public int walkParallelism;
+
+  private SyntheticDocsTree tree;
+  private BuildOptions fullBuild;
+  private BuildOptions incrementalBuild;
+  private DocsBuilder warmDocsBuilder;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    tree =
+        SyntheticDocsTree.create(
+            fileSystem, contentFiles, sourceFiles, snippetsPerSourceFile, linesPerSnippet);
+    fullBuild = options(false);
+    incrementalBuild = options(true);
+    // Leaves a manifest for incrementalBuildWithoutChanges.
+    build(createDocsBuilder(), incrementalBuild);
+    warmDocsBuilder = createDocsBuilder();
+    build(warmDocsBuilder, fullBuild);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    tree.close();
+  }
+
+  @Benchmark
+  public void coldBuild() throws IOException {
+    build(createDocsBuilder(), fullBuild);
+  }
+
+  /** Everything is up to date. Measures hashing inputs and outputs. */
+  @Benchmark
+  public void incrementalBuildWithoutChanges() throws IOException {
+    build(createDocsBuilder(), incrementalBuild);
+  }
+
+  /** What watch-docs does when one source file is saved. */
+  @Benchmark
+  public void warmRebuildOfOneSourceFile() throws IOException {
+    if (!warmDocsBuilder.rebuild(Collections.singletonList(tree.sourceFiles.get(0)))) {
+      throw new IllegalStateException("Rebuild failed");
+    }
+  }
+
+  private BuildOptions options(boolean incremental) {
+    return new BuildOptions.Builder()
+        .incremental(incremental)
+        .manifestPath(tree.root.resolve("target/choss/build-manifest.txt").toString())
+        .indexPath(tree.root.resolve("target/choss/dependency-index.txt").toString())
+        .metricsPath(tree.root.resolve("target/choss/build-metrics.json").toString())
+        .snippetIndexPath(
+            incremental ? tree.root.resolve("target/choss/snippet-index.bin").toString() : "")
+        .parallelism(parallelism)
+        .writeParallelism(writeParallelism)
+        .walkParallelism(walkParallelism)
+        .build();
+  }
+
+  private void build(DocsBuilder docsBuilder, BuildOptions options) throws IOException {
+    boolean successful =
+        docsBuilder.build(
+            tree.contentDirectory.toString(),
+            tree.targetDirectory.toString(),
+            SyntheticDocsTree.CONTENT_GLOB,
+            options);
+    if (!successful) {
+      throw new IllegalStateException("Build failed");
+    }
+  }
+
+  private DocsBuilder createDocsBuilder() {
+    TextFileReader textFileReader = new TextFileReader(StandardCharsets.UTF_8);
+    SnippetDirectiveParser snippetDirectiveParser = new SnippetDirectiveParser(tree.pathFactory);
+    ContentFileParser contentFileParser =
+        new ContentFileParser(snippetDirectiveParser, textFileReader);
+    SnippetCache snippetCache =
+        new SnippetCache(new SourceFileParser(textFileReader), new IndentationFormatter());
+    SnippetInjector snippetInjector = new SnippetInjector(textFileReader);
+    return new DocsBuilder(
+        () -> tree.fileSystem,
+        tree.pathFactory,
+        contentFileParser,
+        snippetCache,
+        snippetInjector,
+        new SilentLog());
+  }
+}
@@ -0,0 +1,109 @@
+package com.github.ryancerf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** The parsers and the indentation formatter on a single generated file. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ParserBenchmark {
+
+  @Param({SyntheticDocsTree.JIMFS, SyntheticDocsTree.DISK})
+  public String fileSystem;
+
+  /** Snippets in the source file, and directives in the content file. */
+  @Param({"10", "100"})
+  public int snippets;
+
+  @Param({"20"})
+  public int linesPerSnippet;
+
+  /** Parse the source file into lazy snippets, which only hold where their lines are. */
+  @Param({"false", "true"})
+  public boolean lazySnippets;
+
+  private SyntheticDocsTree tree;
+  private SourceFileParser sourceFileParser;
+  private ContentFileParser contentFileParser;
+  private SnippetDirectiveParser snippetDirectiveParser;
+  private IndentationFormatter indentationFormatter;
+  private SnippetDirectiveDefinition lastSnippet;
+  private String directiveLine;
+  private String proseLine;
+  private List<String> snippetLines;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    tree = SyntheticDocsTree.create(fileSystem, 1, 1, snippets, linesPerSnippet);
+    TextFileReader textFileReader = new TextFileReader(StandardCharsets.UTF_8);
+    snippetDirectiveParser = new SnippetDirectiveParser(tree.pathFactory);
+    contentFileParser = new ContentFileParser(snippetDirectiveParser, textFileReader);
+    sourceFileParser =
+        new SourceFileParser(textFileReader, lazySnippets ? 0 : SourceFileParser.NEVER_LAZY);
+    indentationFormatter = new IndentationFormatter();
+
+    Path contentFile = tree.contentFiles.get(0);
+    List<SnippetDirectiveDefinition> directives = contentFileParser.parse(contentFile).getResult();
+    // The parser reads the whole file to find the last snippet.
+    lastSnippet = directives.get(directives.size() - 1);
+    directiveLine = " @@snip [snippet_0](" + tree.sourceFiles.get(0) + ")";
+    proseLine = "Some prose that explains snippet 0. It is long enough to look like docs.";
+    snippetLines =
+        sourceFileParser.extractSnippetBlocks(lastSnippet).getResult().get(0).getLines();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    tree.close();
+  }
+
+  @Benchmark
+  public void extractSnippetBlocks(Blackhole blackhole) {
+    blackhole.consume(sourceFileParser.extractSnippetBlocks(lastSnippet));
+  }
+
+  @Benchmark
+  public void parseContentFile(Blackhole blackhole) {
+    blackhole.consume(contentFileParser.parse(tree.contentFiles.get(0)));
+  }
+
+  @Benchmark
+  public void createFromDirectiveLine(Blackhole blackhole) {
+    blackhole.consume(snippetDirectiveParser.createFromLine(directiveLine, 1, tree.root));
+  }
+
+  /** Most lines of a content file are not directives. */
+  @Benchmark
+  public void createFromProseLine(Blackhole blackhole) {
+    blackhole.consume(snippetDirectiveParser.createFromLine(proseLine, 1, tree.root));
+  }
+
+  @Benchmark
+  public void normalizeIndentation(Blackhole blackhole) {
+    // The formatter changes the lines it is given.
+    blackhole.consume(indentationFormatter.normalizeIndentation(new ArrayList<>(snippetLines)));
+  }
+}
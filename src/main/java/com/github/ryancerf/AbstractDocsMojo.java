@@ -0,0 +1,419 @@
+package com.github.ryancerf;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.function.Function;
+
+/**
+ * Configuration and wiring shared by the goals that build docs.
+ *
+ * <p>Goals are thread safe, so modules can build their docs in parallel under mvn -T. Relative
+ * paths are resolved against the directory of the module, never the working directory.
+ */
+public abstract class AbstractDocsMojo extends AbstractMojo {
+  // Parsed source files of every running Maven session, by charset and lazy snippet threshold.
+  // Shared by every module of the session. Weak keys, so a finished session can be collected.
+  private static final Map<MavenSession, Map<String, ParsedSourceFiles>> PARSED_SOURCE_FILES =
+      new WeakHashMap<>();
+
+  @Parameter(defaultValue = "${session}", readonly = true)
+  private MavenSession session;
+
+  @Parameter(defaultValue = "${project.basedir}", readonly = true)
+  private File basedir;
+
+  @Parameter(property = "build-docs.docsSourceDirectory", defaultValue = "./docs/main/")
+  private String docsSourceDirectory;
+
+  @Parameter(property = "build-docs.docsTargetDirectory", defaultValue = "./target/docs/main/")
+  private String docsTargetDirectory;
+
+  @Parameter(property = "build-docs.contentGlob", defaultValue = "glob:**/*.md")
+  private String contentGlob;
+
+  /**
+   * Patterns of the files to build, relative to docsSourceDirectory, such as '**&#47;*.md'.
+   * Everything if empty.
+   */
+  @Parameter(property = "build-docs.includes")
+  private List<String> includes;
+
+  /**
+   * Patterns of the paths to leave out, relative to docsSourceDirectory, such as 'vendor' or
+   * '**&#47;node_modules'. Excluded directories are never walked, and are kept when the target
+   * directory is emptied.
+   */
+  @Parameter(property = "build-docs.excludes")
+  private List<String> excludes;
+
+  @Parameter(property = "build-docs.incremental", defaultValue = "false")
+  private boolean incremental;
+
+  /**
+   * Keep the target directory, write an output only if its bytes changed and delete only outputs
+   * whose file no longer exists, so unchanged outputs keep their modified time.
+   */
+  @Parameter(property = "build-docs.sync", defaultValue = "false")
+  private boolean sync;
+
+  @Parameter(
+      property = "build-docs.manifestFile",
+      defaultValue = BuildOptions.DEFAULT_MANIFEST_PATH)
+  private String manifestFile;
+
+  /** Which content files reference which source files. Saved by every successful build. */
+  @Parameter(property = "build-docs.indexFile", defaultValue = BuildOptions.DEFAULT_INDEX_PATH)
+  private String indexFile;
+
+  /**
+   * Snippets of the parsed source files, so the next invocation does not parse unchanged files
+   * again. Set to an empty string to not save them.
+   */
+  @Parameter(
+      property = "build-docs.snippetIndexFile",
+      defaultValue = BuildOptions.DEFAULT_SNIPPET_INDEX_PATH)
+  private String snippetIndexFile;
+
+  /** JSON report of where a build spent its time. Set to an empty string to not write one. */
+  @Parameter(
+      property = "build-docs.metricsFile",
+      defaultValue = BuildOptions.DEFAULT_METRICS_PATH)
+  private String metricsFile;
+
+  @Parameter(property = "build-docs.parallelism", defaultValue = "1")
+  private int parallelism;
+
+  /**
+   * Number of directories listed at once when walking the docs. Helps most on network and overlay
+   * file systems, where listing a directory is slow.
+   */
+  @Parameter(property = "build-docs.walkParallelism", defaultValue = "1")
+  private int walkParallelism;
+
+  /** Number of threads that write outputs. Helps most on network and container file systems. */
+  @Parameter(property = "build-docs.writeParallelism", defaultValue = "1")
+  private int writeParallelism;
+
+  /** Most outputs queued or being written at once when writeParallelism is above 1. */
+  @Parameter(property = "build-docs.maxInFlightWrites", defaultValue = "64")
+  private int maxInFlightWrites;
+
+  /**
+   * How files that are not content files are written: copy, skip-unchanged, transfer, hard-link or
+   * symbolic-link. skip-unchanged needs incremental or sync, which keep the target directory.
+   */
+  @Parameter(property = "build-docs.assetStrategy", defaultValue = "copy")
+  private String assetStrategy;
+
+  /**
+   * Source files of at least this many bytes keep only where their snippets are, and read the
+   * lines of a snippet when it is injected. -1 keeps every snippet in memory.
+   */
+  @Parameter(property = "build-docs.lazySnippetThreshold", defaultValue = "-1")
+  private long lazySnippetThreshold;
+
+  /**
+   * Approximate heap size in bytes of the parsed snippets kept during a build. Above it the least
+   * recently used source files are evicted, and parsed again if they are needed. -1 keeps every
+   * source file. Combine with lazySnippetThreshold so that the snippet index stays small too.
+   */
+  @Parameter(property = "build-docs.snippetMemoryBudget", defaultValue = "-1")
+  private long snippetMemoryBudget;
+
+  /**
+   * Ask the daemon started by the docs-daemon goal to build, and build in process if there is no
+   * daemon for these docs directories.
+   */
+  @Parameter(property = "build-docs.useDaemon", defaultValue = "false")
+  private boolean useDaemon;
+
+  /** Where the docs daemon writes its port, and where clients look for it. */
+  @Parameter(property = "build-docs.daemonFile", defaultValue = "./target/choss/daemon.properties")
+  private String daemonFile;
+
+  /**
+   * Comment starts of snippet tags by file extension, comma separated, such as
+   * &lt;yaml&gt;#&lt;/yaml&gt; or &lt;sql&gt;--&lt;/sql&gt;. Replace the built in ones of the
+   * extension, '//' included. Files with other extensions use '//'.
+   */
+  @Parameter
+  private Map<String, String> commentSyntaxes;
+
+  /** Charset of content and source files. Outputs are written in the same charset. */
+  @Parameter(property = "build-docs.encoding", defaultValue = "${project.build.sourceEncoding}")
+  private String encoding;
+
+  DocsBuilder createDocsBuilder() throws MojoExecutionException {
+    return createDocsBuilder(getLog());
+  }
+
+  DocsBuilder createDocsBuilder(Log log) throws MojoExecutionException {
+    // Do DI manually, Do not want the bloat of a framework.
+    Function<String, Path> pathFactory = pathFactory();
+    // A mapped file stays mapped until it is garbage collected, which long running goals may not
+    // do for a long time. See TextFileReader.
+    TextFileReader textFileReader =
+        new TextFileReader(
+            charset(),
+            keepsRunning() ? TextFileReader.NEVER_MAP : TextFileReader.DEFAULT_MAPPING_THRESHOLD);
+    SnippetDirectiveParser snippetDirectiveParser = new SnippetDirectiveParser(pathFactory);
+    ContentFileParser contentFileParser =
+        new ContentFileParser(snippetDirectiveParser, textFileReader);
+    SnippetCache snippetCache =
+        new SnippetCache(
+            parsedSourceFiles(textFileReader, commentSyntaxes()),
+            snippetMemoryBudget < 0 ? SnippetCache.UNBOUNDED : snippetMemoryBudget);
+    SnippetInjector snippetInjector = new SnippetInjector(textFileReader);
+
+    return new DocsBuilder(
+        FileSystems::getDefault,
+        pathFactory,
+        contentFileParser,
+        snippetCache,
+        snippetInjector,
+        log);
+  }
+
+  /** True for goals that keep running and build again, such as watch-docs. */
+  boolean keepsRunning() {
+    return false;
+  }
+
+  /** Resolves relative paths against the directory of the module. */
+  Function<String, Path> pathFactory() {
+    return pathFactory(basedir);
+  }
+
+  /**
+   * Resolves relative paths, those of parameters and of snippet directives alike, against {@code
+   * basedir}, or the working directory if it is null.
+   */
+  static Function<String, Path> pathFactory(File basedir) {
+    if (basedir == null) {
+      return s -> Paths.get(s);
+    }
+    Path base = basedir.toPath();
+    return s -> base.resolve(s).normalize();
+  }
+
+  /**
+   * The parsed source files shared by every module of the session that uses the same charset,
+   * mapping threshold, lazy snippet threshold and comment syntaxes.
+   */
+  private ParsedSourceFiles parsedSourceFiles(
+      TextFileReader textFileReader, CommentSyntaxes commentSyntaxes) {
+    long threshold = lazySnippetThreshold < 0 ? SourceFileParser.NEVER_LAZY : lazySnippetThreshold;
+    Function<String, ParsedSourceFiles> create =
+        key ->
+            new ParsedSourceFiles(
+                new SourceFileParser(textFileReader, threshold, commentSyntaxes),
+                new IndentationFormatter());
+    String key =
+        textFileReader.getCharset().name()
+            + "/"
+            + textFileReader.getMappingThreshold()
+            + "/"
+            + threshold
+            + "/"
+            + commentSyntaxes;
+    if (session == null) {
+      return create.apply(key);
+    }
+    synchronized (PARSED_SOURCE_FILES) {
+      return PARSED_SOURCE_FILES
+          .computeIfAbsent(session, k -> new HashMap<>())
+          .computeIfAbsent(key, create);
+    }
+  }
+
+  BuildOptions createBuildOptions() throws MojoExecutionException {
+    try {
+      return new BuildOptions.Builder()
+          .incremental(this.incremental)
+          .sync(this.sync)
+          .includes(this.includes)
+          .excludes(this.excludes)
+          .manifestPath(this.manifestFile)
+          .indexPath(this.indexFile)
+          .metricsPath(this.metricsFile)
+          .snippetIndexPath(this.snippetIndexFile)
+          .parallelism(this.parallelism)
+          .walkParallelism(this.walkParallelism)
+          .writeParallelism(this.writeParallelism)
+          .maxInFlightWrites(this.maxInFlightWrites)
+          .assetStrategy(AssetStrategy.parse(this.assetStrategy))
+          .build();
+    } catch (IllegalArgumentException e) {
+      throw new MojoExecutionException(e.getMessage(), e);
+    }
+  }
+
+  /** Run a full build. Returns false if there were build errors, they have been logged. */
+  boolean build(DocsBuilder docsBuilder) throws MojoExecutionException {
+    BuildOptions options = createBuildOptions();
+    try {
+      return docsBuilder.build(
+          this.docsSourceDirectory, this.docsTargetDirectory, this.contentGlob, options);
+    } catch (IOException e) {
+      throw new MojoExecutionException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Build only the docs the changed paths affect, and keep the rest of the target directory.
+   * Returns false if there were build errors, they have been logged.
+   */
+  boolean buildChanged(DocsBuilder docsBuilder, List<Path> changedPaths)
+      throws MojoExecutionException {
+    DependencyIndex index = loadOrCreateDependencyIndex(docsBuilder);
+    try {
+      return docsBuilder.buildChanged(
+          this.docsSourceDirectory,
+          this.docsTargetDirectory,
+          this.contentGlob,
+          createBuildOptions(),
+          index,
+          changedPaths);
+    } catch (IOException e) {
+      throw new MojoExecutionException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Paths of changed files, from a list, a file with one path per line, and the git working tree.
+   * Ordered and without duplicates.
+   *
+   * @param changedSince a git revision to compare the working tree with. Ignored if empty.
+   */
+  List<Path> readChangedPaths(
+      List<String> changedFiles, String changedFilesList, String changedSince)
+      throws MojoExecutionException {
+    Function<String, Path> pathFactory = pathFactory();
+    // Ordered and without duplicates, so every change is logged once.
+    Set<Path> changedPaths = new LinkedHashSet<>();
+    List<String> paths = new ArrayList<>();
+    if (changedFiles != null) {
+      paths.addAll(changedFiles);
+    }
+    if (changedFilesList != null && !changedFilesList.isEmpty()) {
+      try {
+        paths.addAll(
+            Files.readAllLines(pathFactory.apply(changedFilesList), StandardCharsets.UTF_8));
+      } catch (IOException e) {
+        throw new MojoExecutionException("Could not read changed files: " + changedFilesList, e);
+      }
+    }
+    for (String path : paths) {
+      if (!path.trim().isEmpty()) {
+        changedPaths.add(pathFactory.apply(path.trim()));
+      }
+    }
+    if (changedSince != null && !changedSince.isEmpty()) {
+      try {
+        changedPaths.addAll(GitChanges.changedSince(pathFactory.apply("."), changedSince));
+      } catch (IOException e) {
+        throw new MojoExecutionException(
+            "Could not find the files changed since " + changedSince + ": " + e.getMessage(), e);
+      }
+    }
+    return new ArrayList<>(changedPaths);
+  }
+
+  /**
+   * The dependency index saved by the last build, or a new one if there is none for this docs
+   * source directory and content glob.
+   */
+  DependencyIndex loadOrCreateDependencyIndex(DocsBuilder docsBuilder)
+      throws MojoExecutionException {
+    Function<String, Path> pathFactory = pathFactory();
+    Optional<DependencyIndex> savedIndex =
+        DependencyIndex.load(
+            pathFactory.apply(this.indexFile),
+            this.docsSourceDirectory,
+            this.contentGlob,
+            pathFactory);
+    if (savedIndex.isPresent()) {
+      getLog().info("Using dependency index: " + this.indexFile);
+      return savedIndex.get();
+    }
+    getLog().info("No dependency index found, scanning: " + this.docsSourceDirectory);
+    try {
+      return docsBuilder.indexContentFiles(
+          this.docsSourceDirectory, this.contentGlob, createBuildOptions());
+    } catch (IOException e) {
+      throw new MojoExecutionException(e.getMessage(), e);
+    }
+  }
+
+  boolean isUseDaemon() {
+    return useDaemon;
+  }
+
+  Path daemonFile() {
+    return pathFactory().apply(daemonFile);
+  }
+
+  /** The docs directories a daemon must build to serve this goal. */
+  String daemonProject() {
+    Function<String, Path> pathFactory = pathFactory();
+    return DocsDaemon.project(
+        pathFactory.apply(docsSourceDirectory), pathFactory.apply(docsTargetDirectory));
+  }
+
+  /** The options a daemon must build with to serve this goal. */
+  String daemonSettings() throws MojoExecutionException {
+    return DocsDaemon.settings(
+        contentGlob,
+        createBuildOptions(),
+        charset(),
+        commentSyntaxes(),
+        lazySnippetThreshold,
+        snippetMemoryBudget);
+  }
+
+  String getDocsSourceDirectory() {
+    return docsSourceDirectory;
+  }
+
+  private CommentSyntaxes commentSyntaxes() throws MojoExecutionException {
+    if (commentSyntaxes == null || commentSyntaxes.isEmpty()) {
+      return CommentSyntaxes.DEFAULT;
+    }
+    try {
+      return new CommentSyntaxes(commentSyntaxes);
+    } catch (IllegalArgumentException e) {
+      throw new MojoExecutionException(e.getMessage(), e);
+    }
+  }
+
+  private Charset charset() throws MojoExecutionException {
+    if (encoding == null || encoding.isEmpty()) {
+      return StandardCharsets.UTF_8;
+    }
+    try {
+      return Charset.forName(encoding);
+    } catch (IllegalArgumentException e) {
+      throw new MojoExecutionException("Unsupported encoding: " + encoding, e);
+    }
+  }
+}
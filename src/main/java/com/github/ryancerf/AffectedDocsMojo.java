@@ -0,0 +1,90 @@
+package com.github.ryancerf;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Lists the docs affected by a set of changed files, without building them.
+ *
+ * <p>A doc is affected if it changed itself, or if it references a snippet in a changed source
+ * file. Uses the dependency index saved by the last build, or scans the content files if there is
+ * none.
+ */
+@Mojo(name = "affected-docs", threadSafe = true)
+public class AffectedDocsMojo extends AbstractDocsMojo {
+
+  /** Comma separated paths of changed files. */
+  @Parameter(property = "build-docs.changedFiles")
+  private List<String> changedFiles;
+
+  /** File with the paths of changed files, one per line. For example the output of git diff. */
+  @Parameter(property = "build-docs.changedFilesList")
+  private String changedFilesList;
+
+  /**
+   * Git revision, such as HEAD, to compare the working tree with. The files that differ, and
+   * untracked files, are changed files too. Reads the local repository only.
+   */
+  @Parameter(property = "build-docs.changedSince")
+  private String changedSince;
+
+  /** If set, the affected docs are written to this file, one per line. */
+  @Parameter(property = "build-docs.affectedDocsFile")
+  private String affectedDocsFile;
+
+  @Override
+  public void execute() throws MojoExecutionException, MojoFailureException {
+    Function<String, Path> pathFactory = pathFactory();
+    DependencyIndex index = loadOrCreateDependencyIndex(createDocsBuilder());
+    List<Path> changedPaths = readChangedPaths(changedFiles, changedFilesList, changedSince);
+
+    for (Path changedPath : changedPaths) {
+      for (Map.Entry<String, List<SnippetDirectiveDefinition>> entry :
+          index.getReferences(changedPath).entrySet()) {
+        for (SnippetDirectiveDefinition reference : entry.getValue()) {
+          getLog()
+              .info(
+                  changedPath
+                      + " tag: "
+                      + entry.getKey()
+                      + " is referenced by: "
+                      + reference.getDefinitionPath()
+                      + " line: "
+                      + reference.getLineNumber());
+        }
+      }
+    }
+
+    Set<Path> affectedDocs =
+        index.getAffectedFiles(changedPaths, pathFactory.apply(getDocsSourceDirectory()));
+    getLog().info(affectedDocs.size() + " affected docs");
+    List<String> lines = new ArrayList<>();
+    for (Path affectedDoc : affectedDocs) {
+      getLog().info("Affected: " + affectedDoc);
+      lines.add(affectedDoc.toString());
+    }
+    if (affectedDocsFile != null && !affectedDocsFile.isEmpty()) {
+      try {
+        Path path = pathFactory.apply(affectedDocsFile);
+        if (path.getParent() != null) {
+          Files.createDirectories(path.getParent());
+        }
+        Files.write(path, lines, StandardCharsets.UTF_8);
+      } catch (IOException e) {
+        throw new MojoExecutionException(e.getMessage(), e);
+      }
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package com.github.ryancerf;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+import static java.nio.file.StandardCopyOption.COPY_ATTRIBUTES;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/** Writes files that are not content files, such as images, to the target directory. */
+class AssetCopier {
+  /** What happened to a single file. */
+  enum Outcome {
+    COPIED,
+    LINKED,
+    SKIPPED,
+    // Never returned by the copier. The output already had the same bytes, see BuildOptions#isSync.
+    UNCHANGED
+  }
+
+  private final AssetStrategy strategy;
+
+  AssetCopier(AssetStrategy strategy) {
+    this.strategy = strategy;
+  }
+
+  Outcome copy(Path source, Path destination) throws IOException {
+    switch (strategy) {
+      case SKIP_UNCHANGED:
+        // A link at the destination is replaced by a copy, rather than compared to its target.
+        if (Files.isRegularFile(destination, NOFOLLOW_LINKS)
+            && FileHashes.statFingerprint(source)
+                .equals(FileHashes.statFingerprint(destination, NOFOLLOW_LINKS))) {
+          return Outcome.SKIPPED;
+        }
+        Files.copy(source, destination, REPLACE_EXISTING, COPY_ATTRIBUTES);
+        return Outcome.COPIED;
+      case TRANSFER:
+        transfer(source, destination);
+        return Outcome.COPIED;
+      case HARD_LINK:
+      case SYMBOLIC_LINK:
+        return link(source, destination);
+      case COPY:
+      default:
+        Files.copy(source, destination, REPLACE_EXISTING);
+        return Outcome.COPIED;
+    }
+  }
+
+  /**
+   * True if incremental builds can compare {@link FileHashes#statFingerprint} instead of hashing
+   * files that are not content files.
+   */
+  boolean comparesStat() {
+    return strategy == AssetStrategy.SKIP_UNCHANGED;
+  }
+
+  private static void transfer(Path source, Path destination) throws IOException {
+    // The output may be a link to a file in the docs directory. Never write through it.
+    Files.deleteIfExists(destination);
+    try (FileChannel in = FileChannel.open(source, READ);
+        FileChannel out = FileChannel.open(destination, WRITE, CREATE_NEW)) {
+      long size = in.size();
+      long position = 0;
+      while (position < size) {
+        long transferred = in.transferTo(position, size - position, out);
+        if (transferred <= 0) {
+          // The file shrank while it was copied.
+          break;
+        }
+        position += transferred;
+      }
+    }
+  }
+
+  private Outcome link(Path source, Path destination) throws IOException {
+    Files.deleteIfExists(destination);
+    try {
+      if (strategy == AssetStrategy.HARD_LINK) {
+        Files.createLink(destination, source);
+      } else {
+        Files.createSymbolicLink(destination, source.toAbsolutePath());
+      }
+      return Outcome.LINKED;
+    } catch (UnsupportedOperationException | FileSystemException e) {
+      // E.g. the target directory is on another device, or the user may not create symlinks.
+      Files.copy(source, destination, REPLACE_EXISTING);
+      return Outcome.COPIED;
+    }
+  }
+}
@@ -0,0 +1,33 @@
+package com.github.ryancerf;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/** How files that are not content files are written to the target directory. */
+enum AssetStrategy {
+  /** Copy the file on every build. */
+  COPY,
+  /**
+   * Copy the file keeping its modified time, unless the output already has the same size and
+   * modified time. Incremental builds compare those instead of hashing the file. Only skips
+   * anything with {@link BuildOptions#isIncremental()} or {@link BuildOptions#isSync()}, otherwise
+   * the target directory is emptied first.
+   */
+  SKIP_UNCHANGED,
+  /** Copy the file with {@link java.nio.channels.FileChannel#transferTo}. */
+  TRANSFER,
+  /** Hard link the output to the file. Falls back to copying if the file system cannot. */
+  HARD_LINK,
+  /** Symbolic link the output to the file. Falls back to copying if the file system cannot. */
+  SYMBOLIC_LINK;
+
+  /** Parse 'hard-link', 'HARD_LINK' and the like. */
+  static AssetStrategy parse(String name) {
+    try {
+      return valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(
+          "Unknown asset strategy: " + name + ". Expected one of: " + Arrays.toString(values()), e);
+    }
+  }
+}
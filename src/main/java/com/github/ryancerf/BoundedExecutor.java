@@ -0,0 +1,113 @@
+package com.github.ryancerf;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a batch of tasks on a fixed number of threads, with at most {@code maxInFlight} tasks
+ * submitted and not finished at any time.
+ *
+ * <p>Results are returned in the order of the tasks. Every task runs even if another one fails.
+ * The failure of the first failing task, in task order, is thrown with the failures of later tasks
+ * suppressed, so the error reported does not depend on thread scheduling. With a parallelism of 1
+ * the tasks run on the calling thread, and the first failure stops the batch.
+ */
+final class BoundedExecutor {
+  private final int parallelism;
+  private final int maxInFlight;
+  private final String threadNamePrefix;
+
+  BoundedExecutor(int parallelism, int maxInFlight, String threadNamePrefix) {
+    this.parallelism = parallelism;
+    this.maxInFlight = maxInFlight;
+    this.threadNamePrefix = threadNamePrefix;
+  }
+
+  <T> List<T> runAll(List<Callable<T>> tasks) throws IOException {
+    List<T> results = new ArrayList<>(tasks.size());
+    if (parallelism <= 1 || tasks.size() <= 1) {
+      for (Callable<T> task : tasks) {
+        try {
+          results.add(task.call());
+        } catch (Exception e) {
+          throw rethrow(e);
+        }
+      }
+      return results;
+    }
+
+    ExecutorService executor =
+        Executors.newFixedThreadPool(
+            Math.min(parallelism, tasks.size()), daemonThreads(threadNamePrefix));
+    Semaphore inFlight = new Semaphore(maxInFlight);
+    try {
+      List<Future<T>> futures = new ArrayList<>(tasks.size());
+      for (Callable<T> task : tasks) {
+        inFlight.acquire();
+        futures.add(
+            executor.submit(
+                () -> {
+                  try {
+                    return task.call();
+                  } finally {
+                    inFlight.release();
+                  }
+                }));
+      }
+      Throwable failure = null;
+      for (Future<T> future : futures) {
+        try {
+          results.add(future.get());
+        } catch (ExecutionException e) {
+          if (failure == null) {
+            failure = e.getCause();
+          } else {
+            failure.addSuppressed(e.getCause());
+          }
+          results.add(null);
+        }
+      }
+      if (failure != null) {
+        throw rethrow(failure);
+      }
+      return results;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while running " + threadNamePrefix + " tasks", e);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /** Daemon threads, so a failed build can never keep the JVM alive. */
+  static ThreadFactory daemonThreads(String threadNamePrefix) {
+    AtomicInteger count = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, threadNamePrefix + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  private static IOException rethrow(Throwable failure) {
+    if (failure instanceof IOException) {
+      return (IOException) failure;
+    }
+    if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    }
+    if (failure instanceof Error) {
+      throw (Error) failure;
+    }
+    throw new IllegalStateException(failure.getMessage(), failure);
+  }
+}
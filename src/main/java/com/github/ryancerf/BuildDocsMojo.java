@@ -1,57 +1,87 @@
 package com.github.ryancerf;
 
-import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 
-import java.io.IOException;
-import java.nio.file.FileSystems;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.function.Function;
+import java.util.List;
+import java.util.Optional;
 
-@Mojo(name = "build-docs")
-public class BuildDocsMojo extends AbstractMojo {
+@Mojo(name = "build-docs", threadSafe = true)
+public class BuildDocsMojo extends AbstractDocsMojo {
 
-  @Parameter(property = "build-docs.docsSourceDirectory", defaultValue = "./docs/main/")
-  private String docsSourceDirectory;
+  /**
+   * Comma separated paths of changed files. If set, only the docs they affect are built, and the
+   * rest of the target directory is kept.
+   */
+  @Parameter(property = "build-docs.changedFiles")
+  private List<String> changedFiles;
 
-  @Parameter(property = "build-docs.docsTargetDirectory", defaultValue = "./target/docs/main/")
-  private String docsTargetDirectory;
+  /** File with the paths of changed files, one per line. Same as changedFiles. */
+  @Parameter(property = "build-docs.changedFilesList")
+  private String changedFilesList;
 
-  @Parameter(property = "build-docs.contentGlob", defaultValue = "glob:**/*.md")
-  private String contentGlob;
+  /**
+   * Git revision, such as HEAD, to compare the working tree with. If set, only the docs affected
+   * by the files that differ, and by untracked files, are built. Reads the local repository only.
+   */
+  @Parameter(property = "build-docs.changedSince")
+  private String changedSince;
 
   @Override
   public void execute() throws MojoExecutionException, MojoFailureException {
-    // Do DI manually, Do not want the bloat of a framework.
-    Function<String, Path> pathFactory = s -> Paths.get(s);
-    SnippetDirectiveParser snippetDirectiveParser = new SnippetDirectiveParser(pathFactory);
-    ContentFileParser contentFileParser = new ContentFileParser(snippetDirectiveParser);
-    SourceFileParser sourceFileParser = new SourceFileParser();
-    SnippetCache snippetCache = new SnippetCache(sourceFileParser);
-    IndentationFormatter indentationFormatter = new IndentationFormatter();
-    SnippetInjector snippetInjector = new SnippetInjector(snippetDirectiveParser, indentationFormatter);
-
-    DocsBuilder docsBuilder =
-        new DocsBuilder(
-            FileSystems::getDefault,
-            pathFactory,
-            contentFileParser,
-            snippetCache,
-            snippetInjector,
-            getLog());
-
-    try {
-      boolean success =
-          docsBuilder.build(this.docsSourceDirectory, this.docsTargetDirectory, this.contentGlob);
-      if (!success) {
-        throw new MojoExecutionException("Failed to Build Docs. See errors above for more details");
+    if (isChangedOnly()) {
+      List<Path> changedPaths = readChangedPaths(changedFiles, changedFilesList, changedSince);
+      if (!buildChanged(createDocsBuilder(), changedPaths)) {
+        throw new MojoExecutionException(
+            "Failed to Build Docs. See errors above for more details");
       }
-    } catch (IOException e) {
-      throw new MojoExecutionException(e.getMessage(), e);
+      return;
+    }
+    if (isUseDaemon()) {
+      Optional<Boolean> success =
+          DocsDaemonClient.build(
+              daemonFile(), daemonProject(), daemonSettings(), this::logDaemonLine);
+      if (success.isPresent()) {
+        if (!success.get()) {
+          throw new MojoExecutionException(
+              "Failed to Build Docs. See errors above for more details");
+        }
+        return;
+      }
+      getLog()
+          .info(
+              "No docs daemon running for "
+                  + getDocsSourceDirectory()
+                  + " with these options, building here");
+    }
+    DocsBuilder docsBuilder = createDocsBuilder();
+    if (!build(docsBuilder)) {
+      throw new MojoExecutionException("Failed to Build Docs. See errors above for more details");
+    }
+  }
+
+  private boolean isChangedOnly() {
+    return (changedFiles != null && !changedFiles.isEmpty())
+        || (changedFilesList != null && !changedFilesList.isEmpty())
+        || (changedSince != null && !changedSince.isEmpty());
+  }
+
+  private void logDaemonLine(String level, String line) {
+    switch (level) {
+      case "DEBUG":
+        getLog().debug(line);
+        break;
+      case "WARN":
+        getLog().warn(line);
+        break;
+      case "ERROR":
+        getLog().error(line);
+        break;
+      default:
+        getLog().info(line);
     }
   }
 }
@@ -23,6 +23,14 @@ abstract class BuildError {
       this.lineNumbers = lineNumbers;
     }
 
+    SnippetDirective getDirective() {
+      return directive;
+    }
+
+    List<Integer> getLineNumbers() {
+      return lineNumbers;
+    }
+
     @Override
     public String toString() {
       return "Tag: "
@@ -0,0 +1,196 @@
+package com.github.ryancerf;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Record of a previous build used by incremental builds.
+ *
+ * <p>Stores the content hash of every copied file, of every source file referenced by a snippet
+ * directive and of every output written. A file only needs to be rendered again when one of those
+ * hashes changed. Outputs rendered with other settings, see {@link #settings}, are all rebuilt.
+ *
+ * <p>Stored as a tab separated text file:
+ *
+ * <pre>
+ * choss-manifest   2   target_directory   content_glob   settings
+ * S   source_path   source_hash
+ * F   relative_path   input_hash   output_hash   referenced_source_path...
+ * </pre>
+ */
+class BuildManifest {
+  private static final String HEADER = "choss-manifest";
+  private static final String VERSION = "2";
+  private static final String SOURCE = "S";
+  private static final String FILE = "F";
+
+  private final String targetDirectory;
+  private final String contentGlob;
+  private final String settings;
+  // Sorted so that the manifest on disk is stable between builds.
+  private final Map<String, String> sourceHashes = new TreeMap<>();
+  private final Map<String, Entry> entries = new TreeMap<>();
+
+  BuildManifest(String targetDirectory, String contentGlob, String settings) {
+    this.targetDirectory = targetDirectory;
+    this.contentGlob = contentGlob;
+    this.settings = settings;
+  }
+
+  /**
+   * The settings outputs are rendered with, other than the options of the build. A hash, as the
+   * comment syntaxes table is long.
+   */
+  static String settings(Charset charset, CommentSyntaxes commentSyntaxes) {
+    String description = "charset=" + charset.name() + " commentSyntaxes=" + commentSyntaxes;
+    return FileHashes.toHex(
+        FileHashes.newDigest().digest(description.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  /**
+   * Load the manifest written by a previous build.
+   *
+   * <p>Returns an empty manifest if there is no manifest, it cannot be read, or it was written for
+   * a different target directory, content glob or settings. In all those cases every file is
+   * rebuilt.
+   */
+  static BuildManifest load(
+      Path path, String targetDirectory, String contentGlob, String settings) {
+    BuildManifest manifest = new BuildManifest(targetDirectory, contentGlob, settings);
+    if (!Files.isRegularFile(path)) {
+      return manifest;
+    }
+    try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+      String[] header = split(reader.readLine());
+      if (header.length != 5
+          || !HEADER.equals(header[0])
+          || !VERSION.equals(header[1])
+          || !targetDirectory.equals(header[2])
+          || !contentGlob.equals(header[3])
+          || !settings.equals(header[4])) {
+        return new BuildManifest(targetDirectory, contentGlob, settings);
+      }
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] columns = split(line);
+        if (SOURCE.equals(columns[0]) && columns.length == 3) {
+          manifest.sourceHashes.put(columns[1], columns[2]);
+        } else if (FILE.equals(columns[0]) && columns.length >= 4) {
+          manifest.entries.put(
+              columns[1],
+              new Entry(
+                  columns[2],
+                  columns[3],
+                  Arrays.asList(Arrays.copyOfRange(columns, 4, columns.length))));
+        } else {
+          return new BuildManifest(targetDirectory, contentGlob, settings);
+        }
+      }
+    } catch (IOException e) {
+      return new BuildManifest(targetDirectory, contentGlob, settings);
+    }
+    return manifest;
+  }
+
+  void save(Path path) throws IOException {
+    if (path.getParent() != null) {
+      Files.createDirectories(path.getParent());
+    }
+    try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+      writeLine(writer, HEADER, VERSION, targetDirectory, contentGlob, settings);
+      for (Map.Entry<String, String> source : sourceHashes.entrySet()) {
+        writeLine(writer, SOURCE, source.getKey(), source.getValue());
+      }
+      for (Map.Entry<String, Entry> file : entries.entrySet()) {
+        List<String> columns = new ArrayList<>();
+        columns.add(FILE);
+        columns.add(file.getKey());
+        columns.add(file.getValue().inputHash);
+        columns.add(file.getValue().outputHash);
+        columns.addAll(file.getValue().referencedSources);
+        writeLine(writer, columns.toArray(new String[0]));
+      }
+    }
+  }
+
+  Entry getEntry(String relativePath) {
+    return entries.get(relativePath);
+  }
+
+  Map<String, Entry> getEntries() {
+    return Collections.unmodifiableMap(entries);
+  }
+
+  void putEntry(String relativePath, Entry entry) {
+    entries.put(relativePath, entry);
+  }
+
+  String getSourceHash(String sourcePath) {
+    return sourceHashes.get(sourcePath);
+  }
+
+  void putSourceHash(String sourcePath, String hash) {
+    sourceHashes.put(sourcePath, hash);
+  }
+
+  private static String[] split(String line) {
+    return line == null ? new String[0] : line.split("\t", -1);
+  }
+
+  private static void writeLine(BufferedWriter writer, String... columns) throws IOException {
+    writer.write(String.join("\t", columns));
+    writer.newLine();
+  }
+
+  /** A single file copied from the docs source directory to the target directory. */
+  static class Entry {
+    private final String inputHash;
+    private final String outputHash;
+    private final List<String> referencedSources;
+
+    Entry(String inputHash, String outputHash, List<String> referencedSources) {
+      this.inputHash = inputHash;
+      this.outputHash = outputHash;
+      this.referencedSources = referencedSources;
+    }
+
+    String getInputHash() {
+      return inputHash;
+    }
+
+    String getOutputHash() {
+      return outputHash;
+    }
+
+    List<String> getReferencedSources() {
+      return referencedSources;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      Entry entry = (Entry) o;
+      return Objects.equals(inputHash, entry.inputHash)
+          && Objects.equals(outputHash, entry.outputHash)
+          && Objects.equals(referencedSources, entry.referencedSources);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(inputHash, outputHash, referencedSources);
+    }
+  }
+}
@@ -0,0 +1,263 @@
+package com.github.ryancerf;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timings and counters of a single build, written as a JSON report.
+ *
+ * <p>Safe to share between threads. Phases that run on several threads add up the time of every
+ * thread, so they can add up to more than the total time of the build.
+ */
+class BuildMetrics {
+  // How many entries the report lists for the slowest and most referenced files.
+  static final int TOP_FILES = 10;
+
+  /** The phases of a build. Named as they appear in the report. */
+  enum Phase {
+    WALK("walk"),
+    CONTENT_PARSE("contentParse"),
+    SNIPPET_RESOLUTION("snippetResolution"),
+    INJECTION("injection"),
+    COPY("copy");
+
+    private final String reportName;
+
+    Phase(String reportName) {
+      this.reportName = reportName;
+    }
+  }
+
+  private final long startNanos = System.nanoTime();
+  private final Map<Phase, LongAdder> phaseNanos = new EnumMap<>(Phase.class);
+  private final LongAdder bytesRead = new LongAdder();
+  private final LongAdder bytesWritten = new LongAdder();
+  private final Map<String, AtomicLong> contentFileNanos = new ConcurrentHashMap<>();
+  private final Map<String, Long> counts = new ConcurrentHashMap<>();
+  private long snippetCacheHits;
+  private long snippetCacheMisses;
+  private List<SourceFileReferences> mostReferencedSourceFiles = new ArrayList<>();
+  private long totalNanos = -1;
+
+  BuildMetrics() {
+    for (Phase phase : Phase.values()) {
+      phaseNanos.put(phase, new LongAdder());
+    }
+  }
+
+  /** Start timing. Pass the result to {@link #stop}. */
+  long start() {
+    return System.nanoTime();
+  }
+
+  /** Add the time since {@code start} to a phase. */
+  void stop(Phase phase, long start) {
+    phaseNanos.get(phase).add(System.nanoTime() - start);
+  }
+
+  /**
+   * Add the time since {@code start} to a phase, and to the time spent on a content file.
+   *
+   * @param relativePath path of the content file in the docs source directory.
+   */
+  void stop(Phase phase, long start, String relativePath) {
+    long nanos = System.nanoTime() - start;
+    phaseNanos.get(phase).add(nanos);
+    contentFileNanos.computeIfAbsent(relativePath, k -> new AtomicLong()).addAndGet(nanos);
+  }
+
+  void addBytesRead(long bytes) {
+    bytesRead.add(bytes);
+  }
+
+  void addBytesWritten(long bytes) {
+    bytesWritten.add(bytes);
+  }
+
+  /** Set a named count, such as the number of files copied. */
+  void setCount(String name, long count) {
+    counts.put(name, count);
+  }
+
+  /**
+   * @param hits snippet lookups answered from a source file that was already parsed.
+   * @param misses source files parsed.
+   */
+  void setSnippetCacheStats(long hits, long misses) {
+    this.snippetCacheHits = hits;
+    this.snippetCacheMisses = misses;
+  }
+
+  void setMostReferencedSourceFiles(List<SourceFileReferences> sourceFiles) {
+    this.mostReferencedSourceFiles = sourceFiles;
+  }
+
+  /** Stop the clock of the whole build. */
+  void finish() {
+    totalNanos = System.nanoTime() - startNanos;
+  }
+
+  long getPhaseNanos(Phase phase) {
+    return phaseNanos.get(phase).sum();
+  }
+
+  long getBytesRead() {
+    return bytesRead.sum();
+  }
+
+  long getBytesWritten() {
+    return bytesWritten.sum();
+  }
+
+  /** The content files that took longest to parse, resolve and inject, slowest first. */
+  List<Map.Entry<String, Long>> getSlowestContentFiles() {
+    List<Map.Entry<String, Long>> files = new ArrayList<>();
+    for (Map.Entry<String, AtomicLong> entry : contentFileNanos.entrySet()) {
+      files.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue().get()));
+    }
+    files.sort(
+        Comparator.comparing((Map.Entry<String, Long> e) -> e.getValue())
+            .reversed()
+            .thenComparing(Map.Entry::getKey));
+    return files.subList(0, Math.min(TOP_FILES, files.size()));
+  }
+
+  void save(Path path) throws IOException {
+    if (path.getParent() != null) {
+      Files.createDirectories(path.getParent());
+    }
+    try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+      writer.write(toJson());
+    }
+  }
+
+  /** The report. Written by hand, so the plugin does not need a JSON library. */
+  String toJson() {
+    StringBuilder json = new StringBuilder();
+    json.append("{\n");
+    json.append("  \"totalMillis\": ").append(millis(totalNanos)).append(",\n");
+    json.append("  \"phaseMillis\": {");
+    String separator = "\n";
+    for (Phase phase : Phase.values()) {
+      json.append(separator)
+          .append("    ")
+          .append(string(phase.reportName))
+          .append(": ")
+          .append(millis(getPhaseNanos(phase)));
+      separator = ",\n";
+    }
+    json.append("\n  },\n");
+    json.append("  \"bytesRead\": ").append(getBytesRead()).append(",\n");
+    json.append("  \"bytesWritten\": ").append(getBytesWritten()).append(",\n");
+    json.append("  \"counts\": {");
+    separator = "\n";
+    for (Map.Entry<String, Long> count : new TreeMap<>(counts).entrySet()) {
+      json.append(separator)
+          .append("    ")
+          .append(string(count.getKey()))
+          .append(": ")
+          .append(count.getValue());
+      separator = ",\n";
+    }
+    json.append(counts.isEmpty() ? "},\n" : "\n  },\n");
+    json.append("  \"snippetCache\": {\"hits\": ")
+        .append(snippetCacheHits)
+        .append(", \"misses\": ")
+        .append(snippetCacheMisses)
+        .append("},\n");
+    json.append("  \"slowestContentFiles\": [");
+    separator = "\n";
+    for (Map.Entry<String, Long> file : getSlowestContentFiles()) {
+      json.append(separator)
+          .append("    {\"path\": ")
+          .append(string(file.getKey()))
+          .append(", \"millis\": ")
+          .append(millis(file.getValue()))
+          .append("}");
+      separator = ",\n";
+    }
+    json.append(contentFileNanos.isEmpty() ? "],\n" : "\n  ],\n");
+    json.append("  \"mostReferencedSourceFiles\": [");
+    separator = "\n";
+    for (SourceFileReferences file : mostReferencedSourceFiles) {
+      json.append(separator)
+          .append("    {\"path\": ")
+          .append(string(file.path))
+          .append(", \"references\": ")
+          .append(file.references)
+          .append(", \"contentFiles\": ")
+          .append(file.contentFiles)
+          .append("}");
+      separator = ",\n";
+    }
+    json.append(mostReferencedSourceFiles.isEmpty() ? "]\n" : "\n  ]\n");
+    json.append("}\n");
+    return json.toString();
+  }
+
+  private static String millis(long nanos) {
+    return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+  }
+
+  private static String string(String value) {
+    StringBuilder json = new StringBuilder("\"");
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          json.append("\\\"");
+          break;
+        case '\\':
+          json.append("\\\\");
+          break;
+        case '\n':
+          json.append("\\n");
+          break;
+        case '\r':
+          json.append("\\r");
+          break;
+        case '\t':
+          json.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            json.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+          } else {
+            json.append(c);
+          }
+      }
+    }
+    return json.append('"').toString();
+  }
+
+  // Data class. How often a source file is referenced by snippet directives.
+  static class SourceFileReferences {
+    private final String path;
+    private final int references;
+    private final int contentFiles;
+
+    SourceFileReferences(String path, int references, int contentFiles) {
+      this.path = path;
+      this.references = references;
+      this.contentFiles = contentFiles;
+    }
+
+    int getReferences() {
+      return references;
+    }
+  }
+}
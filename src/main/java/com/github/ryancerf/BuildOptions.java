@@ -0,0 +1,255 @@
+package com.github.ryancerf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** Options that control how {@link DocsBuilder} updates the target directory. */
+class BuildOptions {
+  static final String DEFAULT_MANIFEST_PATH = "./target/choss/build-manifest.txt";
+  static final String DEFAULT_INDEX_PATH = "./target/choss/dependency-index.txt";
+  static final String DEFAULT_METRICS_PATH = "./target/choss/build-metrics.json";
+  static final String DEFAULT_SNIPPET_INDEX_PATH = "./target/choss/snippet-index.bin";
+
+  private final boolean incremental;
+  private final boolean sync;
+  private final List<String> includes;
+  private final List<String> excludes;
+  private final String manifestPath;
+  private final String indexPath;
+  private final String metricsPath;
+  private final String snippetIndexPath;
+  private final int parallelism;
+  private final int walkParallelism;
+  private final int writeParallelism;
+  private final int maxInFlightWrites;
+  private final AssetStrategy assetStrategy;
+
+  private BuildOptions(Builder builder) {
+    this.incremental = builder.incremental;
+    this.sync = builder.sync;
+    this.includes = builder.includes;
+    this.excludes = builder.excludes;
+    this.manifestPath = builder.manifestPath;
+    this.indexPath = builder.indexPath;
+    this.metricsPath = builder.metricsPath;
+    this.snippetIndexPath = builder.snippetIndexPath;
+    this.parallelism = builder.parallelism;
+    this.walkParallelism = builder.walkParallelism;
+    this.writeParallelism = builder.writeParallelism;
+    this.maxInFlightWrites = builder.maxInFlightWrites;
+    this.assetStrategy = builder.assetStrategy;
+  }
+
+  static BuildOptions defaults() {
+    return new Builder().build();
+  }
+
+  /**
+   * When true the target directory is not emptied. Only outputs whose content file or referenced
+   * source files changed since the last build are written again.
+   */
+  boolean isIncremental() {
+    return incremental;
+  }
+
+  /**
+   * When true the target directory is not emptied. An output is only written if its bytes differ
+   * from the file on disk, and only target files that no build output maps to are deleted.
+   */
+  boolean isSync() {
+    return sync;
+  }
+
+  /** Patterns of the files to build. Everything if empty. See {@link DocsWalker}. */
+  List<String> getIncludes() {
+    return includes;
+  }
+
+  /** Patterns of the paths to leave out of the build and the target directory. */
+  List<String> getExcludes() {
+    return excludes;
+  }
+
+  /** Where incremental builds record the hashes of their inputs and outputs. */
+  String getManifestPath() {
+    return manifestPath;
+  }
+
+  /** Where every successful build saves which content files reference which source files. */
+  String getIndexPath() {
+    return indexPath;
+  }
+
+  /** Where every build writes its metrics report. Empty if no report should be written. */
+  String getMetricsPath() {
+    return metricsPath;
+  }
+
+  /**
+   * Where every successful build saves the snippets of the source files it parsed, so the next
+   * Maven invocation does not parse them again. Empty if they should not be saved.
+   */
+  String getSnippetIndexPath() {
+    return snippetIndexPath;
+  }
+
+  /** Number of threads used to parse content files. 1 parses on the calling thread. */
+  int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Number of directories listed at once when walking the docs source and target directories. 1
+   * walks them on the calling thread.
+   */
+  int getWalkParallelism() {
+    return walkParallelism;
+  }
+
+  /** Number of threads used to write outputs. 1 writes them on the calling thread. */
+  int getWriteParallelism() {
+    return writeParallelism;
+  }
+
+  /** Most outputs queued or being written at once when writing on several threads. */
+  int getMaxInFlightWrites() {
+    return maxInFlightWrites;
+  }
+
+  /** How files that are not content files are written to the target directory. */
+  AssetStrategy getAssetStrategy() {
+    return assetStrategy;
+  }
+
+  /** Every option, in a stable order, so builds with the same options can be recognized. */
+  @Override
+  public String toString() {
+    return "incremental="
+        + incremental
+        + " sync="
+        + sync
+        + " includes="
+        + includes
+        + " excludes="
+        + excludes
+        + " manifestPath="
+        + manifestPath
+        + " indexPath="
+        + indexPath
+        + " metricsPath="
+        + metricsPath
+        + " snippetIndexPath="
+        + snippetIndexPath
+        + " parallelism="
+        + parallelism
+        + " walkParallelism="
+        + walkParallelism
+        + " writeParallelism="
+        + writeParallelism
+        + " maxInFlightWrites="
+        + maxInFlightWrites
+        + " assetStrategy="
+        + assetStrategy;
+  }
+
+  static class Builder {
+    private boolean incremental = false;
+    private boolean sync = false;
+    private List<String> includes = Collections.emptyList();
+    private List<String> excludes = Collections.emptyList();
+    private String manifestPath = DEFAULT_MANIFEST_PATH;
+    private String indexPath = DEFAULT_INDEX_PATH;
+    private String metricsPath = DEFAULT_METRICS_PATH;
+    private String snippetIndexPath = DEFAULT_SNIPPET_INDEX_PATH;
+    private int parallelism = 1;
+    private int walkParallelism = 1;
+    private int writeParallelism = 1;
+    private int maxInFlightWrites = 64;
+    private AssetStrategy assetStrategy = AssetStrategy.COPY;
+
+    Builder incremental(boolean incremental) {
+      this.incremental = incremental;
+      return this;
+    }
+
+    Builder sync(boolean sync) {
+      this.sync = sync;
+      return this;
+    }
+
+    Builder includes(List<String> includes) {
+      this.includes = includes == null ? Collections.emptyList() : new ArrayList<>(includes);
+      return this;
+    }
+
+    Builder excludes(List<String> excludes) {
+      this.excludes = excludes == null ? Collections.emptyList() : new ArrayList<>(excludes);
+      return this;
+    }
+
+    Builder manifestPath(String manifestPath) {
+      this.manifestPath = manifestPath;
+      return this;
+    }
+
+    Builder indexPath(String indexPath) {
+      this.indexPath = indexPath;
+      return this;
+    }
+
+    Builder metricsPath(String metricsPath) {
+      this.metricsPath = metricsPath == null ? "" : metricsPath;
+      return this;
+    }
+
+    Builder snippetIndexPath(String snippetIndexPath) {
+      this.snippetIndexPath = snippetIndexPath == null ? "" : snippetIndexPath;
+      return this;
+    }
+
+    Builder parallelism(int parallelism) {
+      if (parallelism < 1) {
+        throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+      }
+      this.parallelism = parallelism;
+      return this;
+    }
+
+    Builder walkParallelism(int walkParallelism) {
+      if (walkParallelism < 1) {
+        throw new IllegalArgumentException(
+            "walkParallelism must be at least 1: " + walkParallelism);
+      }
+      this.walkParallelism = walkParallelism;
+      return this;
+    }
+
+    Builder writeParallelism(int writeParallelism) {
+      if (writeParallelism < 1) {
+        throw new IllegalArgumentException(
+            "writeParallelism must be at least 1: " + writeParallelism);
+      }
+      this.writeParallelism = writeParallelism;
+      return this;
+    }
+
+    Builder maxInFlightWrites(int maxInFlightWrites) {
+      if (maxInFlightWrites < 1) {
+        throw new IllegalArgumentException(
+            "maxInFlightWrites must be at least 1: " + maxInFlightWrites);
+      }
+      this.maxInFlightWrites = maxInFlightWrites;
+      return this;
+    }
+
+    Builder assetStrategy(AssetStrategy assetStrategy) {
+      this.assetStrategy = assetStrategy;
+      return this;
+    }
+
+    BuildOptions build() {
+      return new BuildOptions(this);
+    }
+  }
+}
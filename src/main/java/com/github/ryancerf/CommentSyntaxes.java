@@ -0,0 +1,115 @@
+package com.github.ryancerf;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The comments snippet tags are written in, by file extension: '# @@ my_tag' in a YAML file,
+ * '-- @@ my_tag' in a SQL file. '//' is a comment start of every built in extension too, so tags
+ * written before the table existed, such as in the inline scripts of an HTML file, are still found.
+ * Files with an extension that is not in the table use '//' only.
+ *
+ * <p>The comment starts of an extension are compiled into one {@link SnippetTagScanner}, which
+ * finds a tag in any of them in a single pass over the line.
+ */
+final class CommentSyntaxes {
+  // Comma separated comment starts, by extension. Before DEFAULT, which uses it.
+  private static final Map<String, String> BUILT_IN = builtIn();
+
+  static final CommentSyntaxes DEFAULT = new CommentSyntaxes(Collections.emptyMap());
+
+  private final Map<String, String> commentStarts = new TreeMap<>(BUILT_IN);
+  private final Map<String, SnippetTagScanner> scanners = new HashMap<>();
+
+  /**
+   * @param overrides comma separated comment starts by extension, such as 'yaml' to '#'. Replace
+   *     the built in comment starts of the extension.
+   * @throws IllegalArgumentException if a comment start is empty or has whitespace or '@' in it.
+   */
+  CommentSyntaxes(Map<String, String> overrides) {
+    for (Map.Entry<String, String> override : overrides.entrySet()) {
+      commentStarts.put(normalizeExtension(override.getKey()), override.getValue());
+    }
+    // Extensions with the same comment starts share a scanner.
+    Map<List<String>, SnippetTagScanner> scannersByStarts = new HashMap<>();
+    for (Map.Entry<String, String> entry : commentStarts.entrySet()) {
+      List<String> starts = new ArrayList<>();
+      for (String start : entry.getValue().split(",")) {
+        if (!start.trim().isEmpty()) {
+          starts.add(start.trim());
+        }
+      }
+      if (starts.isEmpty()) {
+        throw new IllegalArgumentException("No comment start for extension: " + entry.getKey());
+      }
+      scanners.put(
+          entry.getKey(), scannersByStarts.computeIfAbsent(starts, SnippetTagScanner::new));
+    }
+  }
+
+  /** The scanner for the comments of a source file, by its extension. */
+  SnippetTagScanner scannerFor(Path sourceFile) {
+    Path fileName = sourceFile.getFileName();
+    if (fileName == null) {
+      return SnippetTagScanner.DEFAULT;
+    }
+    String name = fileName.toString();
+    int dot = name.lastIndexOf('.');
+    if (dot < 0) {
+      return SnippetTagScanner.DEFAULT;
+    }
+    SnippetTagScanner scanner = scanners.get(normalizeExtension(name.substring(dot + 1)));
+    return scanner == null ? SnippetTagScanner.DEFAULT : scanner;
+  }
+
+  /** Stable, so it can tell whether snippets saved by an earlier build used the same table. */
+  @Override
+  public String toString() {
+    StringBuilder description = new StringBuilder();
+    for (Map.Entry<String, SnippetTagScanner> entry : new TreeMap<>(scanners).entrySet()) {
+      if (description.length() > 0) {
+        description.append(' ');
+      }
+      description.append(entry.getKey()).append('=').append(entry.getValue());
+    }
+    return description.toString();
+  }
+
+  private static String normalizeExtension(String extension) {
+    String trimmed = extension.trim().toLowerCase(Locale.ROOT);
+    return trimmed.startsWith(".") ? trimmed.substring(1) : trimmed;
+  }
+
+  private static Map<String, String> builtIn() {
+    Map<String, String> builtIn = new HashMap<>();
+    for (String extension :
+        new String[] {
+          "bash", "cfg", "cmake", "conf", "ex", "exs", "jl", "nix", "pl", "properties", "ps1", "py",
+          "r", "rb", "sh", "tf", "toml", "yaml", "yml", "zsh"
+        }) {
+      builtIn.put(extension, "#");
+    }
+    for (String extension : new String[] {"hs", "lua", "sql"}) {
+      builtIn.put(extension, "--");
+    }
+    for (String extension :
+        new String[] {"fxml", "htm", "html", "svg", "xhtml", "xml", "xsd", "xsl"}) {
+      builtIn.put(extension, "<!--");
+    }
+    for (String extension : new String[] {"asm", "clj", "cljs", "edn", "el", "lisp", "scm"}) {
+      builtIn.put(extension, ";");
+    }
+    builtIn.put("ini", "#,;");
+    for (String extension : new String[] {"css", "less", "scss"}) {
+      builtIn.put(extension, "/*");
+    }
+    builtIn.replaceAll((extension, starts) -> starts + ",//");
+    return builtIn;
+  }
+}
@@ -0,0 +1,96 @@
+package com.github.ryancerf;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+
+/**
+ * Compares the bytes written to it with the bytes of a file, one chunk at a time, and hashes them.
+ * Tells whether a rendered output differs from the one on disk without holding either in memory.
+ *
+ * <p>The file is read no further than the first difference. Nothing is written to it.
+ */
+class ComparingOutputStream extends OutputStream {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final MessageDigest digest;
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  private final byte[] single = new byte[1];
+  // Null once a difference was found, or if there is no file.
+  private InputStream in;
+
+  /**
+   * @param file the file to compare with, or null if there is none.
+   * @param digest updated with every byte written, or null to not hash them.
+   */
+  ComparingOutputStream(Path file, MessageDigest digest) throws IOException {
+    if (file != null) {
+      this.in = new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE);
+    }
+    this.digest = digest;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    single[0] = (byte) b;
+    write(single, 0, 1);
+  }
+
+  @Override
+  public void write(byte[] bytes, int offset, int length) throws IOException {
+    if (digest != null) {
+      digest.update(bytes, offset, length);
+    }
+    while (in != null && length > 0) {
+      int chunk = Math.min(length, buffer.length);
+      if (readFully(chunk) < chunk || !equal(bytes, offset, chunk)) {
+        differs();
+        return;
+      }
+      offset += chunk;
+      length -= chunk;
+    }
+  }
+
+  /** True if the bytes written are exactly the bytes of the file. Only call it once, at the end. */
+  boolean matches() throws IOException {
+    boolean matches = in != null && in.read() == -1;
+    differs();
+    return matches;
+  }
+
+  @Override
+  public void close() throws IOException {
+    differs();
+  }
+
+  private int readFully(int length) throws IOException {
+    int total = 0;
+    int read;
+    while (total < length && (read = in.read(buffer, total, length - total)) != -1) {
+      total += read;
+    }
+    return total;
+  }
+
+  private boolean equal(byte[] bytes, int offset, int length) {
+    for (int i = 0; i < length; i++) {
+      if (buffer[i] != bytes[offset + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Stop reading the file.
+  private void differs() throws IOException {
+    if (in != null) {
+      in.close();
+      in = null;
+    }
+  }
+}
@@ -5,14 +5,16 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.Scanner;
 
 /** Parses content files (.md) looking for snippet directives. */
 class ContentFileParser {
   private final SnippetDirectiveParser snippetDirectiveParser;
+  private final TextFileReader textFileReader;
 
-  ContentFileParser(SnippetDirectiveParser snippetDirectiveParser) {
+  ContentFileParser(
+      SnippetDirectiveParser snippetDirectiveParser, TextFileReader textFileReader) {
     this.snippetDirectiveParser = snippetDirectiveParser;
+    this.textFileReader = textFileReader;
   }
 
   /**
@@ -24,20 +26,23 @@ class ContentFileParser {
   ParseResult<List<SnippetDirectiveDefinition>> parse(Path path) {
     List<SnippetDirectiveDefinition> directives = new ArrayList<>();
     List<BuildError> errors = new ArrayList<>();
-    Scanner scanner = initScanner(path);
-    int lineNumber = 0;
-    while (scanner.hasNextLine()) {
-      lineNumber++;
-      String line = scanner.nextLine();
-      Optional<SnippetDirectiveDefinition> optionalSnippetDirective =
-          snippetDirectiveParser.createFromLine(line, lineNumber, path);
-      if (optionalSnippetDirective.isPresent()) {
-        if (!isValidIdentifier(optionalSnippetDirective.get().getDirective().getTag())) {
-          errors.add(new BuildError.InvalidIdentifierError(optionalSnippetDirective.get()));
-        } else {
-          directives.add(optionalSnippetDirective.get());
+    try (LineReader reader = textFileReader.open(path)) {
+      int lineNumber = 0;
+      while (reader.nextLine()) {
+        lineNumber++;
+        Optional<SnippetDirectiveDefinition> optionalSnippetDirective =
+            snippetDirectiveParser.createFromLine(reader.line(), lineNumber, path);
+        if (optionalSnippetDirective.isPresent()) {
+          if (!isValidIdentifier(optionalSnippetDirective.get().getDirective().getTag())) {
+            errors.add(new BuildError.InvalidIdentifierError(optionalSnippetDirective.get()));
+          } else {
+            directives.add(optionalSnippetDirective.get());
+          }
         }
       }
+    } catch (IOException e) {
+      // By the Content file parser is called the path should already be resolved.
+      throw new RuntimeException(e.getMessage(), e);
     }
     return new ParseResult<>(errors, directives);
   }
@@ -45,13 +50,4 @@ class ContentFileParser {
   private boolean isValidIdentifier(String tag) {
     return SnippetDirective.VALID_SNIPPET_IDENTIFIER.matcher(tag).matches();
   }
-
-  private Scanner initScanner(Path path) {
-    try {
-      return new Scanner(path);
-    } catch (IOException e) {
-      // By the Content file parser is called the path should already be resolved.
-      throw new RuntimeException(e.getMessage(), e);
-    }
-  }
 }
@@ -0,0 +1,229 @@
+package com.github.ryancerf;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * Which content files reference which source files.
+ *
+ * <p>Records the snippet directives of every content file, and keeps the reverse index from a
+ * source file to the content files that reference it. Source files are looked up by their
+ * absolute normalized path, so './docs/a.java' and 'docs/b/../a.java' are the same file.
+ *
+ * <p>Stored as a tab separated text file:
+ *
+ * <pre>
+ * choss-dependency-index   1   docs_source_directory   content_glob
+ * C   content_path
+ * D   content_path   line_number   tag   source_path
+ * </pre>
+ */
+class DependencyIndex {
+  private static final String HEADER = "choss-dependency-index";
+  private static final String VERSION = "1";
+  private static final String CONTENT = "C";
+  private static final String DIRECTIVE = "D";
+
+  private final String sourceDirectory;
+  private final String contentGlob;
+  // Sorted so that queries and the index on disk are stable.
+  private final Map<Path, List<SnippetDirectiveDefinition>> directivesByContentFile =
+      new TreeMap<>();
+  private final Map<Path, Set<Path>> contentFilesBySourceFile = new HashMap<>();
+
+  DependencyIndex(String sourceDirectory, String contentGlob) {
+    this.sourceDirectory = sourceDirectory;
+    this.contentGlob = contentGlob;
+  }
+
+  /** Record the directives of a content file, replacing what was recorded before. */
+  void put(Path contentFile, List<SnippetDirectiveDefinition> directives) {
+    remove(contentFile);
+    directivesByContentFile.put(contentFile, new ArrayList<>(directives));
+    for (SnippetDirectiveDefinition directive : directives) {
+      contentFilesBySourceFile
+          .computeIfAbsent(normalize(directive.getDirective().getPath()), k -> new TreeSet<>())
+          .add(contentFile);
+    }
+  }
+
+  void remove(Path contentFile) {
+    List<SnippetDirectiveDefinition> directives = directivesByContentFile.remove(contentFile);
+    if (directives == null) {
+      return;
+    }
+    for (SnippetDirectiveDefinition directive : directives) {
+      Path sourceFile = normalize(directive.getDirective().getPath());
+      Set<Path> contentFiles = contentFilesBySourceFile.get(sourceFile);
+      if (contentFiles != null) {
+        contentFiles.remove(contentFile);
+        if (contentFiles.isEmpty()) {
+          contentFilesBySourceFile.remove(sourceFile);
+        }
+      }
+    }
+  }
+
+  /** Remove every content file in a directory, or the content file itself. */
+  void removeAll(Path directoryOrFile) {
+    for (Path contentFile : new ArrayList<>(directivesByContentFile.keySet())) {
+      if (contentFile.startsWith(directoryOrFile)) {
+        remove(contentFile);
+      }
+    }
+  }
+
+  boolean contains(Path contentFile) {
+    return directivesByContentFile.containsKey(contentFile);
+  }
+
+  List<SnippetDirectiveDefinition> getDirectives(Path contentFile) {
+    return directivesByContentFile.getOrDefault(contentFile, Collections.emptyList());
+  }
+
+  Set<Path> getContentFiles() {
+    return Collections.unmodifiableSet(directivesByContentFile.keySet());
+  }
+
+  /** Every source file referenced by a content file, as written in the directives. */
+  Set<Path> getSourceFiles() {
+    Set<Path> sourceFiles = new TreeSet<>();
+    for (List<SnippetDirectiveDefinition> directives : directivesByContentFile.values()) {
+      for (SnippetDirectiveDefinition directive : directives) {
+        sourceFiles.add(directive.getDirective().getPath());
+      }
+    }
+    return sourceFiles;
+  }
+
+  /** The content files that reference a source file. */
+  Set<Path> getContentFilesReferencing(Path sourceFile) {
+    return contentFilesBySourceFile.getOrDefault(normalize(sourceFile), Collections.emptySet());
+  }
+
+  /**
+   * The directives that reference a source file, by tag. Each directive knows the content file and
+   * line it is defined in.
+   */
+  SortedMap<String, List<SnippetDirectiveDefinition>> getReferences(Path sourceFile) {
+    Path normalizedSourceFile = normalize(sourceFile);
+    SortedMap<String, List<SnippetDirectiveDefinition>> references = new TreeMap<>();
+    for (Path contentFile : getContentFilesReferencing(sourceFile)) {
+      for (SnippetDirectiveDefinition directive : directivesByContentFile.get(contentFile)) {
+        if (normalize(directive.getDirective().getPath()).equals(normalizedSourceFile)) {
+          references
+              .computeIfAbsent(directive.getDirective().getTag(), k -> new ArrayList<>())
+              .add(directive);
+        }
+      }
+    }
+    return references;
+  }
+
+  /**
+   * The files in the docs source directory whose output is affected by the changed paths. That is
+   * every changed file in the docs source directory, and every content file that references a
+   * changed source file.
+   */
+  Set<Path> getAffectedFiles(Collection<Path> changedPaths, Path sourceDirectory) {
+    Path normalizedSourceDirectory = normalize(sourceDirectory);
+    Set<Path> affectedFiles = new TreeSet<>();
+    for (Path changedPath : changedPaths) {
+      Path normalizedPath = normalize(changedPath);
+      if (normalizedPath.startsWith(normalizedSourceDirectory)) {
+        affectedFiles.add(
+            sourceDirectory.resolve(normalizedSourceDirectory.relativize(normalizedPath)));
+      }
+      affectedFiles.addAll(getContentFilesReferencing(changedPath));
+    }
+    return affectedFiles;
+  }
+
+  void save(Path path) throws IOException {
+    if (path.getParent() != null) {
+      Files.createDirectories(path.getParent());
+    }
+    try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+      writeLine(writer, HEADER, VERSION, sourceDirectory, contentGlob);
+      for (Map.Entry<Path, List<SnippetDirectiveDefinition>> entry :
+          directivesByContentFile.entrySet()) {
+        writeLine(writer, CONTENT, entry.getKey().toString());
+        for (SnippetDirectiveDefinition directive : entry.getValue()) {
+          writeLine(
+              writer,
+              DIRECTIVE,
+              entry.getKey().toString(),
+              Integer.toString(directive.getLineNumber()),
+              directive.getDirective().getTag(),
+              directive.getDirective().getPath().toString());
+        }
+      }
+    }
+  }
+
+  /**
+   * Load a saved index. Empty if there is none, it cannot be read, or it was saved for another docs
+   * source directory or content glob.
+   */
+  static Optional<DependencyIndex> load(
+      Path path, String sourceDirectory, String contentGlob, Function<String, Path> pathFactory) {
+    if (!Files.isRegularFile(path)) {
+      return Optional.empty();
+    }
+    Map<Path, List<SnippetDirectiveDefinition>> directivesByContentFile = new TreeMap<>();
+    try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+      String header = reader.readLine();
+      if (!String.join("\t", HEADER, VERSION, sourceDirectory, contentGlob).equals(header)) {
+        return Optional.empty();
+      }
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] columns = line.split("\t", -1);
+        if (CONTENT.equals(columns[0]) && columns.length == 2) {
+          directivesByContentFile.put(pathFactory.apply(columns[1]), new ArrayList<>());
+        } else if (DIRECTIVE.equals(columns[0]) && columns.length == 5) {
+          Path contentFile = pathFactory.apply(columns[1]);
+          directivesByContentFile
+              .computeIfAbsent(contentFile, k -> new ArrayList<>())
+              .add(
+                  SnippetDirectiveDefinition.create(
+                      SnippetDirective.create(columns[3], pathFactory.apply(columns[4])),
+                      Integer.parseInt(columns[2]),
+                      contentFile));
+        } else {
+          return Optional.empty();
+        }
+      }
+    } catch (IOException | NumberFormatException e) {
+      return Optional.empty();
+    }
+    DependencyIndex index = new DependencyIndex(sourceDirectory, contentGlob);
+    directivesByContentFile.forEach(index::put);
+    return Optional.of(index);
+  }
+
+  private static void writeLine(BufferedWriter writer, String... columns) throws IOException {
+    writer.write(String.join("\t", columns));
+    writer.newLine();
+  }
+
+  private static Path normalize(Path path) {
+    return path.toAbsolutePath().normalize();
+  }
+}
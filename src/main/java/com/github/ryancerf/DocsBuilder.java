@@ -2,23 +2,36 @@ package com.github.ryancerf;
 
 import org.apache.maven.plugin.logging.Log;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Function;
 import java.util.function.Supplier;
-
-import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 class DocsBuilder {
 
@@ -31,15 +44,34 @@ class DocsBuilder {
 
   private final Log log;
 
-  // State.
+  // State of the current build or rebuild.
   private final List<CopyOperation> copyOperations = new ArrayList<>();
-  private final List<BuildError> buildErrors = new ArrayList<>();
+  // Several content files may report the same error for a shared source file. Only show it once.
+  private final Set<BuildError> buildErrors = new LinkedHashSet<>();
   private final Set<SnippetDirective> seenSnippetDirectives = new HashSet<>();
+  private BuildMetrics metrics;
+
+  // State kept between a build and later rebuilds.
   private PathMatcher contentMatcher;
+  private BuildOptions options;
+  private Path sourceDirectory;
+  private Path targetDirectory;
+  private AssetCopier assetCopier;
+  private DocsWalker docsWalker;
+  // The directives of each content file when it was last processed.
+  private DependencyIndex dependencyIndex;
+  // Only used by incremental builds.
+  private DependencyIndex previousIndex;
+  private BuildManifest previousManifest;
+  private BuildManifest manifest;
+  private final Map<String, String> sourceHashes = new ConcurrentHashMap<>();
 
   // Stats to show user.
   private int filesCopiedWithSnippets = 0;
   private int filesCopiedWithoutSnippets = 0;
+  private int filesLinked = 0;
+  private int assetsSkipped = 0;
+  private int filesUnchanged = 0;
 
   DocsBuilder(
       Supplier<FileSystem> fileSystemSupplier,
@@ -58,28 +90,277 @@ class DocsBuilder {
 
   boolean build(String docsSourceDirectory, String docsTargetDirectory, String contentGlob)
       throws IOException {
-    this.contentMatcher = fileSystemSupplier.get().getPathMatcher(contentGlob);
+    return build(docsSourceDirectory, docsTargetDirectory, contentGlob, BuildOptions.defaults());
+  }
+
+  boolean build(
+      String docsSourceDirectory,
+      String docsTargetDirectory,
+      String contentGlob,
+      BuildOptions options)
+      throws IOException {
+    start(docsSourceDirectory, docsTargetDirectory, contentGlob, options);
+    this.dependencyIndex = new DependencyIndex(docsSourceDirectory, contentGlob);
     this.log.info(
         "Building Documentation from: " + docsSourceDirectory + " to: " + docsTargetDirectory);
-    boolean successful =
-        processDirectory(
-            pathFactory.apply(docsSourceDirectory), pathFactory.apply(docsTargetDirectory));
+    if (options.isIncremental()) {
+      String settings = snippetCache.getSettings();
+      this.previousManifest =
+          BuildManifest.load(
+              pathFactory.apply(options.getManifestPath()),
+              docsTargetDirectory,
+              contentGlob,
+              settings);
+      this.manifest = new BuildManifest(docsTargetDirectory, contentGlob, settings);
+      this.previousIndex =
+          DependencyIndex.load(
+                  pathFactory.apply(options.getIndexPath()),
+                  docsSourceDirectory,
+                  contentGlob,
+                  pathFactory)
+              .orElseGet(() -> new DependencyIndex(docsSourceDirectory, contentGlob));
+    }
+    if (!options.getSnippetIndexPath().isEmpty()) {
+      snippetCache.loadSnippetIndex(pathFactory.apply(options.getSnippetIndexPath()));
+    }
+    long cacheHits = snippetCache.getHits();
+    long cacheMisses = snippetCache.getMisses();
+    long cacheEvictions = snippetCache.getEvictions();
+    long bytesParsed = snippetCache.getBytesParsed();
+    boolean successful = processDirectory();
     if (successful) {
       warningForUnusedSourceSnippets();
     }
+    metrics.addBytesRead(snippetCache.getBytesParsed() - bytesParsed);
+    metrics.setSnippetCacheStats(
+        snippetCache.getHits() - cacheHits, snippetCache.getMisses() - cacheMisses);
+    metrics.setCount("snippetCacheEvictions", snippetCache.getEvictions() - cacheEvictions);
+    saveMetrics();
     return successful;
   }
 
-  private boolean processDirectory(Path sourceDirectory, Path targetDirectory) throws IOException {
-    if (Files.list(sourceDirectory).count() == 0) {
-      throw new IOException("No files in docsSourceDirectory to copy: " + sourceDirectory);
+  /**
+   * Render only what the changed paths affect into a target directory filled by an earlier build,
+   * and keep everything else in it. Like {@link #rebuild}, with the directive graph saved by the
+   * earlier build instead of one kept in memory, so a new JVM can update the docs of a change.
+   *
+   * <p>If the target directory does not exist there is nothing to keep, and every file is built.
+   *
+   * @param dependencyIndex which content files referenced which source files in the earlier build.
+   * @return false if there were build errors. Nothing is written in that case.
+   */
+  boolean buildChanged(
+      String docsSourceDirectory,
+      String docsTargetDirectory,
+      String contentGlob,
+      BuildOptions options,
+      DependencyIndex dependencyIndex,
+      Collection<Path> changedPaths)
+      throws IOException {
+    if (!Files.isDirectory(pathFactory.apply(docsTargetDirectory))) {
+      log.info("No docs in " + docsTargetDirectory + " to update, building every file");
+      return build(docsSourceDirectory, docsTargetDirectory, contentGlob, options);
+    }
+    start(docsSourceDirectory, docsTargetDirectory, contentGlob, options);
+    this.dependencyIndex = dependencyIndex;
+    log.info(
+        "Updating Documentation in: "
+            + docsTargetDirectory
+            + " for "
+            + changedPaths.size()
+            + " changed files");
+    if (!options.getSnippetIndexPath().isEmpty()) {
+      snippetCache.loadSnippetIndex(pathFactory.apply(options.getSnippetIndexPath()));
+    }
+    boolean successful = rebuild(changedPaths);
+    saveMetrics();
+    return successful;
+  }
+
+  /**
+   * Render again only what is affected by the changed paths, reusing the parsed snippets of the
+   * last {@link #build}.
+   *
+   * <p>A changed file in the docs source directory is copied or rendered again, and its output is
+   * deleted if the file no longer exists. A changed source file is parsed again, and every content
+   * file that referenced it is rendered again. Other paths are ignored.
+   *
+   * <p>The build manifest is not updated. Outputs written by a rebuild no longer match it, so the
+   * next incremental build renders them again.
+   *
+   * @return false if there were build errors. Nothing is written in that case.
+   */
+  boolean rebuild(Collection<Path> changedPaths) throws IOException {
+    if (sourceDirectory == null) {
+      throw new IllegalStateException("rebuild can only be called after build");
+    }
+    resetBuildState();
+    Path normalizedSourceDirectory = normalize(sourceDirectory);
+    // Sorted so that rebuilds process files in a stable order.
+    Set<Path> filesToProcess = new TreeSet<>();
+    for (Path changedPath : changedPaths) {
+      Path normalizedPath = normalize(changedPath);
+      if (normalizedPath.startsWith(normalizedSourceDirectory)
+          && !docsWalker.isExcluded(normalizedSourceDirectory.relativize(normalizedPath))) {
+        Path relativePath = normalizedSourceDirectory.relativize(normalizedPath);
+        Path source = sourceDirectory.resolve(relativePath);
+        if (Files.exists(source)) {
+          filesToProcess.addAll(docsWalker.walk(sourceDirectory, source));
+        } else {
+          deleteOutput(source, targetDirectory.resolve(relativePath));
+        }
+      }
+      filesToProcess.addAll(invalidateSourceFile(normalizedPath));
+    }
+    if (filesToProcess.isEmpty()) {
+      return true;
+    }
+
+    log.info("Rebuilding " + filesToProcess.size() + " files");
+    mergeResults(
+        processFiles(new ArrayList<>(filesToProcess), sourceDirectory, targetDirectory, false));
+    if (!this.buildErrors.isEmpty()) {
+      buildErrors.forEach(e -> log.error(e.errorLocation() + " " + e.toString()));
+      return false;
+    }
+    executeCopyOperations();
+    saveIndexes();
+    return true;
+  }
+
+  /**
+   * Find the content files that reference a source file, without resolving any snippet or writing
+   * anything.
+   */
+  DependencyIndex indexContentFiles(
+      String docsSourceDirectory, String contentGlob, BuildOptions options) throws IOException {
+    PathMatcher matcher = fileSystemSupplier.get().getPathMatcher(contentGlob);
+    DependencyIndex index = new DependencyIndex(docsSourceDirectory, contentGlob);
+    for (Path path : createDocsWalker(options).walk(pathFactory.apply(docsSourceDirectory))) {
+      if (Files.isRegularFile(path) && matcher.matches(path)) {
+        index.put(path, contentFileParser.parse(path).getResult());
+      }
+    }
+    return index;
+  }
+
+  /** Leaves out the paths the build options exclude. */
+  DocsWalker getDocsWalker() {
+    return docsWalker;
+  }
+
+  /** Every path the last build or rebuild found a snippet directive for. */
+  Set<Path> getReferencedSourceFiles() {
+    return dependencyIndex.getSourceFiles();
+  }
+
+  /** Which content files referenced which source files in the last build or rebuild. */
+  DependencyIndex getDependencyIndex() {
+    return dependencyIndex;
+  }
+
+  Path getSourceDirectory() {
+    return sourceDirectory;
+  }
+
+  /**
+   * Drop changed source files from the snippet cache, so the next build parses them again. Paths
+   * that no content file referenced in the last build are ignored.
+   */
+  void invalidateSourceFiles(Collection<Path> changedSourceFiles) {
+    for (Path changedSourceFile : changedSourceFiles) {
+      invalidateSourceFile(normalize(changedSourceFile));
+    }
+  }
+
+  /**
+   * Drop a changed source file from the snippet cache.
+   *
+   * @return the content files that reference it.
+   */
+  private List<Path> invalidateSourceFile(Path normalizedPath) {
+    // The cache knows the source file by the path written in the directive.
+    for (List<SnippetDirectiveDefinition> references :
+        dependencyIndex.getReferences(normalizedPath).values()) {
+      for (SnippetDirectiveDefinition reference : references) {
+        snippetCache.invalidate(reference.getDirective().getPath());
+      }
+    }
+    return new ArrayList<>(dependencyIndex.getContentFilesReferencing(normalizedPath));
+  }
+
+  private void deleteOutput(Path source, Path destination) throws IOException {
+    dependencyIndex.removeAll(source);
+    if (Files.exists(destination)) {
+      log.info("Deleting output of deleted file: " + destination);
+      List<Path> paths;
+      try (Stream<Path> walk = Files.walk(destination)) {
+        paths = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+      }
+      for (Path path : paths) {
+        Files.deleteIfExists(path);
+      }
+    }
+  }
+
+  private void start(
+      String docsSourceDirectory,
+      String docsTargetDirectory,
+      String contentGlob,
+      BuildOptions options) {
+    resetBuildState();
+    this.contentMatcher = fileSystemSupplier.get().getPathMatcher(contentGlob);
+    this.options = options;
+    this.sourceDirectory = pathFactory.apply(docsSourceDirectory);
+    this.targetDirectory = pathFactory.apply(docsTargetDirectory);
+    this.assetCopier = new AssetCopier(options.getAssetStrategy());
+    this.docsWalker = createDocsWalker(options);
+  }
+
+  private DocsWalker createDocsWalker(BuildOptions options) {
+    return new DocsWalker(
+        fileSystemSupplier.get(),
+        options.getIncludes(),
+        options.getExcludes(),
+        options.getWalkParallelism());
+  }
+
+  private void resetBuildState() {
+    metrics = new BuildMetrics();
+    copyOperations.clear();
+    buildErrors.clear();
+    seenSnippetDirectives.clear();
+    sourceHashes.clear();
+    filesCopiedWithSnippets = 0;
+    filesCopiedWithoutSnippets = 0;
+    filesLinked = 0;
+    assetsSkipped = 0;
+    filesUnchanged = 0;
+  }
+
+  private static Path normalize(Path path) {
+    return path.toAbsolutePath().normalize();
+  }
+
+  private boolean processDirectory() throws IOException {
+    try (Stream<Path> children = Files.list(sourceDirectory)) {
+      if (!children.findAny().isPresent()) {
+        throw new IOException("No files in docsSourceDirectory to copy: " + sourceDirectory);
+      }
+    }
+    if (options.isIncremental() || options.isSync()) {
+      Files.createDirectories(targetDirectory);
+    } else {
+      if (options.getAssetStrategy() == AssetStrategy.SKIP_UNCHANGED) {
+        log.warn(
+            "assetStrategy skip-unchanged skips nothing when the target directory is emptied,"
+                + " set incremental or sync to keep it");
+      }
+      createOrCleanTargetDirectory(targetDirectory);
     }
-    createOrCleanTargetDirectory(targetDirectory);
     // Walk content directory, resolve snippets, queue copy operations;
-    Files.walk(sourceDirectory)
-        .forEach(
-            src ->
-                processContentFile(src, targetDirectory.resolve(sourceDirectory.relativize(src))));
+    List<FileResult> results = walkAndProcessFiles(options.isIncremental());
+    mergeResults(results);
 
     // All snippets have been resolved. Can show build errors.
     if (!this.buildErrors.isEmpty()) {
@@ -89,54 +370,538 @@ class DocsBuilder {
     executeCopyOperations();
     log.info("Copied " + filesCopiedWithSnippets + " files with snippets");
     log.info("Copied " + filesCopiedWithoutSnippets + " files without snippets");
+    if (filesLinked > 0) {
+      log.info("Linked " + filesLinked + " files without snippets");
+    }
+    if (assetsSkipped > 0) {
+      log.info("Skipped " + assetsSkipped + " files with the same size and modified time");
+    }
+    if (options.isIncremental()) {
+      deleteStaleOutputs(targetDirectory);
+      manifest.save(pathFactory.apply(options.getManifestPath()));
+    }
+    if (options.isSync()) {
+      deleteOrphanedOutputs(results);
+    }
+    if (options.isIncremental() || options.isSync()) {
+      log.info("Skipped " + filesUnchanged + " unchanged files");
+    }
+    saveIndexes();
     return true;
   }
 
-  private void processContentFile(Path source, Path dest) {
+  private void saveIndexes() throws IOException {
+    dependencyIndex.save(pathFactory.apply(options.getIndexPath()));
+    if (!options.getSnippetIndexPath().isEmpty()) {
+      snippetCache.saveSnippetIndex(pathFactory.apply(options.getSnippetIndexPath()));
+    }
+  }
+
+  /** Results are merged in walk order so errors and logs do not depend on thread scheduling. */
+  private void mergeResults(List<FileResult> results) throws IOException {
+    for (FileResult result : results) {
+      buildErrors.addAll(result.buildErrors);
+      seenSnippetDirectives.addAll(result.directives);
+      if (result.copyOperation != null) {
+        copyOperations.add(result.copyOperation);
+        if (isContentFile(result.copyOperation.source)) {
+          dependencyIndex.put(result.copyOperation.source, result.copyOperation.directives);
+        }
+      } else {
+        keepPreviousOutput(result.relativePath);
+      }
+    }
+  }
+
+  /**
+   * Parse the walked files on up to {@link BuildOptions#getParallelism()} threads.
+   *
+   * @param useManifest skip files the previous incremental build left up to date.
+   */
+  private List<FileResult> processFiles(
+      List<Path> sources, Path sourceDirectory, Path targetDirectory, boolean useManifest)
+      throws IOException {
+    List<Callable<FileResult>> tasks = new ArrayList<>();
+    for (Path src : sources) {
+      tasks.add(processTask(src, sourceDirectory, targetDirectory, useManifest));
+    }
+
+    List<FileResult> results = new ArrayList<>();
+    if (options.getParallelism() <= 1) {
+      for (Callable<FileResult> task : tasks) {
+        results.add(call(task));
+      }
+      return results;
+    }
+
+    ExecutorService executor = newWorkers();
+    try {
+      for (Future<FileResult> future : executor.invokeAll(tasks)) {
+        results.add(get(future));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while processing docs", e);
+    } finally {
+      executor.shutdownNow();
+    }
+    return results;
+  }
+
+  /**
+   * Walk the docs source directory and parse the walked files. With a parallelism above 1 a file
+   * is handed to a worker as soon as the walk finds it, so parsing overlaps a slow walk. Results
+   * are still in walk order.
+   */
+  private List<FileResult> walkAndProcessFiles(boolean useManifest) throws IOException {
+    if (options.getParallelism() <= 1) {
+      long walkStart = metrics.start();
+      List<Path> sources = docsWalker.walk(sourceDirectory);
+      metrics.stop(BuildMetrics.Phase.WALK, walkStart);
+      return processFiles(sources, sourceDirectory, targetDirectory, useManifest);
+    }
+
+    ExecutorService executor = newWorkers();
+    try {
+      Map<Path, Future<FileResult>> futures = new ConcurrentHashMap<>();
+      long walkStart = metrics.start();
+      List<Path> sources =
+          docsWalker.walk(
+              sourceDirectory,
+              sourceDirectory,
+              src ->
+                  futures.put(
+                      src,
+                      executor.submit(
+                          processTask(src, sourceDirectory, targetDirectory, useManifest))));
+      metrics.stop(BuildMetrics.Phase.WALK, walkStart);
+      List<FileResult> results = new ArrayList<>(sources.size());
+      for (Path src : sources) {
+        results.add(get(futures.get(src)));
+      }
+      return results;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while processing docs", e);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private Callable<FileResult> processTask(
+      Path src, Path sourceDirectory, Path targetDirectory, boolean useManifest) {
+    Path relativePath = sourceDirectory.relativize(src);
+    Path destination = targetDirectory.resolve(relativePath);
+    return () -> processContentFile(src, destination, relativePath.toString(), useManifest);
+  }
+
+  private ExecutorService newWorkers() {
+    return Executors.newFixedThreadPool(
+        options.getParallelism(), BoundedExecutor.daemonThreads("choss-worker"));
+  }
+
+  private FileResult processContentFile(
+      Path source, Path dest, String relativePath, boolean useManifest) throws IOException {
+    String inputHash = null;
+    if (useManifest && Files.isRegularFile(source)) {
+      inputHash = fingerprint(source, isContentFile(source));
+      if (isUnchanged(inputHash, source, dest, relativePath)) {
+        return new FileResult(relativePath, null);
+      }
+    }
     if (isContentFile(source)) {
-      resolveAndCacheSourceSnippets(source, dest);
+      return resolveAndCacheSourceSnippets(source, dest, relativePath, inputHash);
     } else {
-      copyOperations.add(new CopyOperation(source, dest, false));
+      return new FileResult(
+          relativePath,
+          new CopyOperation(
+              source,
+              dest,
+              relativePath,
+              inputHash,
+              Collections.emptyList(),
+              Collections.emptyList()));
     }
   }
 
-  private void resolveAndCacheSourceSnippets(Path source, Path destination) {
+  private FileResult resolveAndCacheSourceSnippets(
+      Path source, Path destination, String relativePath, String inputHash) throws IOException {
+    long parseStart = metrics.start();
+    metrics.addBytesRead(Files.size(source));
     ParseResult<List<SnippetDirectiveDefinition>> contentResults = contentFileParser.parse(source);
-    buildErrors.addAll(contentResults.getBuildErrors());
+    metrics.stop(BuildMetrics.Phase.CONTENT_PARSE, parseStart, relativePath);
+    List<BuildError> errors = new ArrayList<>(contentResults.getBuildErrors());
+    List<SnippetDirective> directives = new ArrayList<>();
 
     // Resolve all the snippets
-    int snippetCount = 0;
+    long resolutionStart = metrics.start();
+    Set<String> referencedSources = new TreeSet<>();
     for (SnippetDirectiveDefinition directiveDefinition : contentResults.getResult()) {
-      seenSnippetDirectives.add(directiveDefinition.getDirective());
-      snippetCount++;
+      directives.add(directiveDefinition.getDirective());
+      referencedSources.add(directiveDefinition.getDirective().getPath().toString());
       ParseResult<Optional<Snippet>> snippetResults =
           snippetCache.parseOrGetSnippet(directiveDefinition);
-      buildErrors.addAll(snippetResults.getBuildErrors());
+      errors.addAll(snippetResults.getBuildErrors());
     }
+    metrics.stop(BuildMetrics.Phase.SNIPPET_RESOLUTION, resolutionStart, relativePath);
 
-    if (snippetCount > 0) {
-      copyOperations.add(new CopyOperation(source, destination, true));
-    } else {
-      copyOperations.add(new CopyOperation(source, destination, false));
-    }
+    FileResult result =
+        new FileResult(
+            relativePath,
+            new CopyOperation(
+                source,
+                destination,
+                relativePath,
+                inputHash,
+                contentResults.getResult(),
+                new ArrayList<>(referencedSources)));
+    result.buildErrors.addAll(errors);
+    result.directives.addAll(directives);
+    return result;
   }
 
+  /**
+   * Write every output. Directories are created first, a level at a time, so files can then be
+   * written in any order on {@link BuildOptions#getWriteParallelism()} threads. Counts and the
+   * manifest are updated afterwards in the order of the copy operations.
+   */
   private void executeCopyOperations() throws IOException {
+    BoundedExecutor executor =
+        new BoundedExecutor(
+            options.getWriteParallelism(), options.getMaxInFlightWrites(), "choss-writer");
+    // Sorted by depth, so the parent of every directory exists before it is created.
+    Map<Integer, Set<Path>> directoriesByDepth = new TreeMap<>();
+    List<CopyOperation> fileOperations = new ArrayList<>();
     for (CopyOperation copyOperation : copyOperations) {
-      if (copyOperation.injectSnippets) {
-        List<String> linesWithSnippets =
-            snippetInjector.injectSnippets(copyOperation.source, snippetCache.getSnippetMap());
-        Files.write(copyOperation.destination, linesWithSnippets, StandardCharsets.UTF_8);
-        this.filesCopiedWithSnippets++;
+      Path directory;
+      if (!copyOperation.injectSnippets && Files.isDirectory(copyOperation.source)) {
+        directory = copyOperation.destination;
       } else {
-        Files.copy(copyOperation.source, copyOperation.destination, REPLACE_EXISTING);
-        if (Files.isRegularFile(copyOperation.source)) {
-          filesCopiedWithoutSnippets++;
+        fileOperations.add(copyOperation);
+        directory = copyOperation.destination.getParent();
+      }
+      if (directory != null) {
+        directoriesByDepth
+            .computeIfAbsent(directory.getNameCount(), k -> new TreeSet<>())
+            .add(directory);
+      }
+    }
+
+    long start = metrics.start();
+    for (Set<Path> directories : directoriesByDepth.values()) {
+      List<Callable<Path>> creates = new ArrayList<>();
+      for (Path directory : directories) {
+        // The directory may already exist and contain outputs of a previous build.
+        creates.add(() -> Files.createDirectories(directory));
+      }
+      executor.runAll(creates);
+    }
+    metrics.stop(BuildMetrics.Phase.COPY, start);
+
+    List<Callable<WriteResult>> writes = new ArrayList<>();
+    for (CopyOperation copyOperation : fileOperations) {
+      writes.add(() -> write(copyOperation));
+    }
+    List<WriteResult> results = executor.runAll(writes);
+    for (int i = 0; i < fileOperations.size(); i++) {
+      CopyOperation copyOperation = fileOperations.get(i);
+      WriteResult result = results.get(i);
+      if (result.outcome == AssetCopier.Outcome.UNCHANGED) {
+        filesUnchanged++;
+      } else if (copyOperation.injectSnippets) {
+        filesCopiedWithSnippets++;
+      } else if (result.outcome == AssetCopier.Outcome.LINKED) {
+        filesLinked++;
+      } else if (result.outcome == AssetCopier.Outcome.SKIPPED) {
+        assetsSkipped++;
+      } else if (result.regularFile) {
+        filesCopiedWithoutSnippets++;
+      }
+      if (copyOperation.inputHash != null) {
+        recordInManifest(copyOperation, result.outputHash);
+      }
+    }
+  }
+
+  /** Write the output of a file. Runs on any writer thread. */
+  private WriteResult write(CopyOperation copyOperation) throws IOException {
+    long start = metrics.start();
+    if (options.isSync()) {
+      WriteResult result = writeIfChanged(copyOperation);
+      if (result != null) {
+        metrics.stop(
+            copyOperation.injectSnippets ? BuildMetrics.Phase.INJECTION : BuildMetrics.Phase.COPY,
+            start);
+        return result;
+      }
+    }
+    if (copyOperation.injectSnippets) {
+      // The output may be a link left by a previous build. Never write through it.
+      Files.deleteIfExists(copyOperation.destination);
+      snippetInjector.writeWithSnippets(
+          copyOperation.source,
+          copyOperation.directives,
+          snippetCache.getRenderedSnippets(copyOperation.directives),
+          copyOperation.destination);
+      metrics.addBytesRead(Files.size(copyOperation.source));
+      metrics.addBytesWritten(Files.size(copyOperation.destination));
+      String outputHash =
+          copyOperation.inputHash == null ? null : FileHashes.sha256(copyOperation.destination);
+      metrics.stop(BuildMetrics.Phase.INJECTION, start, copyOperation.relativePath);
+      return new WriteResult(AssetCopier.Outcome.COPIED, true, outputHash);
+    }
+    AssetCopier.Outcome outcome = assetCopier.copy(copyOperation.source, copyOperation.destination);
+    boolean regularFile = Files.isRegularFile(copyOperation.source);
+    if (outcome == AssetCopier.Outcome.COPIED && regularFile) {
+      long size = Files.size(copyOperation.source);
+      metrics.addBytesRead(size);
+      metrics.addBytesWritten(size);
+    }
+    metrics.stop(BuildMetrics.Phase.COPY, start);
+    return new WriteResult(outcome, regularFile, copyOperation.inputHash);
+  }
+
+  /**
+   * Write an output only if its bytes differ from the file on disk, so unchanged outputs keep their
+   * modified time. A link is never kept, the output is written as a regular file. Assets are
+   * compared by size and modified time instead if the asset copier does, so they are not read.
+   *
+   * @return null if the file is an asset that differs, and is left to the asset copier.
+   */
+  private WriteResult writeIfChanged(CopyOperation copyOperation) throws IOException {
+    Path destination = copyOperation.destination;
+    boolean existing = Files.isRegularFile(destination, LinkOption.NOFOLLOW_LINKS);
+    if (copyOperation.injectSnippets) {
+      Map<SnippetDirective, RenderedSnippet> snippets =
+          snippetCache.getRenderedSnippets(copyOperation.directives);
+      // Rendered once to compare it with the output on disk, and only written if it differs.
+      MessageDigest digest = copyOperation.inputHash == null ? null : FileHashes.newDigest();
+      boolean unchanged;
+      try (ComparingOutputStream comparison =
+          new ComparingOutputStream(existing ? destination : null, digest)) {
+        snippetInjector.renderWithSnippets(
+            copyOperation.source, copyOperation.directives, snippets, comparison);
+        unchanged = comparison.matches();
+      }
+      metrics.addBytesRead(Files.size(copyOperation.source));
+      String outputHash = digest == null ? null : FileHashes.toHex(digest.digest());
+      if (unchanged) {
+        return new WriteResult(AssetCopier.Outcome.UNCHANGED, true, outputHash);
+      }
+      Files.deleteIfExists(destination);
+      snippetInjector.writeWithSnippets(
+          copyOperation.source, copyOperation.directives, snippets, destination);
+      metrics.addBytesRead(Files.size(copyOperation.source));
+      metrics.addBytesWritten(Files.size(destination));
+      return new WriteResult(AssetCopier.Outcome.COPIED, true, outputHash);
+    }
+    if (existing && assetCopier.comparesStat()) {
+      if (Files.isRegularFile(copyOperation.source)
+          && FileHashes.statFingerprint(copyOperation.source)
+              .equals(FileHashes.statFingerprint(destination))) {
+        return new WriteResult(AssetCopier.Outcome.UNCHANGED, true, copyOperation.inputHash);
+      }
+      return null;
+    }
+    if (existing
+        && Files.isRegularFile(copyOperation.source)
+        && FileHashes.sameContent(copyOperation.source, destination)) {
+      metrics.addBytesRead(Files.size(copyOperation.source));
+      return new WriteResult(AssetCopier.Outcome.UNCHANGED, true, copyOperation.inputHash);
+    }
+    return null;
+  }
+
+  /**
+   * True if the output of the previous build can be kept. That is the case when the file, every
+   * source file it referenced and the output on disk all still have the hashes recorded in the
+   * manifest.
+   */
+  private boolean isUnchanged(
+      String inputHash, Path source, Path destination, String relativePath) throws IOException {
+    BuildManifest.Entry entry = previousManifest.getEntry(relativePath);
+    if (entry == null || !Files.isRegularFile(destination)) {
+      return false;
+    }
+    if (!entry.getInputHash().equals(inputHash)) {
+      return false;
+    }
+    for (String referencedSource : entry.getReferencedSources()) {
+      String hash = sourceHash(referencedSource);
+      if (hash == null || !hash.equals(previousManifest.getSourceHash(referencedSource))) {
+        return false;
+      }
+    }
+    String outputHash =
+        isContentFile(source) ? FileHashes.sha256(destination) : fingerprint(destination, false);
+    return entry.getOutputHash().equals(outputHash);
+  }
+
+  /**
+   * Hash of a file in the docs source directory. Files that are not content files may be compared
+   * by size and modified time instead, see {@link AssetStrategy#SKIP_UNCHANGED}.
+   */
+  private String fingerprint(Path file, boolean contentFile) throws IOException {
+    if (!contentFile && assetCopier.comparesStat()) {
+      return FileHashes.statFingerprint(file);
+    }
+    return FileHashes.sha256(file);
+  }
+
+  /** Carry the manifest entry of an unchanged file over to this build. */
+  private void keepPreviousOutput(String relativePath) throws IOException {
+    BuildManifest.Entry entry = previousManifest.getEntry(relativePath);
+    manifest.putEntry(relativePath, entry);
+    for (String referencedSource : entry.getReferencedSources()) {
+      manifest.putSourceHash(referencedSource, sourceHash(referencedSource));
+    }
+    Path source = sourceDirectory.resolve(relativePath);
+    if (isContentFile(source)) {
+      // An index saved by an older build may not know the file. Parsing it is cheap.
+      List<SnippetDirectiveDefinition> directives =
+          previousIndex.contains(source)
+              ? previousIndex.getDirectives(source)
+              : contentFileParser.parse(source).getResult();
+      dependencyIndex.put(source, directives);
+      // Its snippets are still used, even though they are not injected again.
+      for (SnippetDirectiveDefinition directive : directives) {
+        seenSnippetDirectives.add(directive.getDirective());
+      }
+    }
+    filesUnchanged++;
+  }
+
+  private void recordInManifest(CopyOperation copyOperation, String outputHash)
+      throws IOException {
+    manifest.putEntry(
+        copyOperation.relativePath,
+        new BuildManifest.Entry(
+            copyOperation.inputHash, outputHash, copyOperation.referencedSources));
+    for (String referencedSource : copyOperation.referencedSources) {
+      manifest.putSourceHash(referencedSource, sourceHash(referencedSource));
+    }
+  }
+
+  /**
+   * Hash of a referenced source file, or null if it does not exist. Hashed at most once per build
+   * unless two threads ask for the same file at the same time.
+   */
+  private String sourceHash(String sourcePath) throws IOException {
+    String hash = sourceHashes.get(sourcePath);
+    if (hash == null) {
+      Path path = pathFactory.apply(sourcePath);
+      if (!Files.isRegularFile(path)) {
+        return null;
+      }
+      hash = FileHashes.sha256(path);
+      sourceHashes.put(sourcePath, hash);
+    }
+    return hash;
+  }
+
+  /**
+   * Delete outputs of the previous build whose file no longer exists in the source directory, and
+   * the directories they leave empty.
+   */
+  private void deleteStaleOutputs(Path targetDirectory) throws IOException {
+    for (String relativePath : previousManifest.getEntries().keySet()) {
+      // Excluded paths in the target directory are never touched.
+      if (manifest.getEntry(relativePath) == null
+          && !docsWalker.isExcluded(targetDirectory.getFileSystem().getPath(relativePath))) {
+        log.info("Deleting stale output: " + relativePath);
+        Path output = targetDirectory.resolve(relativePath);
+        Files.deleteIfExists(output);
+        deleteEmptyParents(targetDirectory, output);
+      }
+    }
+  }
+
+  /** Delete the parents of a deleted output up to the target directory, while they are empty. */
+  private static void deleteEmptyParents(Path targetDirectory, Path output) throws IOException {
+    for (Path parent = output.getParent();
+        parent != null && !parent.equals(targetDirectory) && parent.startsWith(targetDirectory);
+        parent = parent.getParent()) {
+      try {
+        if (!Files.deleteIfExists(parent)) {
+          return;
         }
+      } catch (DirectoryNotEmptyException e) {
+        // Holds other outputs, or excluded paths.
+        return;
       }
     }
   }
 
+  /**
+   * Delete target files that no walked file maps to, and the directories they leave empty.
+   * Excluded paths are not walked, so they are kept.
+   */
+  private void deleteOrphanedOutputs(List<FileResult> results) throws IOException {
+    Set<Path> outputs = new HashSet<>();
+    for (FileResult result : results) {
+      outputs.add(targetDirectory.resolve(result.relativePath));
+    }
+    List<Path> targets = docsWalker.walk(targetDirectory);
+    // Children before their directory.
+    Collections.reverse(targets);
+    for (Path target : targets) {
+      if (outputs.contains(target)) {
+        continue;
+      }
+      if (Files.isDirectory(target, LinkOption.NOFOLLOW_LINKS)) {
+        try {
+          Files.deleteIfExists(target);
+        } catch (DirectoryNotEmptyException e) {
+          // Holds excluded paths.
+        }
+      } else {
+        log.info("Deleting orphaned output: " + targetDirectory.relativize(target));
+        Files.deleteIfExists(target);
+      }
+    }
+  }
+
+  private void saveMetrics() throws IOException {
+    metrics.setCount("filesCopiedWithSnippets", filesCopiedWithSnippets);
+    metrics.setCount("filesCopiedWithoutSnippets", filesCopiedWithoutSnippets);
+    metrics.setCount("filesLinked", filesLinked);
+    metrics.setCount("filesSkippedBySizeAndModifiedTime", assetsSkipped);
+    metrics.setCount("filesUnchanged", filesUnchanged);
+    metrics.setCount("buildErrors", buildErrors.size());
+
+    List<BuildMetrics.SourceFileReferences> sourceFiles = new ArrayList<>();
+    Set<Path> seen = new HashSet<>();
+    for (Path sourceFile : dependencyIndex.getSourceFiles()) {
+      // The same file may be written differently in different directives.
+      if (seen.add(normalize(sourceFile))) {
+        int references = 0;
+        for (List<SnippetDirectiveDefinition> tagReferences :
+            dependencyIndex.getReferences(sourceFile).values()) {
+          references += tagReferences.size();
+        }
+        sourceFiles.add(
+            new BuildMetrics.SourceFileReferences(
+                sourceFile.toString(),
+                references,
+                dependencyIndex.getContentFilesReferencing(sourceFile).size()));
+      }
+    }
+    sourceFiles.sort(
+        Comparator.comparingInt(BuildMetrics.SourceFileReferences::getReferences).reversed());
+    metrics.setMostReferencedSourceFiles(
+        sourceFiles.subList(0, Math.min(BuildMetrics.TOP_FILES, sourceFiles.size())));
+    metrics.finish();
+
+    if (!options.getMetricsPath().isEmpty()) {
+      metrics.save(pathFactory.apply(options.getMetricsPath()));
+    }
+  }
+
+  /** Timings and counters of the last build or rebuild. */
+  BuildMetrics getMetrics() {
+    return metrics;
+  }
+
   private boolean isContentFile(Path path) {
     return contentMatcher.matches(path);
   }
@@ -145,10 +910,8 @@ class DocsBuilder {
     if (Files.exists(destination)) {
       // Delete destination.
       log.info("Emptying directory: " + destination);
-      Files.walk(destination)
-          .sorted(Comparator.reverseOrder())
-          .map(Path::toFile)
-          .forEach(File::delete);
+      // Excluded paths are kept, and never walked.
+      docsWalker.deleteContents(destination);
     } else {
       Files.createDirectories(destination);
     }
@@ -167,6 +930,10 @@ class DocsBuilder {
         unUsedSnippets.add(snippetCache.getSnippetMap().get(snippetDirective));
       }
     }
+    // The cache is filled concurrently, sort so the warnings are stable between builds.
+    unUsedSnippets.sort(
+        Comparator.comparing((Snippet snippet) -> snippet.getDirective().getPath().toString())
+            .thenComparingInt(Snippet::getLineNumber));
 
     if (!unUsedSnippets.isEmpty()) {
       log.warn(
@@ -183,16 +950,85 @@ class DocsBuilder {
     }
   }
 
+  private static FileResult call(Callable<FileResult> task) throws IOException {
+    try {
+      return task.call();
+    } catch (IOException | RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IllegalStateException(e.getMessage(), e);
+    }
+  }
+
+  private static FileResult get(Future<FileResult> future)
+      throws IOException, InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause().getMessage(), e.getCause());
+    }
+  }
+
+  // Data class. What processing a single walked file produced.
+  private static class FileResult {
+    private final String relativePath;
+    // Null if the output of the previous incremental build is up to date.
+    private final CopyOperation copyOperation;
+    private final List<BuildError> buildErrors = new ArrayList<>();
+    private final List<SnippetDirective> directives = new ArrayList<>();
+
+    FileResult(String relativePath, CopyOperation copyOperation) {
+      this.relativePath = relativePath;
+      this.copyOperation = copyOperation;
+    }
+  }
+
+  // Data class. What writing a single output did.
+  private static class WriteResult {
+    private final AssetCopier.Outcome outcome;
+    private final boolean regularFile;
+    // Only computed by incremental builds.
+    private final String outputHash;
+
+    WriteResult(AssetCopier.Outcome outcome, boolean regularFile, String outputHash) {
+      this.outcome = outcome;
+      this.regularFile = regularFile;
+      this.outputHash = outputHash;
+    }
+  }
+
   // Data class
   private static class CopyOperation {
     private final Path source;
     private final Path destination;
+    private final String relativePath;
+    // Only computed by incremental builds.
+    private final String inputHash;
     private final boolean injectSnippets;
+    // Found while resolving snippets, reused so the content file is not parsed a second time.
+    private final List<SnippetDirectiveDefinition> directives;
+    private final List<String> referencedSources;
 
-    CopyOperation(Path source, Path destination, boolean injectSnippets) {
+    CopyOperation(
+        Path source,
+        Path destination,
+        String relativePath,
+        String inputHash,
+        List<SnippetDirectiveDefinition> directives,
+        List<String> referencedSources) {
       this.source = source;
       this.destination = destination;
-      this.injectSnippets = injectSnippets;
+      this.relativePath = relativePath;
+      this.inputHash = inputHash;
+      this.injectSnippets = !directives.isEmpty();
+      this.directives = directives;
+      this.referencedSources = referencedSources;
     }
   }
 }
@@ -0,0 +1,383 @@
+package com.github.ryancerf;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves builds to {@link DocsDaemonClient}s on a localhost port, with one {@link DocsBuilder} that
+ * keeps its snippet cache and directive graph warm between builds. Clients skip starting a JVM and
+ * Maven, and the daemon skips parsing source files that did not change.
+ *
+ * <p>The port, a random token and the settings of the daemon are written to the daemon file.
+ * Clients must send the token, the docs directories the daemon builds and the same settings,
+ * anything else is rejected so the client builds in process instead, with its own settings. Builds
+ * run one at a time, and their log is streamed back to the client. A client that does not send its
+ * handshake in time, or fails in another way, is dropped and the next one is served. Only the
+ * owner may read the daemon file, where the file system supports POSIX permissions.
+ *
+ * <p>Before each build the size and modified time of every referenced source file is compared with
+ * the previous build. Changed files are dropped from the snippet cache, the others are not read.
+ */
+class DocsDaemon implements Closeable {
+  static final String PROTOCOL = "choss-daemon 2";
+  static final String PORT = "port";
+  static final String TOKEN = "token";
+  static final String SETTINGS = "settings";
+  static final int DEFAULT_HANDSHAKE_TIMEOUT_MILLIS = 10_000;
+  // Stat of a referenced source file that does not exist.
+  private static final String MISSING = "missing";
+
+  private final DocsBuilder docsBuilder;
+  private final Callable<Boolean> build;
+  private final ClientLog log;
+  private final String project;
+  private final String settings;
+  // Stat of every referenced source file after the last build.
+  private final Map<Path, String> sourceFileStats = new HashMap<>();
+  private int handshakeTimeoutMillis = DEFAULT_HANDSHAKE_TIMEOUT_MILLIS;
+  private ServerSocket serverSocket;
+  private Path daemonFile;
+
+  /**
+   * @param docsBuilder built with {@code log}, so its messages reach the client.
+   * @param build runs a full build with the docs builder, returns false if it failed.
+   * @param project the docs directories the daemon builds, see {@link #project(Path, Path)}.
+   * @param settings what {@code build} builds with, see {@link #settings}.
+   */
+  DocsDaemon(
+      DocsBuilder docsBuilder,
+      Callable<Boolean> build,
+      ClientLog log,
+      String project,
+      String settings) {
+    this.docsBuilder = docsBuilder;
+    this.build = build;
+    this.log = log;
+    this.project = project;
+    this.settings = settings;
+  }
+
+  /** What a client must send to be served by a daemon, so it never builds another project. */
+  static String project(Path docsSourceDirectory, Path docsTargetDirectory) {
+    return docsSourceDirectory.toAbsolutePath().normalize()
+        + " -> "
+        + docsTargetDirectory.toAbsolutePath().normalize();
+  }
+
+  /**
+   * What a client must send to be served by a daemon, so a daemon never builds with other options
+   * than the client would have built with. A hash, as the comment syntaxes table is long.
+   */
+  static String settings(
+      String contentGlob,
+      BuildOptions options,
+      Charset charset,
+      CommentSyntaxes commentSyntaxes,
+      long lazySnippetThreshold,
+      long snippetMemoryBudget) {
+    String description =
+        "contentGlob="
+            + contentGlob
+            + " "
+            + options
+            + " charset="
+            + charset.name()
+            + " commentSyntaxes="
+            + commentSyntaxes
+            + " lazySnippetThreshold="
+            + lazySnippetThreshold
+            + " snippetMemoryBudget="
+            + snippetMemoryBudget;
+    return FileHashes.toHex(
+        FileHashes.newDigest().digest(description.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  /** How long a client may take to send its handshake. Visible for testing. */
+  void setHandshakeTimeoutMillis(int handshakeTimeoutMillis) {
+    this.handshakeTimeoutMillis = handshakeTimeoutMillis;
+  }
+
+  /** Listen on a free localhost port, and write it to the daemon file. */
+  void start(Path daemonFile) throws IOException {
+    this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    this.daemonFile = daemonFile;
+    byte[] random = new byte[16];
+    new SecureRandom().nextBytes(random);
+    Properties properties = new Properties();
+    properties.setProperty(PORT, Integer.toString(serverSocket.getLocalPort()));
+    properties.setProperty(TOKEN, FileHashes.toHex(random));
+    properties.setProperty(SETTINGS, settings);
+    if (daemonFile.getParent() != null) {
+      Files.createDirectories(daemonFile.getParent());
+    }
+    // Created anew, so a file left by a daemon that was killed does not keep its permissions.
+    Files.deleteIfExists(daemonFile);
+    if (daemonFile.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+      Files.createFile(
+          daemonFile,
+          PosixFilePermissions.asFileAttribute(
+              EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE)));
+    }
+    try (OutputStream out = Files.newOutputStream(daemonFile)) {
+      properties.store(out, "choss docs daemon");
+    }
+  }
+
+  /** Serve clients one at a time, until the daemon is closed. */
+  void serve() throws IOException {
+    String token = readProperty(daemonFile, TOKEN);
+    while (!serverSocket.isClosed()) {
+      try (Socket socket = serverSocket.accept()) {
+        socket.setSoTimeout(handshakeTimeoutMillis);
+        serve(socket, token);
+      } catch (IOException e) {
+        if (serverSocket.isClosed()) {
+          return;
+        }
+        // The client went away or timed out. Serve the next one.
+        log.getDelegate().warn("Docs daemon client dropped: " + e);
+      }
+    }
+  }
+
+  private void serve(Socket socket, String token) throws IOException {
+    BufferedReader in =
+        new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    PrintWriter out =
+        new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+    if (!PROTOCOL.equals(in.readLine()) || !token.equals(in.readLine())) {
+      reply(out, "REJECTED", "Unknown client");
+      return;
+    }
+    String clientProject = in.readLine();
+    if (!project.equals(clientProject)) {
+      reply(out, "REJECTED", "The daemon builds " + project + ", not " + clientProject);
+      return;
+    }
+    if (!settings.equals(in.readLine())) {
+      reply(out, "REJECTED", "The daemon builds with other options");
+      return;
+    }
+    long start = System.nanoTime();
+    boolean success;
+    log.setClient(out);
+    try {
+      success = build();
+    } catch (Exception e) {
+      log.error("Docs daemon build failed: " + e.getMessage());
+      success = false;
+    } finally {
+      log.setClient(null);
+    }
+    log.getDelegate()
+        .info(
+            "Served a build in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                + " ms. Waiting for clients.");
+    reply(out, "DONE", Boolean.toString(success));
+  }
+
+  /** Drop changed source files from the cache, then build. Visible for testing. */
+  boolean build() throws Exception {
+    List<Path> changed = new ArrayList<>();
+    for (Map.Entry<Path, String> entry : sourceFileStats.entrySet()) {
+      if (!entry.getValue().equals(stat(entry.getKey()))) {
+        changed.add(entry.getKey());
+      }
+    }
+    docsBuilder.invalidateSourceFiles(changed);
+    boolean success = build.call();
+    sourceFileStats.clear();
+    for (Path sourceFile : docsBuilder.getReferencedSourceFiles()) {
+      sourceFileStats.put(sourceFile, stat(sourceFile));
+    }
+    return success;
+  }
+
+  private static String stat(Path path) {
+    try {
+      return FileHashes.statFingerprint(path);
+    } catch (IOException e) {
+      return MISSING;
+    }
+  }
+
+  private static void reply(PrintWriter out, String kind, String message) {
+    out.println(kind + " " + message);
+    out.flush();
+  }
+
+  static String readProperty(Path daemonFile, String key) throws IOException {
+    Properties properties = new Properties();
+    try (InputStreamReader in =
+        new InputStreamReader(Files.newInputStream(daemonFile), StandardCharsets.ISO_8859_1)) {
+      properties.load(in);
+    }
+    return properties.getProperty(key);
+  }
+
+  /** Stop serving and delete the daemon file. */
+  @Override
+  public void close() throws IOException {
+    if (serverSocket != null) {
+      serverSocket.close();
+      Files.deleteIfExists(daemonFile);
+    }
+  }
+
+  /**
+   * Logs to the daemon's own log, and to the client of the build being served. Every message is
+   * sent as lines starting with its level.
+   */
+  static class ClientLog implements Log {
+    private final Log delegate;
+    private volatile PrintWriter client;
+
+    ClientLog(Log delegate) {
+      this.delegate = delegate;
+    }
+
+    Log getDelegate() {
+      return delegate;
+    }
+
+    void setClient(PrintWriter client) {
+      this.client = client;
+    }
+
+    private synchronized void send(String level, CharSequence content, Throwable error) {
+      PrintWriter out = client;
+      if (out == null) {
+        return;
+      }
+      String message = content == null ? String.valueOf(error) : content.toString();
+      for (String line : message.split("\r\n|\r|\n", -1)) {
+        out.println(level + " " + line);
+      }
+      out.flush();
+    }
+
+    @Override
+    public boolean isDebugEnabled() {
+      return delegate.isDebugEnabled();
+    }
+
+    @Override
+    public void debug(CharSequence content) {
+      delegate.debug(content);
+      if (delegate.isDebugEnabled()) {
+        send("DEBUG", content, null);
+      }
+    }
+
+    @Override
+    public void debug(CharSequence content, Throwable error) {
+      delegate.debug(content, error);
+      if (delegate.isDebugEnabled()) {
+        send("DEBUG", content, error);
+      }
+    }
+
+    @Override
+    public void debug(Throwable error) {
+      delegate.debug(error);
+      if (delegate.isDebugEnabled()) {
+        send("DEBUG", null, error);
+      }
+    }
+
+    @Override
+    public boolean isInfoEnabled() {
+      return delegate.isInfoEnabled();
+    }
+
+    @Override
+    public void info(CharSequence content) {
+      delegate.info(content);
+      send("INFO", content, null);
+    }
+
+    @Override
+    public void info(CharSequence content, Throwable error) {
+      delegate.info(content, error);
+      send("INFO", content, error);
+    }
+
+    @Override
+    public void info(Throwable error) {
+      delegate.info(error);
+      send("INFO", null, error);
+    }
+
+    @Override
+    public boolean isWarnEnabled() {
+      return delegate.isWarnEnabled();
+    }
+
+    @Override
+    public void warn(CharSequence content) {
+      delegate.warn(content);
+      send("WARN", content, null);
+    }
+
+    @Override
+    public void warn(CharSequence content, Throwable error) {
+      delegate.warn(content, error);
+      send("WARN", content, error);
+    }
+
+    @Override
+    public void warn(Throwable error) {
+      delegate.warn(error);
+      send("WARN", null, error);
+    }
+
+    @Override
+    public boolean isErrorEnabled() {
+      return delegate.isErrorEnabled();
+    }
+
+    @Override
+    public void error(CharSequence content) {
+      delegate.error(content);
+      send("ERROR", content, null);
+    }
+
+    @Override
+    public void error(CharSequence content, Throwable error) {
+      delegate.error(content, error);
+      send("ERROR", content, error);
+    }
+
+    @Override
+    public void error(Throwable error) {
+      delegate.error(error);
+      send("ERROR", null, error);
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package com.github.ryancerf;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.function.BiConsumer;
+
+/**
+ * Asks a running {@link DocsDaemon} to build the docs. Needs only the JDK, so it can be run without
+ * Maven:
+ *
+ * <pre>
+ * java -cp choss-maven-plugin.jar com.github.ryancerf.DocsDaemonClient \
+ *     target/choss/daemon.properties docs/main target/docs/main
+ * </pre>
+ *
+ * <p>Run this way the client has no build options of its own, so it builds with the settings the
+ * daemon was started with. Exits with 0 if the build succeeded, 1 if it failed and 2 if no daemon
+ * serves these docs directories, in which case the caller builds in process.
+ */
+public final class DocsDaemonClient {
+  static final int NO_DAEMON = 2;
+  // A daemon on localhost accepts at once. Anything slower is not a daemon.
+  private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+
+  private DocsDaemonClient() {}
+
+  public static void main(String[] args) {
+    if (args.length != 3) {
+      System.err.println(
+          "Usage: DocsDaemonClient <daemon file> <docs source directory> <docs target directory>");
+      System.exit(NO_DAEMON);
+    }
+    Path daemonFile = Paths.get(args[0]);
+    String settings;
+    try {
+      settings = DocsDaemon.readProperty(daemonFile, DocsDaemon.SETTINGS);
+    } catch (IOException e) {
+      settings = null;
+    }
+    Optional<Boolean> success =
+        settings == null
+            ? Optional.empty()
+            : build(
+                daemonFile,
+                DocsDaemon.project(Paths.get(args[1]), Paths.get(args[2])),
+                settings,
+                (level, line) -> System.out.println("[" + level + "] " + line));
+    System.exit(success.isPresent() ? (success.get() ? 0 : 1) : NO_DAEMON);
+  }
+
+  /**
+   * Run a build on the daemon of the daemon file, and pass every line it logs to {@code output}
+   * with its level, one of DEBUG, INFO, WARN and ERROR.
+   *
+   * @param project the docs directories to build, see {@link DocsDaemon#project(Path, Path)}.
+   * @param settings the options to build with, see {@link DocsDaemon#settings}.
+   * @return whether the build succeeded, or empty if there is no daemon, it could not be reached,
+   *     it builds other docs directories or with other options, or it went away before the build
+   *     finished.
+   */
+  static Optional<Boolean> build(
+      Path daemonFile, String project, String settings, BiConsumer<String, String> output) {
+    Properties properties = new Properties();
+    try (InputStreamReader in =
+        new InputStreamReader(Files.newInputStream(daemonFile), StandardCharsets.ISO_8859_1)) {
+      properties.load(in);
+    } catch (IOException e) {
+      return Optional.empty();
+    }
+    int port;
+    try {
+      port = Integer.parseInt(properties.getProperty(DocsDaemon.PORT, ""));
+    } catch (NumberFormatException e) {
+      return Optional.empty();
+    }
+
+    try (Socket socket = new Socket()) {
+      socket.connect(
+          new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT_MILLIS);
+      PrintWriter out =
+          new PrintWriter(
+              new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+      out.println(DocsDaemon.PROTOCOL);
+      out.println(properties.getProperty(DocsDaemon.TOKEN, ""));
+      out.println(project);
+      out.println(settings);
+      out.flush();
+      BufferedReader in =
+          new BufferedReader(
+              new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+      String line;
+      while ((line = in.readLine()) != null) {
+        int space = line.indexOf(' ');
+        String kind = space < 0 ? line : line.substring(0, space);
+        String message = space < 0 ? "" : line.substring(space + 1);
+        if ("DONE".equals(kind)) {
+          return Optional.of(Boolean.parseBoolean(message));
+        }
+        if ("REJECTED".equals(kind)) {
+          return Optional.empty();
+        }
+        output.accept(kind, message);
+      }
+      return Optional.empty();
+    } catch (IOException e) {
+      // Most often a daemon file left behind by a daemon that was killed.
+      return Optional.empty();
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package com.github.ryancerf;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Builds the docs, then keeps running and serves builds to the build-docs goal run with
+ * useDaemon, with the snippet cache and directive graph kept warm. Stop it with Ctrl-C.
+ */
+@Mojo(name = "docs-daemon", threadSafe = true)
+public class DocsDaemonMojo extends AbstractDocsMojo {
+
+  @Override
+  public void execute() throws MojoExecutionException, MojoFailureException {
+    DocsDaemon.ClientLog log = new DocsDaemon.ClientLog(getLog());
+    DocsBuilder docsBuilder = createDocsBuilder(log);
+    Path daemonFile = daemonFile();
+    try (DocsDaemon daemon =
+        new DocsDaemon(
+            docsBuilder, () -> build(docsBuilder), log, daemonProject(), daemonSettings())) {
+      daemon.build();
+      daemon.start(daemonFile);
+      // Ctrl-C skips the finally blocks, not the shutdown hooks.
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> closeQuietly(daemon)));
+      getLog().info("Docs daemon ready, see " + daemonFile + ". Press Ctrl-C to stop.");
+      daemon.serve();
+    } catch (MojoExecutionException | RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new MojoExecutionException(e.getMessage(), e);
+    }
+  }
+
+  @Override
+  boolean keepsRunning() {
+    return true;
+  }
+
+  private void closeQuietly(DocsDaemon daemon) {
+    try {
+      daemon.close();
+    } catch (IOException e) {
+      getLog().warn("Could not delete the daemon file: " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,310 @@
+package com.github.ryancerf;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+
+/**
+ * Walks the docs source and target directories, leaving out excluded paths.
+ *
+ * <p>Patterns are matched against the path relative to the directory walked, such as
+ * 'vendor/js' or 'guide/intro.md'. They use the syntax of {@link FileSystem#getPathMatcher}, and
+ * 'glob:' is assumed if no syntax is given. A glob starting with '**&#47;' also matches paths at
+ * the top of the directory, so '**&#47;*.md' matches 'intro.md'. An excluded directory is pruned:
+ * it is never listed, so nothing below it is read or stat'ed. If there are include patterns, only
+ * files matching one of them are walked. Directories are walked unless they are excluded.
+ *
+ * <p>With a parallelism above 1 the subdirectories of a directory are listed concurrently on a
+ * fork/join pool, which hides the latency of listing a directory on network and overlay file
+ * systems. Paths are still returned in the order of a walk on the calling thread.
+ */
+class DocsWalker {
+  private final List<PathMatcher> includes;
+  private final List<PathMatcher> excludes;
+  private final int parallelism;
+
+  DocsWalker(FileSystem fileSystem, List<String> includes, List<String> excludes) {
+    this(fileSystem, includes, excludes, 1);
+  }
+
+  /** @param parallelism most directories listed at once. 1 walks on the calling thread. */
+  DocsWalker(FileSystem fileSystem, List<String> includes, List<String> excludes, int parallelism) {
+    this.includes = matchers(fileSystem, includes);
+    this.excludes = matchers(fileSystem, excludes);
+    this.parallelism = parallelism;
+  }
+
+  /** Every directory and file below the root, and the root itself, in the order of Files.walk. */
+  List<Path> walk(Path root) throws IOException {
+    return walk(root, root);
+  }
+
+  /**
+   * Every directory and file below {@code start}, and start itself. Patterns are matched against
+   * paths relative to {@code root}.
+   */
+  List<Path> walk(Path root, Path start) throws IOException {
+    return walk(root, start, path -> {});
+  }
+
+  /**
+   * Same as {@link #walk(Path, Path)}, and passes every path to {@code onFound} as soon as it is
+   * found, so it can be processed while the walk goes on. With a parallelism above 1 onFound is
+   * called from several threads, in no particular order.
+   */
+  List<Path> walk(Path root, Path start, Consumer<Path> onFound) throws IOException {
+    List<Path> paths = new ArrayList<>();
+    if (isExcluded(root.relativize(start))) {
+      return paths;
+    }
+    if (parallelism > 1 && Files.isDirectory(start, LinkOption.NOFOLLOW_LINKS)) {
+      return invoke(new ListDirectory(root, start, onFound));
+    }
+    Files.walkFileTree(
+        start,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            if (!dir.equals(start) && matchesAny(excludes, root.relativize(dir))) {
+              return FileVisitResult.SKIP_SUBTREE;
+            }
+            paths.add(dir);
+            onFound.accept(dir);
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            Path relativePath = root.relativize(file);
+            if (!matchesAny(excludes, relativePath) && isIncluded(relativePath)) {
+              paths.add(file);
+              onFound.accept(file);
+            }
+            return FileVisitResult.CONTINUE;
+          }
+        });
+    return paths;
+  }
+
+  /** True if the path, or one of the directories it is in, is excluded. */
+  boolean isExcluded(Path relativePath) {
+    if (excludes.isEmpty() || relativePath.toString().isEmpty()) {
+      return false;
+    }
+    for (int i = 1; i <= relativePath.getNameCount(); i++) {
+      if (matchesAny(excludes, relativePath.subpath(0, i))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Delete everything in the root that is not excluded, and the root itself if it ends up empty.
+   * Directories that still contain excluded paths are kept.
+   */
+  void deleteContents(Path root) throws IOException {
+    if (parallelism > 1 && Files.isDirectory(root, LinkOption.NOFOLLOW_LINKS)) {
+      invoke(new DeleteContents(root, root));
+      return;
+    }
+    Files.walkFileTree(
+        root,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            if (!dir.equals(root) && matchesAny(excludes, root.relativize(dir))) {
+              return FileVisitResult.SKIP_SUBTREE;
+            }
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+              throws IOException {
+            if (!matchesAny(excludes, root.relativize(file))) {
+              Files.deleteIfExists(file);
+            }
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+            if (e != null) {
+              throw e;
+            }
+            try {
+              Files.deleteIfExists(dir);
+            } catch (DirectoryNotEmptyException notEmpty) {
+              // Holds excluded paths.
+            }
+            return FileVisitResult.CONTINUE;
+          }
+        });
+  }
+
+  /** Run a task on a pool of {@link #parallelism} threads, and rethrow its IOException. */
+  private <T> T invoke(ForkJoinTask<T> task) throws IOException {
+    ForkJoinPool pool =
+        new ForkJoinPool(
+            parallelism,
+            p -> {
+              ForkJoinWorkerThread thread =
+                  ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+              thread.setName("choss-walker-" + thread.getPoolIndex());
+              return thread;
+            },
+            null,
+            false);
+    try {
+      return pool.invoke(task);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  private static List<Path> list(Path dir) {
+    List<Path> children = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+      for (Path child : stream) {
+        children.add(child);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return children;
+  }
+
+  /**
+   * Lists a directory, forks a task for each subdirectory that is not excluded, and returns the
+   * directory followed by its children and their subtrees, in the order they were listed.
+   */
+  @SuppressWarnings("serial")
+  private final class ListDirectory extends RecursiveTask<List<Path>> {
+    private final Path root;
+    private final Path dir;
+    private final Consumer<Path> onFound;
+
+    ListDirectory(Path root, Path dir, Consumer<Path> onFound) {
+      this.root = root;
+      this.dir = dir;
+      this.onFound = onFound;
+    }
+
+    @Override
+    protected List<Path> compute() {
+      onFound.accept(dir);
+      // A path, or the task walking a subdirectory, for every child in the order listed.
+      List<Object> children = new ArrayList<>();
+      for (Path child : list(dir)) {
+        Path relativePath = root.relativize(child);
+        if (matchesAny(excludes, relativePath)) {
+          continue;
+        }
+        if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+          children.add(new ListDirectory(root, child, onFound).fork());
+        } else if (isIncluded(relativePath)) {
+          children.add(child);
+          onFound.accept(child);
+        }
+      }
+      List<Path> paths = new ArrayList<>();
+      paths.add(dir);
+      for (Object child : children) {
+        if (child instanceof ListDirectory) {
+          paths.addAll(((ListDirectory) child).join());
+        } else {
+          paths.add((Path) child);
+        }
+      }
+      return paths;
+    }
+  }
+
+  /** Deletes like a walk on the calling thread does, with a task forked per subdirectory. */
+  @SuppressWarnings("serial")
+  private final class DeleteContents extends RecursiveAction {
+    private final Path root;
+    private final Path dir;
+
+    DeleteContents(Path root, Path dir) {
+      this.root = root;
+      this.dir = dir;
+    }
+
+    @Override
+    protected void compute() {
+      List<DeleteContents> subdirectories = new ArrayList<>();
+      try {
+        for (Path child : list(dir)) {
+          if (matchesAny(excludes, root.relativize(child))) {
+            continue;
+          }
+          if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+            subdirectories.add(new DeleteContents(root, child));
+          } else {
+            Files.deleteIfExists(child);
+          }
+        }
+        invokeAll(subdirectories);
+        try {
+          Files.deleteIfExists(dir);
+        } catch (DirectoryNotEmptyException notEmpty) {
+          // Holds excluded paths.
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  private boolean isIncluded(Path relativePath) {
+    return includes.isEmpty() || matchesAny(includes, relativePath);
+  }
+
+  private static boolean matchesAny(List<PathMatcher> matchers, Path relativePath) {
+    for (PathMatcher matcher : matchers) {
+      if (matcher.matches(relativePath)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static List<PathMatcher> matchers(FileSystem fileSystem, List<String> patterns) {
+    List<PathMatcher> matchers = new ArrayList<>();
+    for (String pattern : patterns) {
+      String trimmed = pattern.trim();
+      if (trimmed.startsWith("regex:")) {
+        matchers.add(fileSystem.getPathMatcher(trimmed));
+      } else if (!trimmed.isEmpty()) {
+        String glob = trimmed.startsWith("glob:") ? trimmed.substring("glob:".length()) : trimmed;
+        matchers.add(fileSystem.getPathMatcher("glob:" + glob));
+        // '**/' needs at least one directory, so '**/*.md' alone would not match 'intro.md'.
+        if (glob.startsWith("**/")) {
+          matchers.add(fileSystem.getPathMatcher("glob:" + glob.substring("**/".length())));
+        }
+      }
+    }
+    return matchers;
+  }
+}
@@ -0,0 +1,137 @@
+package com.github.ryancerf;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Watches the docs source directory and the directories of every referenced source file, and asks
+ * the {@link DocsBuilder} to rebuild what a change affects.
+ *
+ * <p>The docs builder keeps its snippet cache and directive graph between rebuilds, so a rebuild
+ * only parses the changed files.
+ */
+class DocsWatcher {
+  // Editors often save a file in several steps. Wait this long for the burst of events to end.
+  private static final long SETTLE_MILLIS = 50;
+
+  private final DocsBuilder docsBuilder;
+  private final WatchService watchService;
+  private final Log log;
+  private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+  // Changes of a failed rebuild. Retried with the next change, as nothing was written for them.
+  private final Set<Path> pendingChanges = new LinkedHashSet<>();
+  private Runnable onWatching = () -> {};
+
+  /**
+   * @param docsBuilder a docs builder that has already run a full build.
+   * @param lastBuildSucceeded if false, the next rebuild renders the whole docs directory.
+   */
+  DocsWatcher(
+      DocsBuilder docsBuilder, WatchService watchService, Log log, boolean lastBuildSucceeded) {
+    this.docsBuilder = docsBuilder;
+    this.watchService = watchService;
+    this.log = log;
+    if (!lastBuildSucceeded) {
+      pendingChanges.add(docsBuilder.getSourceDirectory());
+    }
+  }
+
+  /**
+   * Run on the watching thread every time the watcher starts waiting for changes: once every
+   * directory is registered, and after each rebuild. Visible for testing.
+   */
+  void setOnWatching(Runnable onWatching) {
+    this.onWatching = onWatching;
+  }
+
+  /** Rebuild on every change until the thread is interrupted. */
+  void watch() throws IOException, InterruptedException {
+    registerDirectories();
+    onWatching.run();
+    while (!Thread.currentThread().isInterrupted()) {
+      awaitChangesAndRebuild(watchService.take());
+      onWatching.run();
+    }
+  }
+
+  private void awaitChangesAndRebuild(WatchKey firstKey)
+      throws IOException, InterruptedException {
+    Set<Path> changes = new LinkedHashSet<>(pendingChanges);
+    WatchKey key = firstKey;
+    while (key != null) {
+      collectChanges(key, changes);
+      key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    long start = System.nanoTime();
+    if (docsBuilder.rebuild(changes)) {
+      pendingChanges.clear();
+      log.info(
+          "Rebuilt in "
+              + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+              + " ms. Watching for changes.");
+    } else {
+      pendingChanges.addAll(changes);
+      log.error("Rebuild failed. See errors above. Watching for changes.");
+    }
+    // New directories and newly referenced source files need to be watched too.
+    registerDirectories();
+  }
+
+  private void collectChanges(WatchKey key, Set<Path> changes) {
+    Path directory = watchedDirectories.get(key);
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == OVERFLOW) {
+        // Events were lost. Render everything the watcher knows about again.
+        changes.add(docsBuilder.getSourceDirectory());
+        changes.addAll(docsBuilder.getReferencedSourceFiles());
+      } else if (directory != null) {
+        changes.add(directory.resolve((Path) event.context()));
+      }
+    }
+    if (!key.reset()) {
+      // The directory was deleted.
+      watchedDirectories.remove(key);
+    }
+  }
+
+  private void registerDirectories() throws IOException {
+    Path sourceDirectory = docsBuilder.getSourceDirectory();
+    if (Files.isDirectory(sourceDirectory)) {
+      // Excluded directories are not watched.
+      for (Path path : docsBuilder.getDocsWalker().walk(sourceDirectory)) {
+        if (Files.isDirectory(path)) {
+          register(path);
+        }
+      }
+    }
+    for (Path sourceFile : docsBuilder.getReferencedSourceFiles()) {
+      Path directory = sourceFile.toAbsolutePath().getParent();
+      if (directory != null && Files.isDirectory(directory)) {
+        register(directory);
+      }
+    }
+  }
+
+  private void register(Path directory) throws IOException {
+    // Registering a directory twice returns the same key.
+    WatchKey key = directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+    watchedDirectories.put(key, directory);
+  }
+}
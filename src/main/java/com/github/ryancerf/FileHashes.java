@@ -0,0 +1,89 @@
+package com.github.ryancerf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/** Content hashes used to tell whether a file changed between builds. */
+final class FileHashes {
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private FileHashes() {}
+
+  /** Hex encoded SHA-256 of the file contents. */
+  static String sha256(Path path) throws IOException {
+    MessageDigest digest = newDigest();
+    byte[] buffer = new byte[64 * 1024];
+    try (InputStream in = Files.newInputStream(path)) {
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+      }
+    }
+    return toHex(digest.digest());
+  }
+
+  /** Size and modified time of a file. Much cheaper than a hash for large files. */
+  static String statFingerprint(Path path, LinkOption... options) throws IOException {
+    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class, options);
+    return "stat:" + attributes.size() + ":" + attributes.lastModifiedTime().toMillis();
+  }
+
+  /** True if both files have the same bytes. Reads no further than the first difference. */
+  static boolean sameContent(Path first, Path second) throws IOException {
+    if (Files.size(first) != Files.size(second)) {
+      return false;
+    }
+    byte[] firstBuffer = new byte[64 * 1024];
+    byte[] secondBuffer = new byte[64 * 1024];
+    try (InputStream firstIn = Files.newInputStream(first);
+        InputStream secondIn = Files.newInputStream(second)) {
+      while (true) {
+        int read = readFully(firstIn, firstBuffer);
+        if (read != readFully(secondIn, secondBuffer)) {
+          return false;
+        }
+        if (read == 0) {
+          return true;
+        }
+        for (int i = 0; i < read; i++) {
+          if (firstBuffer[i] != secondBuffer[i]) {
+            return false;
+          }
+        }
+      }
+    }
+  }
+
+  private static int readFully(InputStream in, byte[] buffer) throws IOException {
+    int total = 0;
+    int read;
+    while (total < buffer.length && (read = in.read(buffer, total, buffer.length - total)) != -1) {
+      total += read;
+    }
+    return total;
+  }
+
+  static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // Every JVM is required to support SHA-256.
+      throw new IllegalStateException(e.getMessage(), e);
+    }
+  }
+
+  static String toHex(byte[] bytes) {
+    char[] chars = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+      chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+    }
+    return new String(chars);
+  }
+}
@@ -0,0 +1,104 @@
+package com.github.ryancerf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the files of a git working tree that changed since a revision, with the git command line.
+ * Only the index, the working tree and the objects of the local repository are read, never a
+ * remote.
+ */
+final class GitChanges {
+
+  private GitChanges() {}
+
+  /**
+   * Every file that differs between the revision and the working tree, staged or not, including
+   * deleted files and untracked files that are not ignored. A renamed file is both deleted and
+   * added.
+   *
+   * @param directory a directory in the working tree.
+   * @param revision such as 'HEAD' or 'origin/main'.
+   * @return absolute paths below the directory as it was given, in the order git lists them.
+   */
+  static List<Path> changedSince(Path directory, String revision) throws IOException {
+    // Relative to the directory rather than --show-toplevel, which resolves symbolic links, so the
+    // paths can be compared with other paths below the directory when it is reached through one.
+    Path topLevel =
+        directory
+            .toAbsolutePath()
+            .resolve(run(directory, "git", "rev-parse", "--show-cdup").trim())
+            .normalize();
+    List<Path> changedPaths = new ArrayList<>();
+    for (String path :
+        split(run(topLevel, "git", "diff", "--name-only", "-z", "--no-renames", revision, "--"))) {
+      changedPaths.add(topLevel.resolve(path));
+    }
+    for (String path :
+        split(run(topLevel, "git", "ls-files", "-z", "--others", "--exclude-standard"))) {
+      changedPaths.add(topLevel.resolve(path));
+    }
+    return changedPaths;
+  }
+
+  /** Paths printed with -z are separated by NUL, so any file name is read as it is. */
+  private static List<String> split(String output) {
+    List<String> paths = new ArrayList<>();
+    for (String path : output.split("\0")) {
+      if (!path.isEmpty()) {
+        paths.add(path);
+      }
+    }
+    return paths;
+  }
+
+  private static String run(Path directory, String... command) throws IOException {
+    // Errors go to a file, so git never blocks on a full pipe while stdout is read, however many
+    // warnings it prints.
+    Path errorFile = Files.createTempFile("choss-git", ".err");
+    try {
+      Process process =
+          new ProcessBuilder(command)
+              .directory(directory.toAbsolutePath().toFile())
+              .redirectError(errorFile.toFile())
+              .start();
+      process.getOutputStream().close();
+      byte[] output = readAll(process.getInputStream());
+      int exitCode;
+      try {
+        exitCode = process.waitFor();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        process.destroy();
+        throw new IOException("Interrupted while running " + String.join(" ", command), e);
+      }
+      if (exitCode != 0) {
+        throw new IOException(
+            String.join(" ", command)
+                + " failed in "
+                + directory
+                + ": "
+                + new String(Files.readAllBytes(errorFile), StandardCharsets.UTF_8).trim());
+      }
+      return new String(output, StandardCharsets.UTF_8);
+    } finally {
+      Files.deleteIfExists(errorFile);
+    }
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+    }
+    return out.toByteArray();
+  }
+}
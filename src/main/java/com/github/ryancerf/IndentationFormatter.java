@@ -1,12 +1,13 @@
 package com.github.ryancerf;
 
+import java.util.ArrayList;
 import java.util.List;
 
 class IndentationFormatter {
 
   /**
    * Normalize Indentation in source code. Finds min indentation in the block and removes that
-   * amount from every line.
+   * amount from every line. The given lines are not changed.
    */
   List<String> normalizeIndentation(List<String> lines) {
     int sharedIndentation = Integer.MAX_VALUE;
@@ -24,16 +25,14 @@ class IndentationFormatter {
       }
     }
 
-    if (sharedIndentation > 0) {
-      for (int i = 0; i < lines.size(); i++) {
-        String line = lines.get(i);
-        if (line.isEmpty()) {
-          continue;
-        }
-        String normalizedLine = line.substring(sharedIndentation);
-        lines.set(i, normalizedLine);
-      }
+    if (sharedIndentation == 0 || sharedIndentation == Integer.MAX_VALUE) {
+      return lines;
+    }
+    // Do not change the given lines, they may be cached.
+    List<String> normalizedLines = new ArrayList<>(lines.size());
+    for (String line : lines) {
+      normalizedLines.add(line.isEmpty() ? line : line.substring(sharedIndentation));
     }
-    return lines;
+    return normalizedLines;
   }
 }
@@ -0,0 +1,86 @@
+package com.github.ryancerf;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Where the lines of a snippet are in its source file, read only when they are needed.
+ *
+ * <p>Holds the byte range of the lines, so a large source file costs a few numbers per snippet
+ * instead of a copy of every line. Reading the lines fails if the file changed since it was parsed.
+ */
+final class LazySnippetLines {
+  private final TextFileReader textFileReader;
+  private final Path path;
+  // Size and modified time of the file when it was parsed.
+  private final String stat;
+  private final long startOffset;
+  private final long endOffset;
+  private final int lineCount;
+
+  LazySnippetLines(
+      TextFileReader textFileReader,
+      Path path,
+      String stat,
+      long startOffset,
+      long endOffset,
+      int lineCount) {
+    this.textFileReader = textFileReader;
+    this.path = path;
+    this.stat = stat;
+    this.startOffset = startOffset;
+    this.endOffset = endOffset;
+    this.lineCount = lineCount;
+  }
+
+  /** Read the lines. Every call reads them from the file again. */
+  List<String> read() throws IOException {
+    if (!stat.equals(FileHashes.statFingerprint(path))) {
+      throw new IOException("Source file changed since it was parsed: " + path);
+    }
+    List<String> lines = new ArrayList<>(lineCount);
+    try (LineReader reader = textFileReader.open(path, startOffset, endOffset)) {
+      while (reader.nextLine()) {
+        lines.add(reader.line());
+      }
+    }
+    return lines;
+  }
+
+  /** The same lines, in a file with the same content but another size and modified time. */
+  LazySnippetLines withStat(String stat) {
+    return new LazySnippetLines(textFileReader, path, stat, startOffset, endOffset, lineCount);
+  }
+
+  long getStartOffset() {
+    return startOffset;
+  }
+
+  long getEndOffset() {
+    return endOffset;
+  }
+
+  int getLineCount() {
+    return lineCount;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    LazySnippetLines that = (LazySnippetLines) o;
+    return startOffset == that.startOffset
+        && endOffset == that.endOffset
+        && lineCount == that.lineCount
+        && Objects.equals(path, that.path)
+        && Objects.equals(stat, that.stat);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(path, stat, startOffset, endOffset, lineCount);
+  }
+}
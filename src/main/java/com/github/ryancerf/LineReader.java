@@ -0,0 +1,114 @@
+package com.github.ryancerf;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads a text file one line at a time and remembers how each line was terminated.
+ *
+ * <p>Lines end at '\n', '\r\n' or '\r'. {@link #lineTerminator()} returns the terminator that
+ * ended the current line, so a file can be written back with its original line endings. The last
+ * line of a file without a trailing newline has an empty terminator.
+ *
+ * <p>Created by {@link TextFileReader}. Must be closed.
+ */
+final class LineReader implements Closeable {
+  static final int DEFAULT_BUFFER_SIZE = 8192;
+
+  private final Reader reader;
+  private final char[] buffer;
+  private int position = 0;
+  private int limit = 0;
+  private boolean endOfInput = false;
+
+  private String line;
+  private String lineTerminator;
+
+  LineReader(Reader reader) {
+    this(reader, DEFAULT_BUFFER_SIZE);
+  }
+
+  LineReader(Reader reader, int bufferSize) {
+    this.reader = reader;
+    this.buffer = new char[bufferSize];
+  }
+
+  /** Advance to the next line. Returns false once every line has been read. */
+  boolean nextLine() throws IOException {
+    // Only needed when a line does not fit in what is left of the buffer.
+    StringBuilder pending = null;
+    while (true) {
+      if (position >= limit && !fill()) {
+        if (pending == null) {
+          return false;
+        }
+        setLine(pending.toString(), "");
+        return true;
+      }
+      int start = position;
+      while (position < limit) {
+        char c = buffer[position];
+        if (c == '\n' || c == '\r') {
+          String text =
+              pending == null
+                  ? new String(buffer, start, position - start)
+                  : pending.append(buffer, start, position - start).toString();
+          position++;
+          if (c == '\n') {
+            setLine(text, "\n");
+          } else if ((position < limit || fill()) && buffer[position] == '\n') {
+            position++;
+            setLine(text, "\r\n");
+          } else {
+            setLine(text, "\r");
+          }
+          return true;
+        }
+        position++;
+      }
+      if (pending == null) {
+        pending = new StringBuilder();
+      }
+      pending.append(buffer, start, position - start);
+    }
+  }
+
+  /** The current line without its terminator. */
+  String line() {
+    return line;
+  }
+
+  /** "\n", "\r\n", "\r", or "" for a last line without a trailing newline. */
+  String lineTerminator() {
+    return lineTerminator;
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+
+  private void setLine(String line, String lineTerminator) {
+    this.line = line;
+    this.lineTerminator = lineTerminator;
+  }
+
+  private boolean fill() throws IOException {
+    if (endOfInput) {
+      return false;
+    }
+    int read;
+    do {
+      read = reader.read(buffer, 0, buffer.length);
+    } while (read == 0);
+    position = 0;
+    if (read < 0) {
+      endOfInput = true;
+      limit = 0;
+      return false;
+    }
+    limit = read;
+    return true;
+  }
+}
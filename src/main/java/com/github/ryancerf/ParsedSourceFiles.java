@@ -0,0 +1,242 @@
+package com.github.ryancerf;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Parsed source files, keyed by their canonical path. May be shared by every {@link SnippetCache}
+ * of a Maven session, so a source file used by the docs of several modules is parsed once.
+ *
+ * <p>Safe to share between threads. A file is parsed again if its size or modified time changed
+ * since it was parsed.
+ */
+class ParsedSourceFiles {
+  private final SourceFileParser sourceFileParser;
+  private final IndentationFormatter indentationFormatter;
+  private final ConcurrentMap<Path, FutureTask<ParsedSourceFile>> sourceFiles =
+      new ConcurrentHashMap<>();
+
+  ParsedSourceFiles(
+      SourceFileParser sourceFileParser, IndentationFormatter indentationFormatter) {
+    this.sourceFileParser = sourceFileParser;
+    this.indentationFormatter = indentationFormatter;
+  }
+
+  /** Charset the source files are read in. */
+  Charset getCharset() {
+    return sourceFileParser.getCharset();
+  }
+
+  /** Comments the snippet tags of the source files are written in. */
+  CommentSyntaxes getCommentSyntaxes() {
+    return sourceFileParser.getCommentSyntaxes();
+  }
+
+  /**
+   * Parse the source file a directive references, or get it if it is already parsed.
+   *
+   * @param snippetIndex snippets saved by an earlier Maven invocation, used instead of parsing the
+   *     file if it did not change. Null if there is none.
+   */
+  ParsedSourceFile parseOrGet(
+      SnippetDirectiveDefinition directiveDefinition, SnippetIndex snippetIndex) {
+    Path path = directiveDefinition.getDirective().getPath();
+    Path key = canonicalPath(path);
+    while (true) {
+      FutureTask<ParsedSourceFile> task = sourceFiles.get(key);
+      boolean parsedHere = false;
+      if (task == null) {
+        FutureTask<ParsedSourceFile> newTask =
+            new FutureTask<>(() -> parse(directiveDefinition, key, snippetIndex));
+        task = sourceFiles.putIfAbsent(key, newTask);
+        if (task == null) {
+          task = newTask;
+          task.run();
+          parsedHere = true;
+        }
+      }
+      ParsedSourceFile sourceFile = get(task, path);
+      if (parsedHere || sourceFile.isCurrent(path)) {
+        return sourceFile;
+      }
+      // Changed since it was parsed. Parse it again, unless another thread already does.
+      sourceFiles.remove(key, task);
+    }
+  }
+
+  /** Forget a source file that changed on disk. */
+  void invalidate(Path path) {
+    sourceFiles.remove(canonicalPath(path));
+  }
+
+  private ParsedSourceFile parse(
+      SnippetDirectiveDefinition directiveDefinition, Path canonicalPath, SnippetIndex snippetIndex)
+      throws IOException {
+    Path path = directiveDefinition.getDirective().getPath();
+    if (!Files.exists(path)) {
+      return new ParsedSourceFile(
+          canonicalPath, null, null, Collections.emptyList(), Collections.emptyList());
+    }
+    // Taken before parsing, so a change while parsing is seen the next time.
+    String stat = FileHashes.statFingerprint(path);
+    String hash = null;
+    if (snippetIndex != null) {
+      Optional<SnippetIndex.Entry> entry = snippetIndex.get(canonicalPath);
+      if (entry.isPresent() && entry.get().getStat().equals(stat)) {
+        return toParsedSourceFile(canonicalPath, stat, entry.get().getHash(), entry.get());
+      }
+      hash = FileHashes.sha256(path);
+      if (entry.isPresent() && entry.get().getHash().equals(hash)) {
+        // Touched, but not changed. For example by a checkout.
+        return toParsedSourceFile(canonicalPath, stat, hash, entry.get().withStat(stat));
+      }
+    }
+    ParseResult<List<Snippet>> result = sourceFileParser.extractSnippetBlocks(directiveDefinition);
+    if (hash != null && !stat.equals(FileHashes.statFingerprint(path))) {
+      // Changed while parsing. The hash may not match the snippets, so they are not saved.
+      hash = null;
+    }
+    return toParsedSourceFile(
+        canonicalPath,
+        stat,
+        hash,
+        new SnippetIndex.Entry(stat, hash, result.getBuildErrors(), result.getResult()));
+  }
+
+  private ParsedSourceFile toParsedSourceFile(
+      Path canonicalPath, String stat, String hash, SnippetIndex.Entry entry) {
+    List<ParsedSnippet> snippets = new ArrayList<>();
+    for (Snippet snippet : entry.getSnippets()) {
+      snippets.add(new ParsedSnippet(snippet, indentationFormatter));
+    }
+    return new ParsedSourceFile(canonicalPath, stat, hash, entry.getBuildErrors(), snippets);
+  }
+
+  /** The real path of an existing file, so every way of writing its path finds the same entry. */
+  static Path canonicalPath(Path path) {
+    try {
+      return path.toRealPath();
+    } catch (IOException e) {
+      return path.toAbsolutePath().normalize();
+    }
+  }
+
+  private static ParsedSourceFile get(FutureTask<ParsedSourceFile> task, Path path) {
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while parsing: " + path, e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause().getMessage(), e.getCause());
+    }
+  }
+
+  // Data class. The outcome of parsing a single source file.
+  static class ParsedSourceFile {
+    private final Path canonicalPath;
+    // Size and modified time when parsed. Null if the file does not exist.
+    private final String stat;
+    // Content hash when parsed. Null if it was not needed, because there was no snippet index.
+    private final String hash;
+    // Errors in the source file itself. Reported to every directive that references the file.
+    private final List<BuildError> buildErrors;
+    private final List<ParsedSnippet> snippets;
+
+    ParsedSourceFile(
+        Path canonicalPath,
+        String stat,
+        String hash,
+        List<BuildError> buildErrors,
+        List<ParsedSnippet> snippets) {
+      this.canonicalPath = canonicalPath;
+      this.stat = stat;
+      this.hash = hash;
+      this.buildErrors = buildErrors;
+      this.snippets = snippets;
+    }
+
+    boolean isMissing() {
+      return stat == null;
+    }
+
+    Path getCanonicalPath() {
+      return canonicalPath;
+    }
+
+    String getStat() {
+      return stat;
+    }
+
+    String getHash() {
+      return hash;
+    }
+
+    List<BuildError> getBuildErrors() {
+      return buildErrors;
+    }
+
+    List<ParsedSnippet> getSnippets() {
+      return snippets;
+    }
+
+    private boolean isCurrent(Path path) {
+      if (isMissing()) {
+        return !Files.exists(path);
+      }
+      try {
+        return stat.equals(FileHashes.statFingerprint(path));
+      } catch (IOException e) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * A snippet as parsed, and as it is injected. Rendered the first time it is needed, so snippets
+   * nobody references are never rendered, and the lines of lazy snippets never read.
+   */
+  static class ParsedSnippet {
+    private final Snippet snippet;
+    private final IndentationFormatter indentationFormatter;
+    private volatile RenderedSnippet rendered;
+
+    ParsedSnippet(Snippet snippet, IndentationFormatter indentationFormatter) {
+      this.snippet = snippet;
+      this.indentationFormatter = indentationFormatter;
+    }
+
+    Snippet getSnippet() {
+      return snippet;
+    }
+
+    RenderedSnippet getRendered() {
+      RenderedSnippet result = rendered;
+      if (result == null) {
+        synchronized (this) {
+          result = rendered;
+          if (result == null) {
+            result =
+                new RenderedSnippet(
+                    indentationFormatter.normalizeIndentation(snippet.getLines()));
+            rendered = result;
+          }
+        }
+      }
+      return result;
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package com.github.ryancerf;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A snippet in the form it is injected in: indentation normalized, and joined and encoded once for
+ * the line separator and charset it was last written with.
+ *
+ * <p>Safe to share between threads. A snippet referenced by many content files costs one copy of
+ * its bytes, as long as they use the same line separator. Only one encoded form is kept, so the
+ * heap used is its lines and at most one copy of their bytes, see {@link SnippetCache}.
+ */
+final class RenderedSnippet {
+  private final List<String> lines;
+  private volatile Encoded encoded;
+
+  /** @param lines the lines of the snippet, indentation already normalized. */
+  RenderedSnippet(List<String> lines) {
+    this.lines = Collections.unmodifiableList(new ArrayList<>(lines));
+  }
+
+  List<String> getLines() {
+    return lines;
+  }
+
+  /** The lines joined with the separator. No separator after the last line. Not kept. */
+  String text(String separator) {
+    return String.join(separator, lines);
+  }
+
+  /**
+   * {@link #text} encoded in the charset. Only for charsets where {@link #canReuseBytes} is true.
+   * The array is shared, do not change it.
+   */
+  byte[] bytes(String separator, Charset charset) {
+    Encoded last = encoded;
+    if (last == null || !last.separator.equals(separator) || !last.charset.equals(charset)) {
+      // Threads that get here at the same time each encode it. Any of their arrays is right.
+      last = new Encoded(separator, charset, text(separator).getBytes(charset));
+      encoded = last;
+    }
+    return last.bytes;
+  }
+
+  /**
+   * True if text encoded in pieces is the same as the text encoded at once. Not the case for
+   * charsets that write a byte order mark or keep shift state between characters.
+   */
+  static boolean canReuseBytes(Charset charset) {
+    return charset.equals(StandardCharsets.UTF_8)
+        || charset.equals(StandardCharsets.US_ASCII)
+        || charset.equals(StandardCharsets.ISO_8859_1)
+        || charset.equals(StandardCharsets.UTF_16BE)
+        || charset.equals(StandardCharsets.UTF_16LE);
+  }
+
+  // The bytes of the snippet for one separator and charset.
+  private static class Encoded {
+    private final String separator;
+    private final Charset charset;
+    private final byte[] bytes;
+
+    Encoded(String separator, Charset charset, byte[] bytes) {
+      this.separator = separator;
+      this.charset = charset;
+      this.bytes = bytes;
+    }
+  }
+}
@@ -1,5 +1,7 @@
 package com.github.ryancerf;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -8,24 +10,65 @@ import java.util.Objects;
  * A snippet of code from a source file.
  *
  * <p>Ided by the snippet tag and the file's canonical file path.
+ *
+ * <p>The lines are either held in memory, or lazy: only their location in the source file is
+ * held, and they are read every time {@link #getLines()} is called.
  */
 class Snippet {
   private final SnippetDirective snippetDirective;
   private final int lineNumber;
+  // Null if the snippet is lazy.
   private final List<String> lines;
+  // Null unless the snippet is lazy.
+  private final LazySnippetLines lazyLines;
 
   Snippet(SnippetDirective snippetDirective, int lineNumber, List<String> lines) {
+    this(snippetDirective, lineNumber, lines, null);
+  }
+
+  Snippet(SnippetDirective snippetDirective, int lineNumber, LazySnippetLines lazyLines) {
+    this(snippetDirective, lineNumber, null, lazyLines);
+  }
+
+  private Snippet(
+      SnippetDirective snippetDirective,
+      int lineNumber,
+      List<String> lines,
+      LazySnippetLines lazyLines) {
     this.snippetDirective = snippetDirective;
     this.lineNumber = lineNumber;
     this.lines = lines;
+    this.lazyLines = lazyLines;
   }
 
   String getTag() {
     return snippetDirective.getTag();
   }
 
+  /** The lines of the snippet. Read from the source file if the snippet is lazy. */
   List<String> getLines() {
-    return lines;
+    if (lazyLines == null) {
+      return lines;
+    }
+    try {
+      return lazyLines.read();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e.getMessage(), e);
+    }
+  }
+
+  boolean isLazy() {
+    return lazyLines != null;
+  }
+
+  /** Where the lines are in the source file. Only for lazy snippets. */
+  LazySnippetLines getLazyLines() {
+    return lazyLines;
+  }
+
+  /** The same snippet, with the path written as in another directive. Stays lazy. */
+  Snippet withDirective(SnippetDirective directive) {
+    return new Snippet(directive, lineNumber, lines, lazyLines);
   }
 
   int getLineNumber() {
@@ -43,12 +86,13 @@ class Snippet {
     Snippet snippet = (Snippet) o;
     return lineNumber == snippet.lineNumber
         && Objects.equals(snippetDirective, snippet.snippetDirective)
-        && Objects.equals(lines, snippet.lines);
+        && Objects.equals(lines, snippet.lines)
+        && Objects.equals(lazyLines, snippet.lazyLines);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(snippetDirective, lineNumber, lines);
+    return Objects.hash(snippetDirective, lineNumber, lines, lazyLines);
   }
 
   @Override
@@ -1,84 +1,368 @@
 package com.github.ryancerf;
 
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Loads and caches code snippets from source files.
  *
+ * <p>Safe to share between threads. Every source file is looked up exactly once, even when several
+ * threads ask for it at the same time. The first thread looks it up, the others wait for its
+ * result. The source files themselves are parsed by {@link ParsedSourceFiles}, which may be shared
+ * with the snippet caches of other modules. A {@link SnippetIndex} saved by an earlier Maven
+ * invocation is used instead of parsing source files that did not change since.
+ *
+ * <p>With a memory budget, the least recently used source files are evicted once the approximate
+ * size of their snippets is above the budget. An evicted file is parsed again the next time a
+ * directive needs it. Without one every source file is kept. The snippet index is not used with a
+ * memory budget, as it holds the lines of every source file looked up, which the budget would not
+ * cap.
+ *
  * <p>Returns errors as data.
  */
 class SnippetCache {
+  /** No memory budget. Every source file is kept for the lifetime of the cache. */
+  static final long UNBOUNDED = -1;
+  // Approximate heap size of a cached source file with no snippets.
+  private static final long SOURCE_FILE_OVERHEAD = 256;
+  private static final long SNIPPET_OVERHEAD = 128;
+
+  private final ParsedSourceFiles parsedSourceFiles;
+  private final long memoryBudget;
+
+  private final Map<SnippetDirective, Snippet> snippetMap = new ConcurrentHashMap<>();
+  // Every snippet a directive looked up, ready to be injected. Not kept with a memory budget.
+  private final Map<SnippetDirective, RenderedSnippet> renderedSnippetMap =
+      new ConcurrentHashMap<>();
+  private final ConcurrentMap<Path, FutureTask<SourceFile>> sourceFiles =
+      new ConcurrentHashMap<>();
+  // Approximate size of the cached source files, least recently used first. Only used with a
+  // memory budget. Guarded by itself, as is residentSize.
+  private final Map<Path, Long> residentSizes = new LinkedHashMap<>(16, 0.75f, true);
+  private long residentSize;
+  // Counted over the lifetime of the cache.
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder bytesParsed = new LongAdder();
+  // Null if source files are not saved between invocations.
+  private volatile SnippetIndex snippetIndex;
 
-  private final SourceFileParser sourceFileParser;
+  SnippetCache(SourceFileParser sourceFileParser, IndentationFormatter indentationFormatter) {
+    this(new ParsedSourceFiles(sourceFileParser, indentationFormatter));
+  }
 
-  private final Map<SnippetDirective, Snippet> snippetMap = new HashMap<>();
-  private final Set<Path> seenSourcePaths = new HashSet<>();
-  private final Set<Path> missingSourcePaths = new HashSet<>();
+  SnippetCache(ParsedSourceFiles parsedSourceFiles) {
+    this(parsedSourceFiles, UNBOUNDED);
+  }
 
-  SnippetCache(SourceFileParser sourceFileParser) {
-    this.sourceFileParser = sourceFileParser;
+  /**
+   * @param memoryBudget approximate heap size in bytes above which source files are evicted, or
+   *     {@link #UNBOUNDED}.
+   */
+  SnippetCache(ParsedSourceFiles parsedSourceFiles, long memoryBudget) {
+    this.parsedSourceFiles = parsedSourceFiles;
+    this.memoryBudget = memoryBudget;
   }
 
   Map<SnippetDirective, Snippet> getSnippetMap() {
     return snippetMap;
   }
 
-  /** Fetch the snippet from the source file. */
-  ParseResult<Optional<Snippet>> parseOrGetSnippet(SnippetDirectiveDefinition directiveDefinition) {
+  /**
+   * The snippets as they are injected. Only those found by {@link #parseOrGetSnippet}. Indentation
+   * is normalized once, and lazy snippets are read once, when a snippet is first looked up. Empty
+   * with a memory budget, see {@link #getRenderedSnippets}.
+   */
+  Map<SnippetDirective, RenderedSnippet> getRenderedSnippetMap() {
+    return renderedSnippetMap;
+  }
+
+  /**
+   * The rendered snippets of a content file's directives, parsing again source files that were
+   * evicted since they were looked up. Fails loudly if a snippet is no longer there, as the
+   * directives are expected to have been resolved by {@link #parseOrGetSnippet}.
+   */
+  Map<SnippetDirective, RenderedSnippet> getRenderedSnippets(
+      List<SnippetDirectiveDefinition> directiveDefinitions) {
+    if (memoryBudget == UNBOUNDED) {
+      return renderedSnippetMap;
+    }
+    Map<SnippetDirective, RenderedSnippet> renderedSnippets = new HashMap<>();
+    for (SnippetDirectiveDefinition directiveDefinition : directiveDefinitions) {
+      SnippetDirective directive = directiveDefinition.getDirective();
+      ParsedSourceFiles.ParsedSnippet parsedSnippet =
+          parseOrGetSourceFile(directiveDefinition, false).snippets.get(directive);
+      if (parsedSnippet == null) {
+        throw new IllegalStateException("Snippet no longer found: " + directive);
+      }
+      renderedSnippets.put(directive, parsedSnippet.getRendered());
+    }
+    return renderedSnippets;
+  }
+
+  /** Lookups answered from a source file that was already parsed. */
+  long getHits() {
+    return hits.sum();
+  }
 
-    Optional<Snippet> optionalSnippet =
-        Optional.ofNullable(snippetMap.get(directiveDefinition.getDirective()));
+  /** Source files looked up for the first time. */
+  long getMisses() {
+    return misses.sum();
+  }
+
+  /** Source files evicted to stay within the memory budget. */
+  long getEvictions() {
+    return evictions.sum();
+  }
+
+  /** Size of the source files looked up. */
+  long getBytesParsed() {
+    return bytesParsed.sum();
+  }
+
+  /** Hash of the settings snippets are parsed and rendered with, see {@link BuildManifest}. */
+  String getSettings() {
+    return BuildManifest.settings(
+        parsedSourceFiles.getCharset(), parsedSourceFiles.getCommentSyntaxes());
+  }
 
-    if (optionalSnippet.isPresent()) {
-      return new ParseResult<>(Collections.emptyList(), optionalSnippet);
+  /**
+   * Load the snippet index saved by an earlier build. Source files it has an entry for are not
+   * parsed again if they did not change. Does nothing with a memory budget.
+   */
+  void loadSnippetIndex(Path path) {
+    if (memoryBudget != UNBOUNDED) {
+      return;
     }
+    this.snippetIndex =
+        SnippetIndex.load(
+            path,
+            parsedSourceFiles.getCharset(),
+            parsedSourceFiles.getCommentSyntaxes().toString());
+  }
 
-    // Not in cache but have seen file. SnippetTagNotFoundError.
-    if (seenSourcePaths.contains(directiveDefinition.getDirective().getPath())) {
-      return new ParseResult<>(
-          Collections.singletonList(new BuildError.SnippetTagNotFoundError(directiveDefinition)),
-          Optional.empty());
+  /** Save the source files looked up since the snippet index was loaded. */
+  void saveSnippetIndex(Path path) throws IOException {
+    if (snippetIndex != null) {
+      snippetIndex.save(path);
     }
+  }
 
-    // Seen and missing.
-    if (missingSourcePaths.contains(directiveDefinition.getDirective().getPath())) {
+  /** Forget a source file that changed on disk. It is parsed again the next time it is needed. */
+  void invalidate(Path sourceFilePath) {
+    parsedSourceFiles.invalidate(sourceFilePath);
+    sourceFiles.remove(sourceFilePath);
+    snippetMap.keySet().removeIf(directive -> directive.getPath().equals(sourceFilePath));
+    renderedSnippetMap.keySet().removeIf(directive -> directive.getPath().equals(sourceFilePath));
+    if (memoryBudget != UNBOUNDED) {
+      synchronized (residentSizes) {
+        Long size = residentSizes.remove(sourceFilePath);
+        if (size != null) {
+          residentSize -= size;
+        }
+      }
+    }
+  }
+
+  /** Fetch the snippet from the source file. */
+  ParseResult<Optional<Snippet>> parseOrGetSnippet(SnippetDirectiveDefinition directiveDefinition) {
+    SourceFile sourceFile = parseOrGetSourceFile(directiveDefinition, true);
+
+    if (sourceFile.missing) {
       return new ParseResult<>(
           Collections.singletonList(new BuildError.SnippetFileNotFoundError(directiveDefinition)),
           Optional.empty());
     }
 
-    List<BuildError> buildErrors = parseFileAndCacheSnippets(directiveDefinition);
-    if (!missingSourcePaths.contains(directiveDefinition.getDirective().getPath())
-        && !snippetMap.containsKey(directiveDefinition.getDirective())) {
-      buildErrors = new ArrayList<>(buildErrors);
-      buildErrors.add(new BuildError.SnippetTagNotFoundError(directiveDefinition));
+    // From the source file, not snippetMap, which may have evicted it since.
+    SnippetDirective directive = directiveDefinition.getDirective();
+    ParsedSourceFiles.ParsedSnippet parsedSnippet = sourceFile.snippets.get(directive);
+    if (parsedSnippet != null) {
+      if (memoryBudget == UNBOUNDED && !renderedSnippetMap.containsKey(directive)) {
+        // Rendered once, however many threads get here.
+        renderedSnippetMap.putIfAbsent(directive, parsedSnippet.getRendered());
+      }
+      Snippet snippet = parsedSnippet.getSnippet();
+      if (!snippet.getDirective().equals(directive)) {
+        snippet = snippet.withDirective(directive);
+      }
+      return new ParseResult<>(sourceFile.buildErrors, Optional.of(snippet));
     }
 
-    return new ParseResult<>(
-        buildErrors, Optional.ofNullable(snippetMap.get(directiveDefinition.getDirective())));
+    // Have parsed the file, but it does not contain the tag.
+    List<BuildError> buildErrors = new ArrayList<>(sourceFile.buildErrors);
+    buildErrors.add(new BuildError.SnippetTagNotFoundError(directiveDefinition));
+    return new ParseResult<>(buildErrors, Optional.empty());
   }
 
-  private List<BuildError> parseFileAndCacheSnippets(
-      SnippetDirectiveDefinition directiveDefinition) {
-    if (Files.exists(directiveDefinition.getDirective().getPath())) {
-      seenSourcePaths.add(directiveDefinition.getDirective().getPath());
-    } else {
-      missingSourcePaths.add(directiveDefinition.getDirective().getPath());
+  /** @param count whether the lookup counts as a cache hit or miss. */
+  private SourceFile parseOrGetSourceFile(
+      SnippetDirectiveDefinition directiveDefinition, boolean count) {
+    Path path = directiveDefinition.getDirective().getPath();
+    FutureTask<SourceFile> task = sourceFiles.get(path);
+    boolean hit = true;
+    if (task == null) {
+      FutureTask<SourceFile> newTask =
+          new FutureTask<>(() -> parseFileAndCacheSnippets(directiveDefinition));
+      task = sourceFiles.putIfAbsent(path, newTask);
+      if (task == null) {
+        task = newTask;
+        hit = false;
+        task.run();
+      }
+    }
+    if (count) {
+      (hit ? hits : misses).increment();
+    }
+    SourceFile sourceFile = get(task, path);
+    if (memoryBudget != UNBOUNDED) {
+      recordUse(path, task, sourceFile);
     }
+    return sourceFile;
+  }
 
-    ParseResult<List<Snippet>> result = sourceFileParser.extractSnippetBlocks(directiveDefinition);
-    for (Snippet snippet : result.getResult()) {
+  /** Mark a source file most recently used, and evict others until the cache is within budget. */
+  private void recordUse(Path path, FutureTask<SourceFile> task, SourceFile sourceFile) {
+    List<Path> evicted = new ArrayList<>();
+    synchronized (residentSizes) {
+      if (sourceFiles.get(path) != task) {
+        // Evicted or invalidated by another thread since. Not resident.
+        return;
+      }
+      if (residentSizes.put(path, sourceFile.size) == null) {
+        residentSize += sourceFile.size;
+      }
+      Iterator<Map.Entry<Path, Long>> leastRecentlyUsed = residentSizes.entrySet().iterator();
+      // The file just used stays, even if it is larger than the budget on its own.
+      while (residentSize > memoryBudget && residentSizes.size() > 1) {
+        Map.Entry<Path, Long> eldest = leastRecentlyUsed.next();
+        residentSize -= eldest.getValue();
+        evicted.add(eldest.getKey());
+        leastRecentlyUsed.remove();
+      }
+    }
+    for (Path evictedPath : evicted) {
+      evict(evictedPath);
+    }
+  }
+
+  private void evict(Path path) {
+    FutureTask<SourceFile> task = sourceFiles.remove(path);
+    if (task == null) {
+      return;
+    }
+    evictions.increment();
+    for (SnippetDirective directive : get(task, path).snippets.keySet()) {
+      snippetMap.remove(directive);
+    }
+    // Also drop the parsed file, or it would stay in memory through the shared store.
+    parsedSourceFiles.invalidate(path);
+  }
+
+  private static SourceFile get(FutureTask<SourceFile> task, Path path) {
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while parsing: " + path, e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause().getMessage(), e.getCause());
+    }
+  }
+
+  private SourceFile parseFileAndCacheSnippets(SnippetDirectiveDefinition directiveDefinition) {
+    if (!Files.exists(directiveDefinition.getDirective().getPath())) {
+      return new SourceFile(true, Collections.emptyList(), Collections.emptyMap());
+    }
+
+    try {
+      bytesParsed.add(Files.size(directiveDefinition.getDirective().getPath()));
+    } catch (IOException e) {
+      // Only used for build metrics. The parser reports the file if it cannot be read.
+    }
+    SnippetIndex index = snippetIndex;
+    ParsedSourceFiles.ParsedSourceFile sourceFile =
+        parsedSourceFiles.parseOrGet(directiveDefinition, index);
+    if (sourceFile.isMissing()) {
+      return new SourceFile(true, Collections.emptyList(), Collections.emptyMap());
+    }
+    if (index != null) {
+      // Also when another module parsed it, so this module finds it in the next invocation.
+      index.put(sourceFile);
+    }
+    Path path = directiveDefinition.getDirective().getPath();
+    Map<SnippetDirective, ParsedSourceFiles.ParsedSnippet> snippets = new HashMap<>();
+    for (ParsedSourceFiles.ParsedSnippet parsedSnippet : sourceFile.getSnippets()) {
+      // Another module may have written the path differently. Use the path of this directive.
+      Snippet snippet = parsedSnippet.getSnippet();
+      if (!snippet.getDirective().getPath().equals(path)) {
+        snippet = snippet.withDirective(SnippetDirective.create(snippet.getTag(), path));
+      }
+      snippets.put(snippet.getDirective(), parsedSnippet);
       snippetMap.put(snippet.getDirective(), snippet);
     }
-    return result.getBuildErrors();
+    return new SourceFile(false, sourceFile.getBuildErrors(), snippets);
+  }
+
+  /**
+   * Approximate heap size of a snippet once it is rendered, counting every form kept: its parsed
+   * lines, the normalized lines of its {@link RenderedSnippet}, which are read when it is lazy, and
+   * the one encoded copy of those. Two bytes for every char of the lines, and up to two for every
+   * char encoded.
+   */
+  private static long estimateSize(Snippet snippet) {
+    if (snippet.isLazy()) {
+      // Where the snippet is, until it is read. Each byte is at most one char.
+      long bytes = snippet.getLazyLines().getEndOffset() - snippet.getLazyLines().getStartOffset();
+      return SNIPPET_OVERHEAD + bytes * 4;
+    }
+    long chars = 0;
+    for (String line : snippet.getLines()) {
+      chars += line.length() + 1;
+    }
+    // Normalized lines may share nothing with the parsed ones.
+    return SNIPPET_OVERHEAD + chars * 6;
+  }
+
+  // Data class. The outcome of parsing a single source file.
+  private static class SourceFile {
+    private final boolean missing;
+    // Errors in the source file itself. Reported to every directive that references the file.
+    private final List<BuildError> buildErrors;
+    // Keyed by directives with the path of this cache's directives.
+    private final Map<SnippetDirective, ParsedSourceFiles.ParsedSnippet> snippets;
+    private final long size;
+
+    SourceFile(
+        boolean missing,
+        List<BuildError> buildErrors,
+        Map<SnippetDirective, ParsedSourceFiles.ParsedSnippet> snippets) {
+      this.missing = missing;
+      this.buildErrors = buildErrors;
+      this.snippets = snippets;
+      long size = SOURCE_FILE_OVERHEAD;
+      for (ParsedSourceFiles.ParsedSnippet parsedSnippet : snippets.values()) {
+        size += estimateSize(parsedSnippet.getSnippet());
+      }
+      this.size = size;
+    }
   }
 }
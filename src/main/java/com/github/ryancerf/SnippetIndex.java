@@ -0,0 +1,280 @@
+package com.github.ryancerf;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The snippets of every parsed source file, saved between Maven invocations so a new JVM does not
+ * parse source files that did not change.
+ *
+ * <p>Entries are keyed by canonical path, and record the size, modified time and content hash of
+ * the file when it was parsed. Only the entries used since the index was loaded are saved, so
+ * source files that are no longer referenced drop out.
+ *
+ * <p>Safe to share between threads. Stored as a binary file:
+ *
+ * <pre>
+ * "choss-snippet-index"   version   charset   comment_syntaxes   entry_count
+ * entry: path   stat   hash   error_count   (tag   line_count   line_number...)...
+ *        snippet_count   (tag   line_number   LINES   line_count   line...)...
+ *                        (tag   line_number   LAZY   start_offset   end_offset   line_count)...
+ * </pre>
+ *
+ * Strings are written as their length in bytes followed by their UTF-8 bytes. Lazy snippets are
+ * saved as the byte range of their lines, so they stay lazy when they are loaded.
+ */
+class SnippetIndex {
+  private static final String HEADER = "choss-snippet-index";
+  private static final int VERSION = 3;
+  private static final byte LINES = 0;
+  private static final byte LAZY = 1;
+
+  private final Charset charset;
+  private final String commentSyntaxes;
+  private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+  private final Set<Path> used = ConcurrentHashMap.newKeySet();
+
+  /** @param commentSyntaxes the {@link CommentSyntaxes} the source files are parsed with. */
+  SnippetIndex(Charset charset, String commentSyntaxes) {
+    this.charset = charset;
+    this.commentSyntaxes = commentSyntaxes;
+  }
+
+  /** The entry of a source file, as saved by an earlier build. */
+  Optional<Entry> get(Path canonicalPath) {
+    return Optional.ofNullable(entries.get(canonicalPath));
+  }
+
+  /**
+   * Record a parsed source file, to be saved with the index. Files that were parsed without a
+   * content hash, or have errors other than duplicate tags, are not recorded.
+   */
+  void put(ParsedSourceFiles.ParsedSourceFile sourceFile) {
+    if (sourceFile.isMissing() || sourceFile.getHash() == null) {
+      return;
+    }
+    for (BuildError buildError : sourceFile.getBuildErrors()) {
+      if (!(buildError instanceof BuildError.DuplicateTagError)) {
+        return;
+      }
+    }
+    List<Snippet> snippets = new ArrayList<>();
+    for (ParsedSourceFiles.ParsedSnippet parsedSnippet : sourceFile.getSnippets()) {
+      snippets.add(parsedSnippet.getSnippet());
+    }
+    entries.put(
+        sourceFile.getCanonicalPath(),
+        new Entry(
+            sourceFile.getStat(), sourceFile.getHash(), sourceFile.getBuildErrors(), snippets));
+    used.add(sourceFile.getCanonicalPath());
+  }
+
+  int size() {
+    return entries.size();
+  }
+
+  void save(Path path) throws IOException {
+    if (path.getParent() != null) {
+      Files.createDirectories(path.getParent());
+    }
+    // Sorted so that the index on disk is stable between builds.
+    Map<Path, Entry> usedEntries = new TreeMap<>();
+    for (Path canonicalPath : used) {
+      Entry entry = entries.get(canonicalPath);
+      if (entry != null) {
+        usedEntries.put(canonicalPath, entry);
+      }
+    }
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+      writeString(out, HEADER);
+      out.writeInt(VERSION);
+      writeString(out, charset.name());
+      writeString(out, commentSyntaxes);
+      out.writeInt(usedEntries.size());
+      for (Map.Entry<Path, Entry> entry : usedEntries.entrySet()) {
+        writeString(out, entry.getKey().toString());
+        writeEntry(out, entry.getValue());
+      }
+    }
+  }
+
+  /**
+   * Load a saved index. Empty if there is none, it cannot be read, or it was saved for another
+   * charset or other comment syntaxes. In all those cases every source file is parsed again.
+   */
+  static SnippetIndex load(Path path, Charset charset, String commentSyntaxes) {
+    SnippetIndex index = new SnippetIndex(charset, commentSyntaxes);
+    if (!Files.isRegularFile(path)) {
+      return index;
+    }
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+      if (!HEADER.equals(readString(in))
+          || in.readInt() != VERSION
+          || !charset.name().equals(readString(in))
+          || !commentSyntaxes.equals(readString(in))) {
+        return index;
+      }
+      int entryCount = in.readInt();
+      TextFileReader textFileReader = new TextFileReader(charset);
+      for (int i = 0; i < entryCount; i++) {
+        Path canonicalPath = path.getFileSystem().getPath(readString(in));
+        index.entries.put(canonicalPath, readEntry(in, canonicalPath, textFileReader));
+      }
+    } catch (IOException | RuntimeException e) {
+      return new SnippetIndex(charset, commentSyntaxes);
+    }
+    return index;
+  }
+
+  private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+    writeString(out, entry.stat);
+    writeString(out, entry.hash);
+    out.writeInt(entry.buildErrors.size());
+    for (BuildError buildError : entry.buildErrors) {
+      BuildError.DuplicateTagError duplicateTag = (BuildError.DuplicateTagError) buildError;
+      writeString(out, duplicateTag.getDirective().getTag());
+      out.writeInt(duplicateTag.getLineNumbers().size());
+      for (int lineNumber : duplicateTag.getLineNumbers()) {
+        out.writeInt(lineNumber);
+      }
+    }
+    out.writeInt(entry.snippets.size());
+    for (Snippet snippet : entry.snippets) {
+      writeString(out, snippet.getTag());
+      out.writeInt(snippet.getLineNumber());
+      if (snippet.isLazy()) {
+        out.writeByte(LAZY);
+        out.writeLong(snippet.getLazyLines().getStartOffset());
+        out.writeLong(snippet.getLazyLines().getEndOffset());
+        out.writeInt(snippet.getLazyLines().getLineCount());
+        continue;
+      }
+      out.writeByte(LINES);
+      out.writeInt(snippet.getLines().size());
+      for (String line : snippet.getLines()) {
+        writeString(out, line);
+      }
+    }
+  }
+
+  private static Entry readEntry(
+      DataInputStream in, Path canonicalPath, TextFileReader textFileReader) throws IOException {
+    String stat = readString(in);
+    String hash = readString(in);
+    int errorCount = in.readInt();
+    List<BuildError> buildErrors = new ArrayList<>(errorCount);
+    for (int i = 0; i < errorCount; i++) {
+      SnippetDirective directive = SnippetDirective.create(readString(in), canonicalPath);
+      int lineCount = in.readInt();
+      List<Integer> lineNumbers = new ArrayList<>(lineCount);
+      for (int j = 0; j < lineCount; j++) {
+        lineNumbers.add(in.readInt());
+      }
+      buildErrors.add(new BuildError.DuplicateTagError(directive, lineNumbers));
+    }
+    int snippetCount = in.readInt();
+    List<Snippet> snippets = new ArrayList<>(snippetCount);
+    for (int i = 0; i < snippetCount; i++) {
+      SnippetDirective directive = SnippetDirective.create(readString(in), canonicalPath);
+      int lineNumber = in.readInt();
+      byte kind = in.readByte();
+      if (kind == LAZY) {
+        LazySnippetLines lazyLines =
+            new LazySnippetLines(
+                textFileReader, canonicalPath, stat, in.readLong(), in.readLong(), in.readInt());
+        snippets.add(new Snippet(directive, lineNumber, lazyLines));
+        continue;
+      } else if (kind != LINES) {
+        throw new IOException("Invalid snippet kind: " + kind);
+      }
+      int lineCount = in.readInt();
+      List<String> lines = new ArrayList<>(lineCount);
+      for (int j = 0; j < lineCount; j++) {
+        lines.add(readString(in));
+      }
+      snippets.add(new Snippet(directive, lineNumber, lines));
+    }
+    return new Entry(stat, hash, buildErrors, snippets);
+  }
+
+  // Not DataOutputStream.writeUTF, which cannot write strings longer than 64KB.
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      throw new IOException("Invalid string length: " + length);
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  // Data class. A source file as it was when it was parsed.
+  static class Entry {
+    // Size and modified time. If they match the file is not read at all.
+    private final String stat;
+    // Content hash. If only the stat changed and the hash matches, the file is not parsed.
+    private final String hash;
+    private final List<BuildError> buildErrors;
+    private final List<Snippet> snippets;
+
+    Entry(String stat, String hash, List<BuildError> buildErrors, List<Snippet> snippets) {
+      this.stat = stat;
+      this.hash = hash;
+      this.buildErrors = buildErrors;
+      this.snippets = snippets;
+    }
+
+    String getStat() {
+      return stat;
+    }
+
+    /** The same entry, for a file with the same content but another size and modified time. */
+    Entry withStat(String stat) {
+      List<Snippet> restatted = new ArrayList<>(snippets.size());
+      for (Snippet snippet : snippets) {
+        restatted.add(
+            snippet.isLazy()
+                ? new Snippet(
+                    snippet.getDirective(),
+                    snippet.getLineNumber(),
+                    snippet.getLazyLines().withStat(stat))
+                : snippet);
+      }
+      return new Entry(stat, hash, buildErrors, restatted);
+    }
+
+    String getHash() {
+      return hash;
+    }
+
+    List<BuildError> getBuildErrors() {
+      return buildErrors;
+    }
+
+    List<Snippet> getSnippets() {
+      return snippets;
+    }
+  }
+}
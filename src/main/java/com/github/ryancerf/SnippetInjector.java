@@ -1,20 +1,56 @@
 package com.github.ryancerf;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-import java.util.Scanner;
 
+/**
+ * Replaces snippet directive lines in a content file with the snippets they reference.
+ *
+ * <p>Does not look for directives itself. The directives found by {@link ContentFileParser} carry
+ * their line numbers, the injector only splices the snippets in at those lines.
+ *
+ * <p>Line endings of the content file are kept. Injected snippet lines use the line ending of the
+ * directive they replace.
+ *
+ * <p>Snippets are written in their {@link RenderedSnippet} form, so a snippet injected many times
+ * is only normalized, joined and encoded once.
+ *
+ * <p>For charsets where {@link TextFileReader#isAsciiCompatible} is true, the content file is never
+ * decoded. Line endings are found in its bytes, everything but the directive lines is copied as it
+ * is, byte for byte, and only the directive lines are replaced. The content file is never held in
+ * memory as a whole, whatever the charset.
+ */
 class SnippetInjector {
-  private final SnippetDirectiveParser parser;
-  private final IndentationFormatter indentationFormatter;
+  static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
 
-  SnippetInjector(SnippetDirectiveParser parser, IndentationFormatter indentationFormatter) {
-    this.parser = parser;
-    this.indentationFormatter = indentationFormatter;
+  private final TextFileReader textFileReader;
+  private final int bufferSize;
+
+  SnippetInjector(TextFileReader textFileReader) {
+    this(textFileReader, DEFAULT_BUFFER_SIZE);
+  }
+
+  /** @param bufferSize how many bytes of a content file are read at a time when splicing. */
+  SnippetInjector(TextFileReader textFileReader, int bufferSize) {
+    this.textFileReader = textFileReader;
+    this.bufferSize = bufferSize;
   }
 
   /**
@@ -22,34 +58,312 @@ class SnippetInjector {
    * contain all the needed snippets to parse the source file.
    *
    * @param contentFile content file with snippet directives.
-   * @param snippetMap map of snippets.
+   * @param directives the directives in the content file, ordered by line number.
+   * @param snippetMap map of rendered snippets.
    * @return list of lines representing the content file, with the snippets injected.
    */
-  List<String> injectSnippets(Path contentFile, Map<SnippetDirective, Snippet> snippetMap) {
-    Scanner scanner = initScanner(contentFile);
+  List<String> injectSnippets(
+      Path contentFile,
+      List<SnippetDirectiveDefinition> directives,
+      Map<SnippetDirective, RenderedSnippet> snippetMap) {
     List<String> copiedLines = new ArrayList<>();
-    while (scanner.hasNextLine()) {
-      String line = scanner.nextLine();
-      Optional<SnippetDirectiveDefinition> optionalSnippetDirective =
-          parser.createFromLine(line, 0, contentFile);
-      // Add the snippet instead of the snippet directive.
-      if (optionalSnippetDirective.isPresent()) {
-        // Snippet should already be in the map, if not, fail loudly.
-        Snippet snippet = snippetMap.get(optionalSnippetDirective.get().getDirective());
-        copiedLines.addAll(indentationFormatter.normalizeIndentation(snippet.getLines()));
-      } else {
-        copiedLines.add(line);
-      }
-    }
-    return copiedLines;
-  }
-
-  private Scanner initScanner(Path path) {
     try {
-      return new Scanner(path);
+      injectSnippets(
+          contentFile,
+          directives,
+          snippetMap,
+          new LineSink() {
+            @Override
+            public void line(String line, String lineTerminator) {
+              copiedLines.add(line);
+            }
+
+            @Override
+            public void snippet(RenderedSnippet snippet, String separator, String lineTerminator) {
+              copiedLines.addAll(snippet.getLines());
+            }
+          });
     } catch (IOException e) {
       // By the time the snippet injector is called, paths should have already been resolved.
       throw new RuntimeException(e.getMessage(), e);
     }
+    return copiedLines;
+  }
+
+  /**
+   * Inject snippets into a content file and stream the result straight to the destination.
+   *
+   * <p>Lines are written as they are read, so memory use does not grow with the size of the
+   * content file.
+   *
+   * @param contentFile content file with snippet directives.
+   * @param directives the directives in the content file, ordered by line number.
+   * @param snippetMap map of rendered snippets.
+   * @param destination file to write the content file with the snippets injected to.
+   */
+  void writeWithSnippets(
+      Path contentFile,
+      List<SnippetDirectiveDefinition> directives,
+      Map<SnippetDirective, RenderedSnippet> snippetMap,
+      Path destination)
+      throws IOException {
+    if (TextFileReader.isAsciiCompatible(textFileReader.getCharset())) {
+      try (WritableByteChannel out =
+          Files.newByteChannel(
+              destination,
+              StandardOpenOption.CREATE,
+              StandardOpenOption.TRUNCATE_EXISTING,
+              StandardOpenOption.WRITE)) {
+        spliceSnippets(contentFile, directives, snippetMap, out);
+      }
+      return;
+    }
+    try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(destination))) {
+      renderWithSnippets(contentFile, directives, snippetMap, out);
+    }
+  }
+
+  /**
+   * Inject snippets into a content file and stream the bytes that {@link #writeWithSnippets} would
+   * write to {@code out}, for instance to compare them with an existing output.
+   */
+  void renderWithSnippets(
+      Path contentFile,
+      List<SnippetDirectiveDefinition> directives,
+      Map<SnippetDirective, RenderedSnippet> snippetMap,
+      OutputStream out)
+      throws IOException {
+    Charset charset = textFileReader.getCharset();
+    if (TextFileReader.isAsciiCompatible(charset)) {
+      spliceSnippets(contentFile, directives, snippetMap, Channels.newChannel(out));
+      return;
+    }
+    if (!RenderedSnippet.canReuseBytes(charset)) {
+      Writer writer = new BufferedWriter(new OutputStreamWriter(out, charset));
+      injectSnippets(contentFile, directives, snippetMap, new WriterSink(writer));
+      writer.flush();
+      return;
+    }
+    injectSnippets(contentFile, directives, snippetMap, new BytesSink(out, charset));
+  }
+
+  private void injectSnippets(
+      Path contentFile,
+      List<SnippetDirectiveDefinition> directives,
+      Map<SnippetDirective, RenderedSnippet> snippetMap,
+      LineSink sink)
+      throws IOException {
+    Iterator<SnippetDirectiveDefinition> remainingDirectives = directives.iterator();
+    SnippetDirectiveDefinition nextDirective = next(remainingDirectives);
+    // Used between snippet lines when the directive is the last line and has no line ending.
+    String lastLineTerminator = System.lineSeparator();
+    try (LineReader reader = textFileReader.open(contentFile)) {
+      int lineNumber = 0;
+      while (reader.nextLine()) {
+        lineNumber++;
+        String lineTerminator = reader.lineTerminator();
+        // Add the snippet instead of the snippet directive.
+        if (nextDirective != null && nextDirective.getLineNumber() == lineNumber) {
+          // Snippet should already be in the map, if not, fail loudly.
+          RenderedSnippet snippet = snippetMap.get(nextDirective.getDirective());
+          String separator = lineTerminator.isEmpty() ? lastLineTerminator : lineTerminator;
+          sink.snippet(snippet, separator, lineTerminator);
+          nextDirective = next(remainingDirectives);
+        } else {
+          sink.line(reader.line(), lineTerminator);
+        }
+        if (!lineTerminator.isEmpty()) {
+          lastLineTerminator = lineTerminator;
+        }
+      }
+    }
+  }
+
+  /**
+   * Copy the content file byte for byte, replacing only its directive lines. The line terminator of
+   * a directive line is kept, and used between the lines of its snippet.
+   *
+   * <p>The content file is read through a buffer of {@code bufferSize} bytes, so memory use does
+   * not grow with its size. A line, or its "\r\n" terminator, may span two reads.
+   */
+  private void spliceSnippets(
+      Path contentFile,
+      List<SnippetDirectiveDefinition> directives,
+      Map<SnippetDirective, RenderedSnippet> snippetMap,
+      WritableByteChannel out)
+      throws IOException {
+    Iterator<SnippetDirectiveDefinition> remainingDirectives = directives.iterator();
+    SnippetDirectiveDefinition nextDirective = next(remainingDirectives);
+    ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+    int lineNumber = 1;
+    boolean inDirective = isAt(nextDirective, lineNumber);
+    // Whether a byte of the current line was read, so a directive past the last line is ignored.
+    boolean lineStarted = false;
+    // The last byte read was a '\r'. The line ends there unless the next byte is a '\n'.
+    boolean pendingCarriageReturn = false;
+    // Used between snippet lines when the directive is the last line and has no line ending.
+    String lastLineTerminator = System.lineSeparator();
+    try (ReadableByteChannel in = Files.newByteChannel(contentFile, StandardOpenOption.READ)) {
+      while (in.read(buffer) >= 0) {
+        // Through Buffer, as ByteBuffer only overrides flip and clear since Java 9.
+        ((Buffer) buffer).flip();
+        int limit = buffer.limit();
+        // Everything in the buffer before it has been written, or belongs to a directive line.
+        int copied = 0;
+        for (int i = 0; i < limit; i++) {
+          byte b = buffer.get(i);
+          String terminator;
+          // Start of the next line.
+          int nextLine = i + 1;
+          if (pendingCarriageReturn) {
+            pendingCarriageReturn = false;
+            if (b == '\n') {
+              terminator = "\r\n";
+            } else {
+              terminator = "\r";
+              nextLine = i;
+            }
+          } else if (b == '\n') {
+            terminator = "\n";
+          } else {
+            lineStarted = true;
+            pendingCarriageReturn = b == '\r';
+            continue;
+          }
+          if (inDirective) {
+            writeSnippet(out, snippetMap.get(nextDirective.getDirective()), terminator, terminator);
+            nextDirective = next(remainingDirectives);
+            copied = nextLine;
+          }
+          lastLineTerminator = terminator;
+          lineNumber++;
+          lineStarted = false;
+          if (nextDirective != null && nextDirective.getLineNumber() < lineNumber) {
+            // Not in line order.
+            nextDirective = null;
+          }
+          inDirective = isAt(nextDirective, lineNumber);
+          if (inDirective) {
+            write(out, buffer, copied, nextLine);
+          }
+          // Reads the byte after a lone '\r' again, as the first byte of the next line.
+          i = nextLine - 1;
+        }
+        if (!inDirective) {
+          write(out, buffer, copied, limit);
+        }
+        ((Buffer) buffer).clear();
+      }
+    }
+    if (inDirective && lineStarted) {
+      // The directive is the last line.
+      String terminator = pendingCarriageReturn ? "\r" : "";
+      String separator = pendingCarriageReturn ? "\r" : lastLineTerminator;
+      writeSnippet(out, snippetMap.get(nextDirective.getDirective()), separator, terminator);
+    }
+  }
+
+  private static boolean isAt(SnippetDirectiveDefinition directive, int lineNumber) {
+    return directive != null && directive.getLineNumber() == lineNumber;
+  }
+
+  /**
+   * Write a snippet, then the line terminator of its directive. An empty snippet removes the
+   * directive line, terminator included.
+   */
+  private void writeSnippet(
+      WritableByteChannel out, RenderedSnippet snippet, String separator, String lineTerminator)
+      throws IOException {
+    Charset charset = textFileReader.getCharset();
+    // Snippet should already be in the map, if not, fail loudly.
+    write(out, ByteBuffer.wrap(snippet.bytes(separator, charset)));
+    if (!snippet.getLines().isEmpty()) {
+      write(out, ByteBuffer.wrap(lineTerminator.getBytes(charset)));
+    }
+  }
+
+  private static void write(WritableByteChannel out, ByteBuffer bytes, int start, int end)
+      throws IOException {
+    if (start < end) {
+      ByteBuffer span = bytes.duplicate();
+      // Through Buffer, as ByteBuffer only overrides position and limit since Java 9.
+      ((Buffer) span).limit(end);
+      ((Buffer) span).position(start);
+      write(out, span);
+    }
+  }
+
+  private static void write(WritableByteChannel out, ByteBuffer bytes) throws IOException {
+    while (bytes.hasRemaining()) {
+      out.write(bytes);
+    }
+  }
+
+  private static SnippetDirectiveDefinition next(Iterator<SnippetDirectiveDefinition> iterator) {
+    return iterator.hasNext() ? iterator.next() : null;
+  }
+
+  /** Receives the content file with the snippets injected, one line or snippet at a time. */
+  private interface LineSink {
+    void line(String line, String lineTerminator) throws IOException;
+
+    /**
+     * @param separator written between the lines of the snippet.
+     * @param lineTerminator written after the last line of the snippet.
+     */
+    void snippet(RenderedSnippet snippet, String separator, String lineTerminator)
+        throws IOException;
+  }
+
+  /** Encodes everything through a writer. For charsets whose bytes cannot be reused. */
+  private static class WriterSink implements LineSink {
+    private final Writer writer;
+
+    WriterSink(Writer writer) {
+      this.writer = writer;
+    }
+
+    @Override
+    public void line(String line, String lineTerminator) throws IOException {
+      writer.write(line);
+      writer.write(lineTerminator);
+    }
+
+    @Override
+    public void snippet(RenderedSnippet snippet, String separator, String lineTerminator)
+        throws IOException {
+      writer.write(snippet.text(separator));
+      // An empty snippet removes the directive line, terminator included.
+      if (!snippet.getLines().isEmpty()) {
+        writer.write(lineTerminator);
+      }
+    }
+  }
+
+  /** Encodes the lines of the content file, and copies the bytes of the rendered snippets. */
+  private static class BytesSink implements LineSink {
+    private final OutputStream out;
+    private final Charset charset;
+
+    BytesSink(OutputStream out, Charset charset) {
+      this.out = out;
+      this.charset = charset;
+    }
+
+    @Override
+    public void line(String line, String lineTerminator) throws IOException {
+      out.write(line.getBytes(charset));
+      out.write(lineTerminator.getBytes(charset));
+    }
+
+    @Override
+    public void snippet(RenderedSnippet snippet, String separator, String lineTerminator)
+        throws IOException {
+      out.write(snippet.bytes(separator, charset));
+      // An empty snippet removes the directive line, terminator included.
+      if (!snippet.getLines().isEmpty()) {
+        out.write(lineTerminator.getBytes(charset));
+      }
+    }
   }
 }
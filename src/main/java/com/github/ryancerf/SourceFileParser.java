@@ -1,6 +1,9 @@
 package com.github.ryancerf;
 
 import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -8,22 +11,56 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-import java.util.Scanner;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * Parses a source code file for all snippets.
  *
- * <p>Snippet in the form of: // @@ my_snippetz_tag
+ * <p>Snippet in the form of: // @@ my_snippetz_tag, or in the comments of the language of the
+ * source file such as # @@ my_snippetz_tag, see {@link CommentSyntaxes}.
  *
  * <p>Throws if the same snippet tag is used more than once in the same file
+ *
+ * <p>Source files of at least {@code lazyThreshold} bytes, in a charset where lines can be found
+ * without decoding, are scanned as bytes. Their snippets are lazy: they hold the byte range of
+ * their lines instead of the lines, which are only read when a snippet is injected.
  */
 public class SourceFileParser {
+  // Keeps every snippet in memory.
+  static final long NEVER_LAZY = -1;
+
+  // The definition of a snippet tag. Lines are matched by the equivalent SnippetTagScanner.
   static final Pattern SNIPPET_TAG_REGEX =
       Pattern.compile("\\s*\\/\\/\\s*@@\\s*([A-Za-z][A-Za-z0-9_]*).*");
 
+  private final TextFileReader textFileReader;
+  private final long lazyThreshold;
+  private final CommentSyntaxes commentSyntaxes;
+
+  SourceFileParser(TextFileReader textFileReader) {
+    this(textFileReader, NEVER_LAZY);
+  }
+
+  /** @param lazyThreshold size in bytes from which snippets are lazy, or {@link #NEVER_LAZY}. */
+  SourceFileParser(TextFileReader textFileReader, long lazyThreshold) {
+    this(textFileReader, lazyThreshold, CommentSyntaxes.DEFAULT);
+  }
+
+  SourceFileParser(
+      TextFileReader textFileReader, long lazyThreshold, CommentSyntaxes commentSyntaxes) {
+    this.textFileReader = textFileReader;
+    this.lazyThreshold = lazyThreshold;
+    this.commentSyntaxes = commentSyntaxes;
+  }
+
+  Charset getCharset() {
+    return textFileReader.getCharset();
+  }
+
+  CommentSyntaxes getCommentSyntaxes() {
+    return commentSyntaxes;
+  }
+
   /**
    * Parse a source file for all the snippets in the file not just the snippet contained in the
    * requesting directive.
@@ -32,14 +69,26 @@ public class SourceFileParser {
    * @return a list of all the snippets in the file.
    */
   ParseResult<List<Snippet>> extractSnippetBlocks(SnippetDirectiveDefinition directiveDefinition) {
-    return new Parser().extractSnippetBlocks(directiveDefinition);
+    SnippetTagScanner tagScanner =
+        commentSyntaxes.scannerFor(directiveDefinition.getDirective().getPath());
+    return new Parser(textFileReader, lazyThreshold, tagScanner)
+        .extractSnippetBlocks(directiveDefinition);
   }
 
   private static class Parser {
+    final TextFileReader textFileReader;
+    final long lazyThreshold;
+    final SnippetTagScanner tagScanner;
     final List<Snippet> foundSnippets = new ArrayList<>();
     final List<BuildError> buildErrors = new ArrayList<>();
     final Map<String, ArrayList<Integer>> seenTagLocations = new HashMap<>();
 
+    Parser(TextFileReader textFileReader, long lazyThreshold, SnippetTagScanner tagScanner) {
+      this.textFileReader = textFileReader;
+      this.lazyThreshold = lazyThreshold;
+      this.tagScanner = tagScanner;
+    }
+
     private ParseResult<List<Snippet>> extractSnippetBlocks(
         SnippetDirectiveDefinition directiveDefinition) {
       final Path sourceFilePath = directiveDefinition.getDirective().getPath();
@@ -50,36 +99,48 @@ public class SourceFileParser {
             new ArrayList<>());
       }
 
-      Scanner scanner = initScanner(sourceFilePath);
-      Snippet.Builder currentSnippet = null;
+      try {
+        if (lazyThreshold >= 0
+            && TextFileReader.isAsciiCompatible(textFileReader.getCharset())
+            && Files.size(sourceFilePath) >= lazyThreshold) {
+          return extractLazySnippets(sourceFilePath);
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e.getMessage(), e);
+      }
 
-      int lineNumber = 0;
-      while (scanner.hasNextLine()) {
-        lineNumber++;
-        String line = scanner.nextLine();
-        Optional<String> snippetTag = parseSnippetIdentifier(line);
+      Snippet.Builder currentSnippet = null;
+      try (LineReader reader = textFileReader.open(sourceFilePath)) {
+        int lineNumber = 0;
+        while (reader.nextLine()) {
+          lineNumber++;
+          String line = reader.line();
+          String snippetTag = tagScanner.findTag(line);
 
-        if (!snippetTag.isPresent()) {
-          if (currentSnippet != null) {
-            currentSnippet.addLine(line);
+          if (snippetTag == null) {
+            if (currentSnippet != null) {
+              currentSnippet.addLine(line);
+            }
+            continue;
           }
-          continue;
-        }
-        if (currentSnippet == null) {
-          currentSnippet =
-              new Snippet.Builder(
-                  SnippetDirective.create(snippetTag.get(), sourceFilePath), lineNumber);
-        } else {
-          addFoundSnippet(currentSnippet.build());
-          if (snippetTag.get().equals(currentSnippet.getTag())) {
-            currentSnippet = null;
-          } else {
+          if (currentSnippet == null) {
             currentSnippet =
                 new Snippet.Builder(
-                    SnippetDirective.create(snippetTag.get(), sourceFilePath), lineNumber);
+                    SnippetDirective.create(snippetTag, sourceFilePath), lineNumber);
+          } else {
+            addFoundSnippet(currentSnippet.build());
+            if (snippetTag.equals(currentSnippet.getTag())) {
+              currentSnippet = null;
+            } else {
+              currentSnippet =
+                  new Snippet.Builder(
+                      SnippetDirective.create(snippetTag, sourceFilePath), lineNumber);
+            }
           }
+          // No active snippet no snippet found do nothing.
         }
-        // No active snippet no snippet found do nothing.
+      } catch (IOException e) {
+        throw new RuntimeException(e.getMessage(), e);
       }
       // Reached end of the file. Add a snippet if there is one.
       if (currentSnippet != null) {
@@ -88,6 +149,105 @@ public class SourceFileParser {
       return new ParseResult<>(buildErrors, foundSnippets);
     }
 
+    /**
+     * Same as reading the lines, but only decodes lines that contain "@@". The snippets hold the
+     * byte range of their lines.
+     */
+    private ParseResult<List<Snippet>> extractLazySnippets(Path sourceFilePath)
+        throws IOException {
+      // Taken before reading, so reading a snippet fails if the file changes after this.
+      String stat = FileHashes.statFingerprint(sourceFilePath);
+      ByteBuffer bytes = textFileReader.readBytes(sourceFilePath);
+      int length = bytes.limit();
+      String currentTag = null;
+      int currentLineNumber = 0;
+      int currentStart = 0;
+      int lineNumber = 0;
+      int lineStart = 0;
+      while (lineStart < length) {
+        lineNumber++;
+        int lineEnd = lineStart;
+        boolean mayBeTag = false;
+        while (lineEnd < length) {
+          byte b = bytes.get(lineEnd);
+          if (b == '\n' || b == '\r') {
+            break;
+          }
+          if (b == '@' && lineEnd + 1 < length && bytes.get(lineEnd + 1) == '@') {
+            mayBeTag = true;
+          }
+          lineEnd++;
+        }
+        int nextLineStart = lineEnd;
+        if (lineEnd < length) {
+          boolean crlf =
+              bytes.get(lineEnd) == '\r'
+                  && lineEnd + 1 < length
+                  && bytes.get(lineEnd + 1) == '\n';
+          nextLineStart = lineEnd + (crlf ? 2 : 1);
+        }
+        String snippetTag =
+            mayBeTag ? tagScanner.findTag(decode(bytes, lineStart, lineEnd)) : null;
+        if (snippetTag != null) {
+          if (currentTag != null) {
+            addFoundSnippet(
+                lazySnippet(
+                    sourceFilePath,
+                    stat,
+                    currentTag,
+                    currentLineNumber,
+                    currentStart,
+                    lineStart,
+                    lineNumber - currentLineNumber - 1));
+          }
+          if (snippetTag.equals(currentTag)) {
+            currentTag = null;
+          } else {
+            currentTag = snippetTag;
+            currentLineNumber = lineNumber;
+            currentStart = nextLineStart;
+          }
+        }
+        lineStart = nextLineStart;
+      }
+      // Reached end of the file. Add a snippet if there is one.
+      if (currentTag != null) {
+        addFoundSnippet(
+            lazySnippet(
+                sourceFilePath,
+                stat,
+                currentTag,
+                currentLineNumber,
+                currentStart,
+                length,
+                lineNumber - currentLineNumber));
+      }
+      return new ParseResult<>(buildErrors, foundSnippets);
+    }
+
+    private Snippet lazySnippet(
+        Path sourceFilePath,
+        String stat,
+        String tag,
+        int lineNumber,
+        int startOffset,
+        int endOffset,
+        int lineCount) {
+      return new Snippet(
+          SnippetDirective.create(tag, sourceFilePath),
+          lineNumber,
+          new LazySnippetLines(
+              textFileReader, sourceFilePath, stat, startOffset, endOffset, lineCount));
+    }
+
+    private String decode(ByteBuffer bytes, int start, int end) {
+      ByteBuffer line = bytes.duplicate();
+      // Through Buffer, as ByteBuffer only overrides position and limit since Java 9.
+      ((Buffer) line).position(start);
+      ((Buffer) line).limit(end);
+      return textFileReader.getCharset().decode(line).toString();
+    }
+
     private void addFoundSnippet(Snippet snippet) {
       if (seenTagLocations.containsKey(snippet.getTag())) {
         this.buildErrors.add(
@@ -100,21 +260,5 @@ public class SourceFileParser {
       lines.add(snippet.getLineNumber());
       seenTagLocations.put(snippet.getTag(), lines);
     }
-
-    private Optional<String> parseSnippetIdentifier(String line) {
-      Matcher matcher = SNIPPET_TAG_REGEX.matcher(line);
-      if (matcher.matches()) {
-        return Optional.of(matcher.group(1));
-      }
-      return Optional.empty();
-    }
-
-    private Scanner initScanner(Path path) {
-      try {
-        return new Scanner(path);
-      } catch (IOException e) {
-        throw new RuntimeException(e.getMessage(), e);
-      }
-    }
   }
 }
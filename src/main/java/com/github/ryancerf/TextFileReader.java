@@ -0,0 +1,148 @@
+package com.github.ryancerf;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Opens content and source files for reading, shared by every parser.
+ *
+ * <p>Small files are read through a buffered stream. Files of at least {@code mappingThreshold}
+ * bytes on the default file system are memory mapped instead, which avoids copying them through
+ * an intermediate buffer. In both cases the file handle is released by {@link LineReader#close()},
+ * or right away for mapped files.
+ *
+ * <p>A mapping is only released when its buffer is garbage collected. Until then Windows keeps the
+ * file locked, and truncating it can crash the JVM. Goals that keep running between builds use
+ * {@link #NEVER_MAP}, so they never hold on to the files they read.
+ *
+ * <p>Malformed input is replaced rather than failing the build, as Scanner did.
+ */
+class TextFileReader {
+  static final long DEFAULT_MAPPING_THRESHOLD = 1024 * 1024;
+  /** Read every file onto the heap, whatever its size. */
+  static final long NEVER_MAP = Long.MAX_VALUE;
+
+  private final Charset charset;
+  private final long mappingThreshold;
+
+  TextFileReader(Charset charset) {
+    this(charset, DEFAULT_MAPPING_THRESHOLD);
+  }
+
+  TextFileReader(Charset charset, long mappingThreshold) {
+    this.charset = charset;
+    this.mappingThreshold = mappingThreshold;
+  }
+
+  Charset getCharset() {
+    return charset;
+  }
+
+  long getMappingThreshold() {
+    return mappingThreshold;
+  }
+
+  LineReader open(Path path) throws IOException {
+    if (path.getFileSystem() == FileSystems.getDefault() && Files.size(path) >= mappingThreshold) {
+      ByteBuffer mapped;
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+        // The mapping stays valid after the channel is closed.
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+      return new LineReader(new ByteBufferReader(mapped, newDecoder()));
+    }
+    return new LineReader(new InputStreamReader(Files.newInputStream(path), newDecoder()));
+  }
+
+  /** A line reader over the bytes from {@code startOffset} up to {@code endOffset} of a file. */
+  LineReader open(Path path, long startOffset, long endOffset) throws IOException {
+    ByteBuffer bytes = ByteBuffer.allocate(Math.toIntExact(endOffset - startOffset));
+    try (SeekableByteChannel channel = Files.newByteChannel(path, StandardOpenOption.READ)) {
+      channel.position(startOffset);
+      while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+        // Read until the range is full or the file ends.
+      }
+    }
+    // Through Buffer, so the Java 8 method is called: ByteBuffer.flip() was added in Java 9.
+    ((Buffer) bytes).flip();
+    return new LineReader(new ByteBufferReader(bytes, newDecoder()));
+  }
+
+  /**
+   * The bytes of a whole file. Memory mapped on the default file system whatever the size of the
+   * file, unless mapping is off, so only use it for large files.
+   */
+  ByteBuffer readBytes(Path path) throws IOException {
+    if (path.getFileSystem() != FileSystems.getDefault() || mappingThreshold == NEVER_MAP) {
+      return ByteBuffer.wrap(Files.readAllBytes(path));
+    }
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+  }
+
+  /**
+   * True if every character below 0x80 is encoded as that single byte, and those bytes never
+   * appear inside the encoding of another character. Lines, and the '@' of snippet tags, can then
+   * be found in the bytes without decoding them.
+   */
+  static boolean isAsciiCompatible(Charset charset) {
+    return charset.equals(StandardCharsets.UTF_8)
+        || charset.equals(StandardCharsets.US_ASCII)
+        || charset.equals(StandardCharsets.ISO_8859_1);
+  }
+
+  private CharsetDecoder newDecoder() {
+    return charset
+        .newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+  }
+
+  /** Decodes characters straight out of a (mapped) byte buffer. */
+  private static class ByteBufferReader extends Reader {
+    private final ByteBuffer bytes;
+    private final CharsetDecoder decoder;
+    private boolean decoded = false;
+    private boolean flushed = false;
+
+    ByteBufferReader(ByteBuffer bytes, CharsetDecoder decoder) {
+      this.bytes = bytes;
+      this.decoder = decoder;
+    }
+
+    @Override
+    public int read(char[] chars, int offset, int length) {
+      if (flushed) {
+        return -1;
+      }
+      CharBuffer out = CharBuffer.wrap(chars, offset, length);
+      if (!decoded) {
+        // The whole input is in the buffer, so every call is the end of the input.
+        decoded = decoder.decode(bytes, out, true).isUnderflow();
+      }
+      if (decoded) {
+        flushed = decoder.flush(out).isUnderflow();
+      }
+      int read = out.position() - offset;
+      return read == 0 && flushed ? -1 : read;
+    }
+
+    @Override
+    public void close() {}
+  }
+}
@@ -0,0 +1,37 @@
+package com.github.ryancerf;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.WatchService;
+
+/**
+ * Builds the docs, then keeps running and renders again whatever a change to a content file or a
+ * referenced source file affects. Stop it with Ctrl-C.
+ */
+@Mojo(name = "watch-docs", threadSafe = true)
+public class WatchDocsMojo extends AbstractDocsMojo {
+
+  @Override
+  public void execute() throws MojoExecutionException, MojoFailureException {
+    DocsBuilder docsBuilder = createDocsBuilder();
+    boolean success = build(docsBuilder);
+    try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+      DocsWatcher docsWatcher = new DocsWatcher(docsBuilder, watchService, getLog(), success);
+      getLog().info("Watching for changes. Press Ctrl-C to stop.");
+      docsWatcher.watch();
+    } catch (IOException e) {
+      throw new MojoExecutionException(e.getMessage(), e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  boolean keepsRunning() {
+    return true;
+  }
+}
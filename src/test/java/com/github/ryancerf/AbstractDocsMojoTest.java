@@ -0,0 +1,44 @@
+package com.github.ryancerf;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AbstractDocsMojoTest {
+
+  @Test
+  void directivePathsResolveAgainstTheModuleNotTheWorkingDirectory() {
+    File basedir = Paths.get("/projects/parent/module").toFile();
+    Function<String, Path> pathFactory = AbstractDocsMojo.pathFactory(basedir);
+    SnippetDirectiveParser parser = new SnippetDirectiveParser(pathFactory);
+
+    SnippetDirective directive =
+        parser
+            .createFromLine(
+                " @@snip [snip_one](./src/main/java/Example.java)",
+                1,
+                pathFactory.apply("docs/main/content.md"))
+            .get()
+            .getDirective();
+
+    assertEquals(
+        Paths.get("/projects/parent/module/src/main/java/Example.java"), directive.getPath());
+    assertEquals(
+        Paths.get("/projects/shared/Example.java"),
+        pathFactory.apply("../../shared/Example.java"));
+    assertEquals(
+        Paths.get("/elsewhere/Example.java"), pathFactory.apply("/elsewhere/Example.java"));
+  }
+
+  @Test
+  void withoutBasedirPathsStayRelativeToTheWorkingDirectory() {
+    assertEquals(
+        Paths.get("src/Example.java"),
+        AbstractDocsMojo.pathFactory(null).apply("src/Example.java"));
+  }
+}
@@ -0,0 +1,98 @@
+package com.github.ryancerf;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AssetCopierTest extends FileSystemTest {
+
+  @Test
+  void transfer() throws IOException {
+    Path source = writeAsset("image.png", "pixels");
+    Path destination = targetDirectory.resolve("image.png");
+    Files.createDirectories(targetDirectory);
+    Files.write(destination, "old and longer pixels".getBytes(StandardCharsets.UTF_8));
+
+    assertEquals(
+        AssetCopier.Outcome.COPIED,
+        new AssetCopier(AssetStrategy.TRANSFER).copy(source, destination));
+    assertEquals("pixels", new String(Files.readAllBytes(destination), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void skipUnchanged() throws IOException {
+    Path source = writeAsset("image.png", "pixels");
+    Path destination = targetDirectory.resolve("image.png");
+    Files.createDirectories(targetDirectory);
+    AssetCopier copier = new AssetCopier(AssetStrategy.SKIP_UNCHANGED);
+
+    assertEquals(AssetCopier.Outcome.COPIED, copier.copy(source, destination));
+    assertEquals(AssetCopier.Outcome.SKIPPED, copier.copy(source, destination));
+
+    Files.write(source, "pixelz".getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(source, FileTime.fromMillis(1000));
+    assertEquals(AssetCopier.Outcome.COPIED, copier.copy(source, destination));
+    assertEquals("pixelz", new String(Files.readAllBytes(destination), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void skipUnchangedReplacesALinkToTheSource() throws IOException {
+    Path source = writeAsset("image.png", "pixels");
+    Path destination = targetDirectory.resolve("image.png");
+    Files.createDirectories(targetDirectory);
+    Files.createSymbolicLink(destination, source.toAbsolutePath());
+
+    assertEquals(
+        AssetCopier.Outcome.COPIED,
+        new AssetCopier(AssetStrategy.SKIP_UNCHANGED).copy(source, destination));
+    assertThat(Files.isSymbolicLink(destination)).isFalse();
+    assertEquals("pixels", new String(Files.readAllBytes(destination), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void hardLink() throws IOException {
+    Path source = writeAsset("image.png", "pixels");
+    Path destination = targetDirectory.resolve("image.png");
+    Files.createDirectories(targetDirectory);
+    Files.write(destination, "old pixels".getBytes(StandardCharsets.UTF_8));
+
+    assertEquals(
+        AssetCopier.Outcome.LINKED,
+        new AssetCopier(AssetStrategy.HARD_LINK).copy(source, destination));
+    assertThat(Files.isSameFile(source, destination)).isTrue();
+  }
+
+  @Test
+  void symbolicLink() throws IOException {
+    Path source = writeAsset("image.png", "pixels");
+    Path destination = targetDirectory.resolve("image.png");
+    Files.createDirectories(targetDirectory);
+
+    assertEquals(
+        AssetCopier.Outcome.LINKED,
+        new AssetCopier(AssetStrategy.SYMBOLIC_LINK).copy(source, destination));
+    assertThat(Files.isSymbolicLink(destination)).isTrue();
+    assertEquals("pixels", new String(Files.readAllBytes(destination), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void parse() {
+    assertEquals(AssetStrategy.HARD_LINK, AssetStrategy.parse("hard-link"));
+    assertEquals(AssetStrategy.SKIP_UNCHANGED, AssetStrategy.parse("SKIP_UNCHANGED"));
+    assertThrows(IllegalArgumentException.class, () -> AssetStrategy.parse("move"));
+  }
+
+  private Path writeAsset(String name, String content) throws IOException {
+    Path path = contentDirectory.resolve(name);
+    Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    return path;
+  }
+}
@@ -0,0 +1,67 @@
+package com.github.ryancerf;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BoundedExecutorTest {
+
+  @Test
+  void resultsInTaskOrderWithBoundedInFlight() throws IOException {
+    AtomicInteger inFlight = new AtomicInteger();
+    AtomicInteger maxInFlight = new AtomicInteger();
+    List<Callable<Integer>> tasks = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      int value = i;
+      tasks.add(
+          () -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(1);
+            inFlight.decrementAndGet();
+            return value;
+          });
+    }
+
+    List<Integer> results = new BoundedExecutor(8, 3, "test").runAll(tasks);
+
+    assertEquals(50, results.size());
+    for (int i = 0; i < 50; i++) {
+      assertEquals(i, results.get(i));
+    }
+    assertThat(maxInFlight.get()).isAtMost(3);
+  }
+
+  @Test
+  void firstFailureInTaskOrderIsThrown() {
+    AtomicInteger ran = new AtomicInteger();
+    List<Callable<Integer>> tasks =
+        Arrays.asList(
+            () -> {
+              ran.incrementAndGet();
+              // Fails after the later task, but is still the one reported.
+              Thread.sleep(50);
+              throw new IOException("first");
+            },
+            () -> {
+              ran.incrementAndGet();
+              throw new IOException("second");
+            },
+            ran::incrementAndGet);
+
+    IOException e =
+        assertThrows(IOException.class, () -> new BoundedExecutor(4, 4, "test").runAll(tasks));
+
+    assertEquals("first", e.getMessage());
+    assertEquals("second", e.getSuppressed()[0].getMessage());
+    assertEquals(3, ran.get());
+  }
+}
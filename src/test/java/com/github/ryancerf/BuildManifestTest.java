@@ -0,0 +1,62 @@
+package com.github.ryancerf;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BuildManifestTest extends FileSystemTest {
+  private static final String SETTINGS =
+      BuildManifest.settings(StandardCharsets.UTF_8, CommentSyntaxes.DEFAULT);
+
+  @Test
+  void saveAndLoad() throws IOException {
+    Path manifestPath = pathFactory.apply("./target/choss/build-manifest.txt");
+    BuildManifest manifest = new BuildManifest("./target/docs/main/", "glob:**/*.md", SETTINGS);
+    manifest.putSourceHash("./docs/src/test.java", "abc");
+    BuildManifest.Entry entry =
+        new BuildManifest.Entry("in", "out", Arrays.asList("./docs/src/test.java"));
+    manifest.putEntry("content.md", entry);
+    manifest.save(manifestPath);
+
+    BuildManifest loaded =
+        BuildManifest.load(manifestPath, "./target/docs/main/", "glob:**/*.md", SETTINGS);
+    assertEquals(entry, loaded.getEntry("content.md"));
+    assertEquals("abc", loaded.getSourceHash("./docs/src/test.java"));
+  }
+
+  @Test
+  void differentContentGlobIsIgnored() throws IOException {
+    Path manifestPath = pathFactory.apply("./target/choss/build-manifest.txt");
+    BuildManifest manifest = new BuildManifest("./target/docs/main/", "glob:**/*.md", SETTINGS);
+    manifest.putEntry("content.md", new BuildManifest.Entry("in", "out", Arrays.asList()));
+    manifest.save(manifestPath);
+
+    BuildManifest loaded =
+        BuildManifest.load(manifestPath, "./target/docs/main/", "glob:**/*.txt", SETTINGS);
+    assertThat(loaded.getEntries()).isEmpty();
+  }
+
+  @Test
+  void differentSettingsAreIgnored() throws IOException {
+    Path manifestPath = pathFactory.apply("./target/choss/build-manifest.txt");
+    BuildManifest manifest = new BuildManifest("./target/docs/main/", "glob:**/*.md", SETTINGS);
+    manifest.putEntry("content.md", new BuildManifest.Entry("in", "out", Arrays.asList()));
+    manifest.save(manifestPath);
+
+    String otherSettings =
+        BuildManifest.settings(
+            StandardCharsets.UTF_8,
+            new CommentSyntaxes(Collections.singletonMap("java", "#")));
+    assertThat(otherSettings).isNotEqualTo(SETTINGS);
+    BuildManifest loaded =
+        BuildManifest.load(manifestPath, "./target/docs/main/", "glob:**/*.md", otherSettings);
+    assertThat(loaded.getEntries()).isEmpty();
+  }
+}
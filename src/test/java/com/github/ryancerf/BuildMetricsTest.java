@@ -0,0 +1,46 @@
+package com.github.ryancerf;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BuildMetricsTest {
+
+  @Test
+  void slowestContentFilesFirst() {
+    BuildMetrics metrics = new BuildMetrics();
+    long start = metrics.start();
+    metrics.stop(BuildMetrics.Phase.CONTENT_PARSE, start - 1_000_000, "fast.md");
+    metrics.stop(BuildMetrics.Phase.CONTENT_PARSE, start - 5_000_000, "slow.md");
+    metrics.stop(BuildMetrics.Phase.INJECTION, start - 1_000_000, "fast.md");
+
+    assertEquals("slow.md", metrics.getSlowestContentFiles().get(0).getKey());
+    assertEquals("fast.md", metrics.getSlowestContentFiles().get(1).getKey());
+    assertThat(metrics.getPhaseNanos(BuildMetrics.Phase.CONTENT_PARSE)).isAtLeast(6_000_000L);
+  }
+
+  @Test
+  void json() {
+    BuildMetrics metrics = new BuildMetrics();
+    metrics.stop(BuildMetrics.Phase.CONTENT_PARSE, metrics.start(), "docs/\"quoted\".md");
+    metrics.addBytesRead(10);
+    metrics.addBytesWritten(20);
+    metrics.setCount("filesCopiedWithSnippets", 1);
+    metrics.setSnippetCacheStats(3, 1);
+    metrics.setMostReferencedSourceFiles(
+        Arrays.asList(new BuildMetrics.SourceFileReferences("src\\Main.java", 4, 2)));
+    metrics.finish();
+
+    String json = metrics.toJson();
+    assertThat(json).contains("\"bytesRead\": 10,");
+    assertThat(json).contains("\"bytesWritten\": 20,");
+    assertThat(json).contains("\"filesCopiedWithSnippets\": 1");
+    assertThat(json).contains("\"snippetCache\": {\"hits\": 3, \"misses\": 1}");
+    assertThat(json).contains("{\"path\": \"docs/\\\"quoted\\\".md\", \"millis\": ");
+    assertThat(json)
+        .contains("{\"path\": \"src\\\\Main.java\", \"references\": 4, \"contentFiles\": 2}");
+  }
+}
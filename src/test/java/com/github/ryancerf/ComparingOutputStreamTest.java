@@ -0,0 +1,56 @@
+package com.github.ryancerf;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ComparingOutputStreamTest extends FileSystemTest {
+
+  @Test
+  void matchesTheSameBytesWrittenInPieces() throws IOException {
+    Path file = write("hello world");
+    MessageDigest digest = FileHashes.newDigest();
+    try (ComparingOutputStream out = new ComparingOutputStream(file, digest)) {
+      out.write("hel".getBytes(StandardCharsets.UTF_8));
+      out.write('l');
+      out.write("o world".getBytes(StandardCharsets.UTF_8));
+      assertThat(out.matches()).isTrue();
+    }
+    assertEquals(FileHashes.sha256(file), FileHashes.toHex(digest.digest()));
+  }
+
+  @Test
+  void differentLongerOrShorterBytesDoNotMatch() throws IOException {
+    Path file = write("hello");
+    for (String written : new String[] {"hellp", "hello!", "hell"}) {
+      try (ComparingOutputStream out = new ComparingOutputStream(file, null)) {
+        out.write(written.getBytes(StandardCharsets.UTF_8));
+        assertThat(out.matches()).isFalse();
+      }
+    }
+  }
+
+  @Test
+  void hashesEvenWithoutAFile() throws IOException {
+    Path file = write("hello");
+    MessageDigest digest = FileHashes.newDigest();
+    try (ComparingOutputStream out = new ComparingOutputStream(null, digest)) {
+      out.write("hello".getBytes(StandardCharsets.UTF_8));
+      assertThat(out.matches()).isFalse();
+    }
+    assertEquals(FileHashes.sha256(file), FileHashes.toHex(digest.digest()));
+  }
+
+  private Path write(String content) throws IOException {
+    Path file = contentDirectory.resolve("output.md");
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+}
@@ -22,7 +22,7 @@ class ContentFileParserTest extends FileSystemTest {
   void setUp() throws IOException {
     super.setUp();
     this.snippetDirectiveParser = new SnippetDirectiveParser(pathFactory);
-    this.contentFileParser = new ContentFileParser(snippetDirectiveParser);
+    this.contentFileParser = new ContentFileParser(snippetDirectiveParser, textFileReader);
   }
 
   @Test
@@ -0,0 +1,107 @@
+package com.github.ryancerf;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DependencyIndexTest extends FileSystemTest {
+
+  private Path srcFile;
+  private Path contentFile;
+  private Path otherContentFile;
+  private DependencyIndex index;
+
+  @Override
+  @BeforeEach
+  void setUp() throws IOException {
+    super.setUp();
+    this.srcFile = sourceDirectory.resolve("test.java");
+    this.contentFile = contentDirectory.resolve("content.md");
+    this.otherContentFile = contentDirectory.resolve("other.md");
+    this.index = new DependencyIndex(contentDirectory.toString(), "glob:**/*.md");
+    index.put(contentFile, Arrays.asList(directive("snip_one", 3, contentFile)));
+    index.put(
+        otherContentFile,
+        Arrays.asList(
+            directive("snip_one", 1, otherContentFile),
+            directive("snip_two", 7, otherContentFile)));
+  }
+
+  @Test
+  void contentFilesReferencingNormalizedPath() {
+    Path sameFile = pathFactory.apply("./docs/src/main/../main/resources/test.java");
+    assertThat(index.getContentFilesReferencing(sameFile))
+        .containsExactly(contentFile, otherContentFile)
+        .inOrder();
+  }
+
+  @Test
+  void referencesByTag() {
+    assertThat(index.getReferences(srcFile).keySet())
+        .containsExactly("snip_one", "snip_two")
+        .inOrder();
+    List<SnippetDirectiveDefinition> snipTwo = index.getReferences(srcFile).get("snip_two");
+    assertEquals(otherContentFile, snipTwo.get(0).getDefinitionPath());
+    assertEquals(7, snipTwo.get(0).getLineNumber());
+  }
+
+  @Test
+  void affectedFiles() {
+    Path changedDoc = contentDirectory.resolve("unrelated.md");
+    Path unreferencedSource = sourceDirectory.resolve("unreferenced.java");
+
+    assertThat(index.getAffectedFiles(Arrays.asList(srcFile, changedDoc), contentDirectory))
+        .containsExactly(contentFile, otherContentFile, changedDoc);
+    assertThat(
+            index.getAffectedFiles(
+                Collections.singletonList(unreferencedSource), contentDirectory))
+        .isEmpty();
+  }
+
+  @Test
+  void putReplacesPreviousDirectives() {
+    index.put(otherContentFile, Collections.emptyList());
+    assertThat(index.getContentFilesReferencing(srcFile)).containsExactly(contentFile);
+    index.remove(contentFile);
+    assertThat(index.getContentFilesReferencing(srcFile)).isEmpty();
+    assertThat(index.getSourceFiles()).isEmpty();
+  }
+
+  @Test
+  void saveAndLoad() throws IOException {
+    Path indexPath = pathFactory.apply("./target/choss/dependency-index.txt");
+    index.save(indexPath);
+
+    Optional<DependencyIndex> loaded =
+        DependencyIndex.load(indexPath, contentDirectory.toString(), "glob:**/*.md", pathFactory);
+    assertThat(loaded.isPresent()).isTrue();
+    assertEquals(
+        index.getDirectives(otherContentFile), loaded.get().getDirectives(otherContentFile));
+    assertThat(loaded.get().getContentFilesReferencing(srcFile))
+        .containsExactly(contentFile, otherContentFile);
+  }
+
+  @Test
+  void differentContentGlobIsIgnored() throws IOException {
+    Path indexPath = pathFactory.apply("./target/choss/dependency-index.txt");
+    index.save(indexPath);
+
+    Optional<DependencyIndex> loaded =
+        DependencyIndex.load(indexPath, contentDirectory.toString(), "glob:**/*.txt", pathFactory);
+    assertThat(loaded.isPresent()).isFalse();
+  }
+
+  private SnippetDirectiveDefinition directive(String tag, int lineNumber, Path definitionPath) {
+    return SnippetDirectiveDefinition.create(
+        SnippetDirective.create(tag, srcFile), lineNumber, definitionPath);
+  }
+}
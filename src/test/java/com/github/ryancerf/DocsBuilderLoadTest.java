@@ -0,0 +1,215 @@
+package com.github.ryancerf;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+/**
+ * Builds large generated docs trees on disk and fails if the build gets slower or needs more heap
+ * than the thresholds.
+ *
+ * <p>The peak heap is the sum of the peak usage of every heap memory pool during the build. The
+ * peaks are reset after a full collection right before the build, so garbage of earlier tests is
+ * not counted.
+ *
+ * <p>Not run by default. Run with {@code mvn test -P load-tests}, which sets the heap ceiling and
+ * thresholds. Sizes and thresholds can be overridden with the {@code choss.load.*} system
+ * properties, for example {@code -Dchoss.load.contentFiles=100000}.
+ */
+@Tag("load")
+class DocsBuilderLoadTest {
+  private static final long MEGABYTE = 1024 * 1024;
+
+  @Test
+  void manyContentFiles() throws IOException {
+    try (SyntheticDocsTree tree =
+        new SyntheticDocsTree.Builder()
+            .fileSystem(SyntheticDocsTree.DISK)
+            .contentFiles(Integer.getInteger("choss.load.contentFiles", 20_000))
+            .sourceFiles(Integer.getInteger("choss.load.sourceFiles", 1_000))
+            .directivesPerContentFile(Integer.getInteger("choss.load.directivesPerContentFile", 5))
+            .fanOut(Integer.getInteger("choss.load.fanOut", 3))
+            .directories(100)
+            .create()) {
+      double seconds =
+          measure(
+              "manyContentFiles",
+              tree,
+              new BuildOptions.Builder(),
+              createDocsBuilder(tree, SourceFileParser.NEVER_LAZY, SnippetCache.UNBOUNDED),
+              Long.getLong("choss.load.maxPeakHeapMegabytes", Long.MAX_VALUE));
+
+      double filesPerSecond = tree.contentFiles.size() / seconds;
+      System.out.printf("manyContentFiles: %.0f files/s%n", filesPerSecond);
+      assertWithMessage("manyContentFiles files per second")
+          .that(filesPerSecond)
+          .isAtLeast((double) Long.getLong("choss.load.minFilesPerSecond", 0));
+    }
+  }
+
+  @Test
+  void largeSourceFiles() throws IOException {
+    long sourceMegabytes = Long.getLong("choss.load.sourceMegabytes", 50);
+    try (SyntheticDocsTree tree = largeSourceFilesTree(sourceMegabytes)) {
+      double seconds =
+          measure(
+              "largeSourceFiles",
+              tree,
+              new BuildOptions.Builder(),
+              createDocsBuilder(tree, SourceFileParser.NEVER_LAZY, SnippetCache.UNBOUNDED),
+              Long.getLong("choss.load.maxPeakHeapMegabytes", Long.MAX_VALUE));
+
+      double megabytesPerSecond = sourceMegabytes / seconds;
+      System.out.printf("largeSourceFiles: %.1f MB of source files/s%n", megabytesPerSecond);
+      assertWithMessage("largeSourceFiles megabytes of source files per second")
+          .that(megabytesPerSecond)
+          .isAtLeast((double) Long.getLong("choss.load.minSourceMegabytesPerSecond", 0));
+    }
+  }
+
+  @Test
+  void largeSnippetsWithinSnippetMemoryBudget() throws IOException {
+    int sourceFiles = 4;
+    int snippetsPerSourceFile = 10;
+    long sourceMegabytes = Long.getLong("choss.load.sourceMegabytes", 50);
+    // Snippets make up the source files, about 60 bytes per line, so keeping them all in memory
+    // would keep every source file. Few content files, so the outputs stay small.
+    int linesPerSnippet =
+        (int) (sourceMegabytes * MEGABYTE / 60 / sourceFiles / snippetsPerSourceFile);
+    long budgetMegabytes = Long.getLong("choss.load.snippetMemoryBudgetMegabytes", 16);
+    try (SyntheticDocsTree tree =
+        new SyntheticDocsTree.Builder()
+            .fileSystem(SyntheticDocsTree.DISK)
+            .contentFiles(20)
+            .directivesPerContentFile(2)
+            .sourceFiles(sourceFiles)
+            .snippetsPerSourceFile(snippetsPerSourceFile)
+            .linesPerSnippet(linesPerSnippet)
+            .fanOut(sourceFiles)
+            .create()) {
+      // Source files keep only where their snippets are, and at most the budget of them is kept.
+      // Without the budget, the peak holds every snippet.
+      measure(
+          "largeSnippetsWithinSnippetMemoryBudget",
+          tree,
+          new BuildOptions.Builder(),
+          createDocsBuilder(
+              tree,
+              Long.getLong("choss.load.lazySnippetThreshold", MEGABYTE),
+              budgetMegabytes < 0 ? SnippetCache.UNBOUNDED : budgetMegabytes * MEGABYTE),
+          Long.getLong("choss.load.maxPeakHeapWithBudgetMegabytes", Long.MAX_VALUE));
+    }
+  }
+
+  /** A few large source files, each with snippets of many lines. */
+  private static SyntheticDocsTree largeSourceFilesTree(long sourceMegabytes) throws IOException {
+    int sourceFiles = 4;
+    int snippetsPerSourceFile = 10;
+    // About 50 bytes per padding line.
+    int paddingLines =
+        (int) (sourceMegabytes * MEGABYTE / 50 / sourceFiles / snippetsPerSourceFile);
+    return new SyntheticDocsTree.Builder()
+        .fileSystem(SyntheticDocsTree.DISK)
+        .contentFiles(Integer.getInteger("choss.load.contentFiles", 20_000) / 100)
+        .sourceFiles(sourceFiles)
+        .snippetsPerSourceFile(snippetsPerSourceFile)
+        .paddingLinesPerSnippet(paddingLines)
+        .fanOut(sourceFiles)
+        .create();
+  }
+
+  /**
+   * Build the tree, and fail if the build fails or its peak heap is above the threshold.
+   *
+   * @return how long the build took, in seconds.
+   */
+  private static double measure(
+      String name,
+      SyntheticDocsTree tree,
+      BuildOptions.Builder options,
+      DocsBuilder docsBuilder,
+      long maxPeakHeapMegabytes)
+      throws IOException {
+    BuildOptions buildOptions =
+        options
+            .manifestPath(tree.root.resolve("target/choss/build-manifest.txt").toString())
+            .indexPath(tree.root.resolve("target/choss/dependency-index.txt").toString())
+            .metricsPath(tree.root.resolve("target/choss/build-metrics.json").toString())
+            .snippetIndexPath(tree.root.resolve("target/choss/snippet-index.bin").toString())
+            .parallelism(Integer.getInteger("choss.load.parallelism", 1))
+            .writeParallelism(Integer.getInteger("choss.load.parallelism", 1))
+            .walkParallelism(Integer.getInteger("choss.load.parallelism", 1))
+            .build();
+
+    List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+        heapPools.add(pool);
+      }
+    }
+    // Twice, so objects only reachable from finalizers are collected too.
+    System.gc();
+    System.runFinalization();
+    System.gc();
+    for (MemoryPoolMXBean pool : heapPools) {
+      pool.resetPeakUsage();
+    }
+    long start = System.nanoTime();
+    boolean successful =
+        docsBuilder.build(
+            tree.contentDirectory.toString(),
+            tree.targetDirectory.toString(),
+            SyntheticDocsTree.CONTENT_GLOB,
+            buildOptions);
+    double seconds = (System.nanoTime() - start) / 1e9;
+    long peakHeap = 0;
+    for (MemoryPoolMXBean pool : heapPools) {
+      peakHeap += pool.getPeakUsage().getUsed();
+    }
+
+    assertThat(successful).isTrue();
+    System.out.printf(
+        "%s: %d content files in %.2f s, %d MB read, %d MB of peak heap%n",
+        name,
+        tree.contentFiles.size(),
+        seconds,
+        docsBuilder.getMetrics().getBytesRead() / MEGABYTE,
+        peakHeap / MEGABYTE);
+    assertWithMessage(name + " peak heap during the build in MB")
+        .that(peakHeap / MEGABYTE)
+        .isAtMost(maxPeakHeapMegabytes);
+    return seconds;
+  }
+
+  private static DocsBuilder createDocsBuilder(
+      SyntheticDocsTree tree, long lazySnippetThreshold, long snippetMemoryBudget) {
+    TextFileReader textFileReader = new TextFileReader(StandardCharsets.UTF_8);
+    SnippetDirectiveParser snippetDirectiveParser = new SnippetDirectiveParser(tree.pathFactory);
+    ContentFileParser contentFileParser =
+        new ContentFileParser(snippetDirectiveParser, textFileReader);
+    SnippetCache snippetCache =
+        new SnippetCache(
+            new ParsedSourceFiles(
+                new SourceFileParser(textFileReader, lazySnippetThreshold),
+                new IndentationFormatter()),
+            snippetMemoryBudget);
+    SnippetInjector snippetInjector = new SnippetInjector(textFileReader);
+    return new DocsBuilder(
+        () -> tree.fileSystem,
+        tree.pathFactory,
+        contentFileParser,
+        snippetCache,
+        snippetInjector,
+        new SilentLog());
+  }
+}
@@ -4,9 +4,12 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -26,23 +29,25 @@ class DocsBuilderTest extends FileSystemTest {
   @BeforeEach
   void setUp() throws IOException {
     super.setUp();
-    SnippetDirectiveParser snippetDirectiveParser = new SnippetDirectiveParser(pathFactory);
-    ContentFileParser contentFileParser = new ContentFileParser(snippetDirectiveParser);
-    SourceFileParser sourceFileParser = new SourceFileParser();
-    SnippetCache snippetCache = new SnippetCache(sourceFileParser);
-    IndentationFormatter indentationFormatter = new IndentationFormatter();
-    SnippetInjector snippetInjector =
-        new SnippetInjector(snippetDirectiveParser, indentationFormatter);
     this.log = new LogMock();
+    this.docsBuilder = createDocsBuilder();
+  }
 
-    this.docsBuilder =
-        new DocsBuilder(
-            FileSystems::getDefault,
-            pathFactory,
-            contentFileParser,
-            snippetCache,
-            snippetInjector,
-            log);
+  private DocsBuilder createDocsBuilder() {
+    SnippetDirectiveParser snippetDirectiveParser = new SnippetDirectiveParser(pathFactory);
+    ContentFileParser contentFileParser =
+        new ContentFileParser(snippetDirectiveParser, textFileReader);
+    IndentationFormatter indentationFormatter = new IndentationFormatter();
+    SnippetCache snippetCache = new SnippetCache(sourceFileParser, indentationFormatter);
+    SnippetInjector snippetInjector = new SnippetInjector(textFileReader);
+
+    return new DocsBuilder(
+        FileSystems::getDefault,
+        pathFactory,
+        contentFileParser,
+        snippetCache,
+        snippetInjector,
+        log);
   }
 
   @Test
@@ -209,4 +214,473 @@ class DocsBuilderTest extends FileSystemTest {
     assertEquals(2, log.warning.size());
     assertThat(log.warning.get(1)).contains("Unused snippet (in source file)");
   }
+
+  @Test
+  void incrementalBuildOnlyRewritesChangedOutputs() throws IOException {
+    BuildOptions incremental = new BuildOptions.Builder().incremental(true).build();
+    Path srcFile = sourceDirectory.resolve("test.java");
+    Files.write(srcFile, Arrays.asList("//@@ snip_one", "code", "//@@ snip_one"));
+    Path contentFile = contentDirectory.resolve("content.md");
+    Files.write(contentFile, Collections.singletonList(" @@snip [snip_one](" + srcFile + ")"));
+    Path otherFile = contentDirectory.resolve("other.yaml");
+    Files.write(otherFile, Collections.singletonList("config"));
+
+    docsBuilder.build(
+        contentDirectory.toString(), "./target/docs/main/", "glob:**/*.md", incremental);
+    FileTime marker = FileTime.fromMillis(0);
+    Files.setLastModifiedTime(targetDirectory.resolve("content.md"), marker);
+    Files.setLastModifiedTime(targetDirectory.resolve("other.yaml"), marker);
+
+    // Only the snippet changes.
+    Files.write(srcFile, Arrays.asList("//@@ snip_one", "new code", "//@@ snip_one"));
+    boolean success =
+        createDocsBuilder()
+            .build(contentDirectory.toString(), "./target/docs/main/", "glob:**/*.md", incremental);
+    assertThat(success).isTrue();
+
+    assertEquals(
+        Collections.singletonList("new code"),
+        Files.readAllLines(targetDirectory.resolve("content.md")));
+    assertThat(Files.getLastModifiedTime(targetDirectory.resolve("content.md")))
+        .isNotEqualTo(marker);
+    assertEquals(marker, Files.getLastModifiedTime(targetDirectory.resolve("other.yaml")));
+  }
+
+  @Test
+  void incrementalBuildDeletesStaleOutputs() throws IOException {
+    BuildOptions incremental = new BuildOptions.Builder().incremental(true).build();
+    Path contentFile = contentDirectory.resolve("content.md");
+    Files.write(contentFile, Collections.singletonList("content"));
+    Path otherFile = contentDirectory.resolve("other.yaml");
+    Files.write(otherFile, Collections.singletonList("config"));
+    Files.createDirectories(contentDirectory.resolve("guide/images"));
+    Path nestedFile = contentDirectory.resolve("guide/images/diagram.png");
+    Files.write(nestedFile, Collections.singletonList("pixels"));
+
+    docsBuilder.build(
+        contentDirectory.toString(), "./target/docs/main/", "glob:**/*.md", incremental);
+    Files.delete(otherFile);
+    Files.delete(nestedFile);
+    Files.delete(nestedFile.getParent());
+    Files.delete(nestedFile.getParent().getParent());
+    createDocsBuilder()
+        .build(contentDirectory.toString(), "./target/docs/main/", "glob:**/*.md", incremental);
+
+    assertThat(Files.exists(targetDirectory.resolve("content.md"))).isTrue();
+    assertThat(Files.exists(targetDirectory.resolve("other.yaml"))).isFalse();
+    assertThat(Files.exists(targetDirectory.resolve("guide"))).isFalse();
+  }
+
+  @Test
+  void excludedPathsAreNotBuilt() throws IOException {
+    BuildOptions options =
+        new BuildOptions.Builder().excludes(Collections.singletonList("drafts")).build();
+    Files.createDirectories(contentDirectory.resolve("drafts"));
+    // Would fail the build if it was parsed.
+    Files.write(
+        contentDirectory.resolve("drafts/draft.md"),
+        Collections.singletonList(" @@snip [missing](missing.java)"));
+    Files.write(contentDirectory.resolve("content.md"), Collections.singletonList("content"));
+
+    boolean success =
+        docsBuilder.build(
+            contentDirectory.toString(), "./target/docs/main/", "glob:**/*.md", options);
+
+    assertThat(success).isTrue();
+    assertThat(Files.exists(targetDirectory.resolve("content.md"))).isTrue();
+    assertThat(Files.exists(targetDirectory.resolve("drafts"))).isFalse();
+  }
+
+  @Test
+  void syncOnlyWritesChangedOutputsAndDeletesOrphans() throws IOException {
+    BuildOptions sync = new BuildOptions.Builder().sync(true).build();
+    Path srcFile = sourceDirectory.resolve("test.java");
+    Files.write(srcFile, Arrays.asList("//@@ snip_one", "code", "//@@ snip_one"));
+    Files.write(
+        contentDirectory.resolve("content.md"),
+        Collections.singletonList(" @@snip [snip_one](" + srcFile + ")"));
+    Files.write(contentDirectory.resolve("other.yaml"), Collections.singletonList("config"));
+    Files.createDirectories(contentDirectory.resolve("guide"));
+    Files.write(contentDirectory.resolve("guide/old.md"), Collections.singletonList("old"));
+
+    docsBuilder.build(contentDirectory.toString(), "./target/docs/main/", "glob:**/*.md", sync);
+    FileTime marker = FileTime.fromMillis(0);
+    Files.setLastModifiedTime(targetDirectory.resolve("content.md"), marker);
+    Files.setLastModifiedTime(targetDirectory.resolve("other.yaml"), marker);
+
+    // The snippet keeps its lines, the asset changes and a content file is deleted.
+    Files.write(srcFile, Arrays.asList("// header", "//@@ snip_one", "code", "//@@ snip_one"));
+    Files.write(contentDirectory.resolve("other.yaml"), Collections.singletonList("new config"));
+    Files.delete(contentDirectory.resolve("guide/old.md"));
+    Files.write(contentDirectory.resolve("guide/new.md"), Collections.singletonList("new"));
+    boolean success =
+        createDocsBuilder()
+            .build(contentDirectory.toString(), "./target/docs/main/", "glob:**/*.md", sync);
+
+    assertThat(success).isTrue();
+    assertEquals(marker, Files.getLastModifiedTime(targetDirectory.resolve("content.md")));
+    assertEquals(
+        Collections.singletonList("new config"),
+        Files.readAllLines(targetDirectory.resolve("other.yaml")));
+    assertThat(Files.exists(targetDirectory.resolve("guide/old.md"))).isFalse();
+    assertThat(Files.exists(targetDirectory.resolve("guide/new.md"))).isTrue();
+    assertThat(Files.isDirectory(targetDirectory.resolve("guide"))).isTrue();
+  }
+
+  @Test
+  void warnsThatSkipUnchangedNeedsTheTargetDirectoryKept() throws IOException {
+    Files.write(contentDirectory.resolve("config.yaml"), Collections.singletonList("config"));
+    BuildOptions skipUnchanged =
+        new BuildOptions.Builder().assetStrategy(AssetStrategy.SKIP_UNCHANGED).build();
+
+    docsBuilder.build(
+        contentDirectory.toString(), "./target/docs/main/", "glob:**/*.md", skipUnchanged);
+    assertThat(log.warning).hasSize(1);
+    assertThat(log.warning.get(0)).contains("skip-unchanged skips nothing");
+
+    log.warning.clear();
+    createDocsBuilder()
+        .build(
+            contentDirectory.toString(),
+            "./target/docs/main/",
+            "glob:**/*.md",
+            new BuildOptions.Builder()
+                .assetStrategy(AssetStrategy.SKIP_UNCHANGED)
+                .sync(true)
+                .build());
+    assertThat(log.warning).isEmpty();
+  }
+
+  @Test
+  void syncKeepsUnchangedAssets() throws IOException {
+    Files.write(contentDirectory.resolve("same.yaml"), Collections.singletonList("config"));
+    Files.write(contentDirectory.resolve("changed.yaml"), Collections.singletonList("config"));
+    BuildOptions sync = new BuildOptions.Builder().sync(true).build();
+
+    docsBuilder.build(contentDirectory.toString(), "./target/docs/main/", "glob:**/*.md", sync);
+    FileTime marker = FileTime.fromMillis(0);
+    Files.setLastModifiedTime(targetDirectory.resolve("same.yaml"), marker);
+    Files.setLastModifiedTime(targetDirectory.resolve("changed.yaml"), marker);
+    Files.write(contentDirectory.resolve("changed.yaml"), Collections.singletonList("new config"));
+    createDocsBuilder()
+        .build(contentDirectory.toString(), "./target/docs/main/", "glob:**/*.md", sync);
+
+    assertEquals(marker, Files.getLastModifiedTime(targetDirectory.resolve("same.yaml")));
+    assertEquals(
+        Collections.singletonList("new config"),
+        Files.readAllLines(targetDirectory.resolve("changed.yaml")));
+  }
+
+  @Test
+  void syncComparesAssetsBySizeAndModifiedTimeWhenSkippingUnchanged() throws IOException {
+    Path asset = contentDirectory.resolve("logo.png");
+    Files.write(asset, "logo".getBytes(StandardCharsets.UTF_8));
+    BuildOptions sync =
+        new BuildOptions.Builder().sync(true).assetStrategy(AssetStrategy.SKIP_UNCHANGED).build();
+
+    docsBuilder.build(contentDirectory.toString(), "./target/docs/main/", "glob:**/*.md", sync);
+    DocsBuilder secondBuilder = createDocsBuilder();
+    secondBuilder.build(
+        contentDirectory.toString(), "./target/docs/main/", "glob:**/*.md", sync);
+    // Neither the asset nor its output was read.
+    assertThat(secondBuilder.getMetrics().getBytesRead()).isEqualTo(0L);
+
+    Path output = targetDirectory.resolve("logo.png");
+
+    Files.write(asset, "new logo".getBytes(StandardCharsets.UTF_8));
+    createDocsBuilder()
+        .build(contentDirectory.toString(), "./target/docs/main/", "glob:**/*.md", sync);
+    assertEquals("new logo", new String(Files.readAllBytes(output), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void incrementalBuildKeepsDependencyIndexOfUnchangedFiles() throws IOException {
+    BuildOptions incremental = new BuildOptions.Builder().incremental(true).build();
+    Path srcFile = sourceDirectory.resolve("test.java");
+    Files.write(srcFile, Arrays.asList("//@@ snip_one", "code", "//@@ snip_one"));
+    Path contentFile = contentDirectory.resolve("content.md");
+    Files.write(
+        contentFile, Arrays.asList("intro", " @@snip [snip_one](" + srcFile + ")"));
+
+    docsBuilder.build(
+        contentDirectory.toString(), "./target/docs/main/", "glob:**/*.md", incremental);
+    DocsBuilder secondBuilder = createDocsBuilder();
+    secondBuilder.build(
+        contentDirectory.toString(), "./target/docs/main/", "glob:**/*.md", incremental);
+
+    assertThat(log.info).contains("Skipped 1 unchanged files");
+    DependencyIndex index = secondBuilder.getDependencyIndex();
+    assertThat(index.getContentFilesReferencing(srcFile)).containsExactly(contentFile);
+    assertEquals(2, index.getReferences(srcFile).get("snip_one").get(0).getLineNumber());
+    DependencyIndex saved =
+        DependencyIndex.load(
+                pathFactory.apply(BuildOptions.DEFAULT_INDEX_PATH),
+                contentDirectory.toString(),
+                "glob:**/*.md",
+                pathFactory)
+            .get();
+    assertThat(saved.getContentFilesReferencing(srcFile)).containsExactly(contentFile);
+  }
+
+  @Test
+  void incrementalBuildCountsSnippetsOfUnchangedFilesAsUsed() throws IOException {
+    BuildOptions incremental = new BuildOptions.Builder().incremental(true).build();
+    Path srcFile = sourceDirectory.resolve("test.java");
+    Files.write(
+        srcFile,
+        Arrays.asList(
+            "//@@ snip_a", "a", "//@@ snip_a", "//@@ snip_b", "b", "//@@ snip_b"));
+    Files.write(
+        contentDirectory.resolve("a.md"),
+        Collections.singletonList(" @@snip [snip_a](" + srcFile + ")"));
+    Path changedFile = contentDirectory.resolve("b.md");
+    Files.write(changedFile, Collections.singletonList(" @@snip [snip_b](" + srcFile + ")"));
+
+    docsBuilder.build(
+        contentDirectory.toString(), "./target/docs/main/", "glob:**/*.md", incremental);
+    // Only b.md is processed again, which parses the source file again.
+    Files.write(changedFile, Arrays.asList("b", " @@snip [snip_b](" + srcFile + ")"));
+    log.warning.clear();
+    boolean success =
+        createDocsBuilder()
+            .build(contentDirectory.toString(), "./target/docs/main/", "glob:**/*.md", incremental);
+
+    assertThat(success).isTrue();
+    assertThat(log.info).contains("Skipped 1 unchanged files");
+    assertThat(log.warning).isEmpty();
+  }
+
+  @Test
+  void buildChangedOnlyRendersAffectedDocsAndKeepsTheRest() throws IOException {
+    Path srcOne = sourceDirectory.resolve("one.java");
+    Files.write(srcOne, Arrays.asList("//@@ snip_one", "one", "//@@ snip_one"));
+    Path srcTwo = sourceDirectory.resolve("two.java");
+    Files.write(srcTwo, Arrays.asList("//@@ snip_two", "two", "//@@ snip_two"));
+    Files.write(
+        contentDirectory.resolve("one.md"),
+        Collections.singletonList(" @@snip [snip_one](" + srcOne + ")"));
+    Files.write(
+        contentDirectory.resolve("two.md"),
+        Collections.singletonList(" @@snip [snip_two](" + srcTwo + ")"));
+    docsBuilder.build(contentDirectory.toString(), "./target/docs/main/", "glob:**/*.md");
+    // Marks an output the changed files do not affect.
+    Files.write(targetDirectory.resolve("two.md"), Collections.singletonList("kept"));
+
+    Files.write(srcOne, Arrays.asList("//@@ snip_one", "new one", "//@@ snip_one"));
+    Files.write(srcTwo, Arrays.asList("//@@ snip_two", "new two", "//@@ snip_two"));
+    DependencyIndex saved =
+        DependencyIndex.load(
+                pathFactory.apply(BuildOptions.DEFAULT_INDEX_PATH),
+                contentDirectory.toString(),
+                "glob:**/*.md",
+                pathFactory)
+            .get();
+    boolean success =
+        createDocsBuilder()
+            .buildChanged(
+                contentDirectory.toString(),
+                "./target/docs/main/",
+                "glob:**/*.md",
+                BuildOptions.defaults(),
+                saved,
+                Collections.singletonList(srcOne));
+
+    assertThat(success).isTrue();
+    assertThat(log.info).contains("Rebuilding 1 files");
+    assertThat(Files.readAllLines(targetDirectory.resolve("one.md"))).containsExactly("new one");
+    assertThat(Files.readAllLines(targetDirectory.resolve("two.md"))).containsExactly("kept");
+  }
+
+  @Test
+  void incrementalBuildComparesAssetsBySizeAndModifiedTime() throws IOException {
+    BuildOptions options =
+        new BuildOptions.Builder()
+            .incremental(true)
+            .assetStrategy(AssetStrategy.SKIP_UNCHANGED)
+            .build();
+    Path asset = contentDirectory.resolve("image.png");
+    Files.write(asset, Collections.singletonList("pixels"));
+    Files.setLastModifiedTime(asset, FileTime.fromMillis(1000));
+
+    docsBuilder.build(contentDirectory.toString(), "./target/docs/main/", "glob:**/*.md", options);
+    assertEquals(
+        FileTime.fromMillis(1000), Files.getLastModifiedTime(targetDirectory.resolve("image.png")));
+    createDocsBuilder()
+        .build(contentDirectory.toString(), "./target/docs/main/", "glob:**/*.md", options);
+    assertThat(log.info).contains("Skipped 1 unchanged files");
+
+    Files.write(asset, Collections.singletonList("pixelz"));
+    Files.setLastModifiedTime(asset, FileTime.fromMillis(2000));
+    createDocsBuilder()
+        .build(contentDirectory.toString(), "./target/docs/main/", "glob:**/*.md", options);
+    assertEquals(
+        Collections.singletonList("pixelz"),
+        Files.readAllLines(targetDirectory.resolve("image.png")));
+  }
+
+  @Test
+  void buildWritesMetricsReport() throws IOException {
+    Path srcFile = sourceDirectory.resolve("test.java");
+    Files.write(srcFile, Arrays.asList("//@@ snip_one", "code", "//@@ snip_one"));
+    for (int i = 0; i < 3; i++) {
+      Files.write(
+          contentDirectory.resolve("content" + i + ".md"),
+          Collections.singletonList(" @@snip [snip_one](" + srcFile + ")"));
+    }
+
+    docsBuilder.build(contentDirectory.toString(), "./target/docs/main/", "glob:**/*.md");
+
+    BuildMetrics metrics = docsBuilder.getMetrics();
+    assertThat(metrics.getSlowestContentFiles()).hasSize(3);
+    assertThat(metrics.getBytesWritten()).isGreaterThan(0L);
+    String report =
+        new String(
+            Files.readAllBytes(pathFactory.apply(BuildOptions.DEFAULT_METRICS_PATH)),
+            StandardCharsets.UTF_8);
+    assertThat(report).contains("\"snippetCache\": {\"hits\": 2, \"misses\": 1}");
+    assertThat(report).contains("\"references\": 3, \"contentFiles\": 3}");
+  }
+
+  @Test
+  void parallelBuildReportsErrorsInWalkOrder() throws IOException {
+    Path srcFile = sourceDirectory.resolve("test.java");
+    Files.write(srcFile, Arrays.asList("//@@ snip_one", "code", "//@@ snip_one"));
+    for (int i = 0; i < 32; i++) {
+      Files.write(
+          contentDirectory.resolve("content" + i + ".md"),
+          Collections.singletonList(" @@snip [missing_" + i + "](" + srcFile + ")"));
+    }
+
+    docsBuilder.build(contentDirectory.toString(), "./target/docs/main/", "glob:**/*.md");
+    List<String> sequentialErrors = new ArrayList<>(log.error);
+
+    this.log = new LogMock();
+    createDocsBuilder()
+        .build(
+            contentDirectory.toString(),
+            "./target/docs/main/",
+            "glob:**/*.md",
+            new BuildOptions.Builder().parallelism(8).build());
+
+    assertEquals(32, log.error.size());
+    assertEquals(sequentialErrors, log.error);
+  }
+
+  @Test
+  void parallelWalkReportsErrorsInWalkOrder() throws IOException {
+    Path srcFile = sourceDirectory.resolve("test.java");
+    Files.write(srcFile, Arrays.asList("//@@ snip_one", "code", "//@@ snip_one"));
+    for (int i = 0; i < 32; i++) {
+      Path directory = contentDirectory.resolve("dir" + i % 4 + "/sub" + i % 3);
+      Files.createDirectories(directory);
+      Files.write(
+          directory.resolve("content" + i + ".md"),
+          Collections.singletonList(" @@snip [missing_" + i + "](" + srcFile + ")"));
+    }
+
+    docsBuilder.build(contentDirectory.toString(), "./target/docs/main/", "glob:**/*.md");
+    List<String> sequentialErrors = new ArrayList<>(log.error);
+
+    this.log = new LogMock();
+    createDocsBuilder()
+        .build(
+            contentDirectory.toString(),
+            "./target/docs/main/",
+            "glob:**/*.md",
+            new BuildOptions.Builder().parallelism(4).walkParallelism(4).build());
+
+    assertEquals(32, log.error.size());
+    assertEquals(sequentialErrors, log.error);
+  }
+
+  @Test
+  void parallelWritesCreateNestedDirectories() throws IOException {
+    Path srcFile = sourceDirectory.resolve("test.java");
+    Files.write(srcFile, Arrays.asList("//@@ snip_one", "code", "//@@ snip_one"));
+    for (int i = 0; i < 16; i++) {
+      Path directory = contentDirectory.resolve("dir" + i % 4 + "/nested" + i);
+      Files.createDirectories(directory);
+      Files.write(
+          directory.resolve("content.md"),
+          Collections.singletonList(" @@snip [snip_one](" + srcFile + ")"));
+      Files.write(directory.resolve("image.png"), Collections.singletonList("image" + i));
+    }
+
+    boolean successful =
+        docsBuilder.build(
+            contentDirectory.toString(),
+            "./target/docs/main/",
+            "glob:**/*.md",
+            new BuildOptions.Builder().writeParallelism(4).maxInFlightWrites(2).build());
+
+    assertThat(successful).isTrue();
+    for (int i = 0; i < 16; i++) {
+      Path directory = targetDirectory.resolve("dir" + i % 4 + "/nested" + i);
+      assertEquals(
+          Collections.singletonList("code"), Files.readAllLines(directory.resolve("content.md")));
+      assertEquals(
+          Collections.singletonList("image" + i),
+          Files.readAllLines(directory.resolve("image.png")));
+    }
+    assertThat(log.info).contains("Copied 16 files with snippets");
+    assertThat(log.info).contains("Copied 16 files without snippets");
+  }
+
+  @Test
+  void rebuildRendersContentFilesReferencingChangedSource() throws IOException {
+    Path srcFile = sourceDirectory.resolve("test.java");
+    Files.write(srcFile, Arrays.asList("//@@ snip_one", "code", "//@@ snip_one"));
+    Path contentFile = contentDirectory.resolve("content.md");
+    Files.write(contentFile, Collections.singletonList(" @@snip [snip_one](" + srcFile + ")"));
+    Path otherContentFile = contentDirectory.resolve("other.md");
+    Files.write(otherContentFile, Collections.singletonList("other"));
+
+    docsBuilder.build(contentDirectory.toString(), "./target/docs/main/", "glob:**/*.md");
+    FileTime marker = FileTime.fromMillis(0);
+    Files.setLastModifiedTime(targetDirectory.resolve("other.md"), marker);
+
+    Files.write(srcFile, Arrays.asList("//@@ snip_one", "new code", "//@@ snip_one"));
+    assertThat(docsBuilder.rebuild(Collections.singletonList(srcFile))).isTrue();
+
+    assertEquals(
+        Collections.singletonList("new code"),
+        Files.readAllLines(targetDirectory.resolve("content.md")));
+    assertEquals(marker, Files.getLastModifiedTime(targetDirectory.resolve("other.md")));
+  }
+
+  @Test
+  void rebuildHandlesAddedAndDeletedContentFiles() throws IOException {
+    Path contentFile = contentDirectory.resolve("content.md");
+    Files.write(contentFile, Collections.singletonList("content"));
+    docsBuilder.build(contentDirectory.toString(), "./target/docs/main/", "glob:**/*.md");
+
+    Files.delete(contentFile);
+    Path newContentFile = contentDirectory.resolve("new/content.md");
+    Files.createDirectories(newContentFile.getParent());
+    Files.write(newContentFile, Collections.singletonList("new content"));
+    assertThat(docsBuilder.rebuild(Arrays.asList(contentFile, newContentFile.getParent())))
+        .isTrue();
+
+    assertThat(Files.exists(targetDirectory.resolve("content.md"))).isFalse();
+    assertEquals(
+        Collections.singletonList("new content"),
+        Files.readAllLines(targetDirectory.resolve("new/content.md")));
+  }
+
+  @Test
+  void failedRebuildWritesNothing() throws IOException {
+    Path srcFile = sourceDirectory.resolve("test.java");
+    Files.write(srcFile, Arrays.asList("//@@ snip_one", "code", "//@@ snip_one"));
+    Path contentFile = contentDirectory.resolve("content.md");
+    Files.write(contentFile, Collections.singletonList(" @@snip [snip_one](" + srcFile + ")"));
+    docsBuilder.build(contentDirectory.toString(), "./target/docs/main/", "glob:**/*.md");
+
+    Files.write(srcFile, Arrays.asList("//@@ snip_two", "code", "//@@ snip_two"));
+    assertThat(docsBuilder.rebuild(Collections.singletonList(srcFile))).isFalse();
+
+    assertThat(String.join("", log.error)).contains("Unable to find Snippet Block tagged snip_one");
+    assertEquals(
+        Collections.singletonList("code"),
+        Files.readAllLines(targetDirectory.resolve("content.md")));
+  }
 }
@@ -0,0 +1,157 @@
+package com.github.ryancerf;
+
+import com.google.common.jimfs.Configuration;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static com.google.common.truth.Truth.assertThat;
+
+class DocsDaemonTest extends FileSystemTest {
+
+  @Test
+  void servesBuildsWithChangedSourceFilesParsedAgain() throws Exception {
+    Path srcFile = sourceDirectory.resolve("test.java");
+    Files.write(srcFile, Arrays.asList("//@@ snip_one", "code", "//@@ snip_one"));
+    Path contentFile = contentDirectory.resolve("content.md");
+    Files.write(contentFile, Collections.singletonList(" @@snip [snip_one](" + srcFile + ")"));
+    Path daemonFile = pathFactory.apply("./target/choss/daemon.properties");
+    String project = DocsDaemon.project(contentDirectory, targetDirectory);
+    String settings = settings(BuildOptions.defaults());
+
+    DocsDaemon.ClientLog log = new DocsDaemon.ClientLog(new LogMock());
+    DocsBuilder docsBuilder = newDocsBuilder(log);
+    try (DocsDaemon daemon =
+        new DocsDaemon(
+            docsBuilder,
+            () ->
+                docsBuilder.build(
+                    contentDirectory.toString(), targetDirectory.toString(), "glob:**/*.md"),
+            log,
+            project,
+            settings)) {
+      daemon.start(daemonFile);
+      assertThat(Files.getPosixFilePermissions(daemonFile))
+          .containsExactly(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE);
+      startServing(daemon);
+
+      List<String> output = new ArrayList<>();
+      assertThat(
+              DocsDaemonClient.build(
+                  daemonFile, project, settings, (level, line) -> output.add(line)))
+          .isEqualTo(Optional.of(true));
+      assertThat(output).isNotEmpty();
+      assertThat(Files.readAllLines(targetDirectory.resolve("content.md")))
+          .containsExactly("code");
+
+      Files.write(srcFile, Arrays.asList("//@@ snip_one", "new code", "//@@ snip_one"));
+      assertThat(DocsDaemonClient.build(daemonFile, project, settings, (level, line) -> {}))
+          .isEqualTo(Optional.of(true));
+      assertThat(Files.readAllLines(targetDirectory.resolve("content.md")))
+          .containsExactly("new code");
+
+      // Another project, the client builds in process.
+      String otherProject = DocsDaemon.project(sourceDirectory, targetDirectory);
+      assertThat(DocsDaemonClient.build(daemonFile, otherProject, settings, (level, line) -> {}))
+          .isEqualTo(Optional.empty());
+
+      // Other options, the client builds in process too.
+      String otherSettings = settings(new BuildOptions.Builder().sync(true).build());
+      assertThat(otherSettings).isNotEqualTo(settings);
+      assertThat(DocsDaemonClient.build(daemonFile, project, otherSettings, (level, line) -> {}))
+          .isEqualTo(Optional.empty());
+    }
+    assertThat(Files.exists(daemonFile)).isFalse();
+  }
+
+  @Test
+  void dropsClientsThatSendNoHandshake() throws Exception {
+    Files.write(contentDirectory.resolve("content.md"), Collections.singletonList("text"));
+    Path daemonFile = pathFactory.apply("./target/choss/daemon.properties");
+    String project = DocsDaemon.project(contentDirectory, targetDirectory);
+    String settings = settings(BuildOptions.defaults());
+    LogMock logMock = new LogMock();
+    DocsDaemon.ClientLog log = new DocsDaemon.ClientLog(logMock);
+    DocsBuilder docsBuilder = newDocsBuilder(log);
+    try (DocsDaemon daemon =
+        new DocsDaemon(
+            docsBuilder,
+            () ->
+                docsBuilder.build(
+                    contentDirectory.toString(), targetDirectory.toString(), "glob:**/*.md"),
+            log,
+            project,
+            settings)) {
+      daemon.setHandshakeTimeoutMillis(200);
+      daemon.start(daemonFile);
+      startServing(daemon);
+
+      int port = Integer.parseInt(DocsDaemon.readProperty(daemonFile, DocsDaemon.PORT));
+      try (Socket silent = new Socket(InetAddress.getLoopbackAddress(), port)) {
+        // Never sends a line. The daemon must give up on it and serve the next client.
+        assertThat(silent.getInputStream().read()).isEqualTo(-1);
+      }
+      assertThat(DocsDaemonClient.build(daemonFile, project, settings, (level, line) -> {}))
+          .isEqualTo(Optional.of(true));
+      assertThat(logMock.warning).hasSize(1);
+      assertThat(logMock.warning.get(0)).contains("SocketTimeoutException");
+    }
+  }
+
+  @Override
+  Configuration fileSystemConfiguration() {
+    return Configuration.unix().toBuilder().setAttributeViews("basic", "posix").build();
+  }
+
+  private DocsBuilder newDocsBuilder(DocsDaemon.ClientLog log) {
+    return new DocsBuilder(
+        FileSystems::getDefault,
+        pathFactory,
+        new ContentFileParser(new SnippetDirectiveParser(pathFactory), textFileReader),
+        new SnippetCache(sourceFileParser, new IndentationFormatter()),
+        new SnippetInjector(textFileReader),
+        log);
+  }
+
+  private static void startServing(DocsDaemon daemon) {
+    Thread server =
+        new Thread(
+            () -> {
+              try {
+                daemon.serve();
+              } catch (Exception e) {
+                throw new IllegalStateException(e);
+              }
+            });
+    server.setDaemon(true);
+    server.start();
+  }
+
+  private static String settings(BuildOptions options) {
+    return DocsDaemon.settings(
+        "glob:**/*.md", options, StandardCharsets.UTF_8, CommentSyntaxes.DEFAULT, -1, -1);
+  }
+
+  @Test
+  void noDaemonFileMeansNoDaemon() {
+    Path daemonFile = pathFactory.apply("./target/choss/daemon.properties");
+    assertThat(
+            DocsDaemonClient.build(
+                daemonFile,
+                DocsDaemon.project(contentDirectory, targetDirectory),
+                settings(BuildOptions.defaults()),
+                (level, line) -> {}))
+        .isEqualTo(Optional.empty());
+  }
+}
@@ -0,0 +1,122 @@
+package com.github.ryancerf;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+class DocsWalkerTest extends FileSystemTest {
+
+  @Test
+  void excludedDirectoriesArePruned() throws IOException {
+    Files.createDirectories(contentDirectory.resolve("vendor/js"));
+    Files.write(contentDirectory.resolve("vendor/js/lib.js"), Collections.singletonList("lib"));
+    Files.write(contentDirectory.resolve("intro.md"), Collections.singletonList("intro"));
+
+    DocsWalker walker =
+        new DocsWalker(fileSystem, Collections.emptyList(), Collections.singletonList("vendor"));
+
+    assertThat(walker.walk(contentDirectory))
+        .containsExactly(contentDirectory, contentDirectory.resolve("intro.md"));
+    assertThat(walker.isExcluded(fileSystem.getPath("vendor/js/lib.js"))).isTrue();
+    assertThat(walker.isExcluded(fileSystem.getPath("intro.md"))).isFalse();
+  }
+
+  @Test
+  void includesOnlyFilterFiles() throws IOException {
+    Path guide = contentDirectory.resolve("guide");
+    Files.createDirectories(guide);
+    Files.write(guide.resolve("intro.md"), Collections.singletonList("intro"));
+    Files.write(guide.resolve("logo.png"), Collections.singletonList("png"));
+
+    DocsWalker walker =
+        new DocsWalker(fileSystem, Collections.singletonList("**/*.md"), Collections.emptyList());
+
+    assertThat(walker.walk(contentDirectory))
+        .containsExactly(contentDirectory, guide, guide.resolve("intro.md"));
+  }
+
+  @Test
+  void globsStartingWithAnyDirectoriesMatchTopLevelPaths() throws IOException {
+    Files.write(contentDirectory.resolve("intro.md"), Collections.singletonList("intro"));
+    Files.write(contentDirectory.resolve("logo.png"), Collections.singletonList("png"));
+    Files.createDirectories(contentDirectory.resolve("node_modules"));
+    Files.write(
+        contentDirectory.resolve("node_modules/readme.md"), Collections.singletonList("vendor"));
+
+    DocsWalker walker =
+        new DocsWalker(
+            fileSystem,
+            Collections.singletonList("**/*.md"),
+            Collections.singletonList("glob:**/node_modules"));
+
+    assertThat(walker.walk(contentDirectory))
+        .containsExactly(contentDirectory, contentDirectory.resolve("intro.md"));
+  }
+
+  @Test
+  void deleteContentsKeepsExcludedPaths() throws IOException {
+    Files.createDirectories(targetDirectory.resolve("api/v1"));
+    Files.write(targetDirectory.resolve("api/v1/index.html"), Collections.singletonList("api"));
+    Files.createDirectories(targetDirectory.resolve("guide"));
+    Files.write(targetDirectory.resolve("guide/intro.md"), Collections.singletonList("intro"));
+
+    new DocsWalker(fileSystem, Collections.emptyList(), Collections.singletonList("api"))
+        .deleteContents(targetDirectory);
+
+    assertThat(Files.exists(targetDirectory.resolve("api/v1/index.html"))).isTrue();
+    assertThat(Files.exists(targetDirectory.resolve("guide"))).isFalse();
+  }
+
+  @Test
+  void parallelWalkHasTheOrderOfASequentialWalk() throws IOException {
+    for (int i = 0; i < 40; i++) {
+      Path directory = contentDirectory.resolve("d" + i % 5 + "/e" + i % 4 + "/f" + i % 3);
+      Files.createDirectories(directory);
+      Files.write(directory.resolve("page" + i + ".md"), Collections.singletonList("page"));
+    }
+    Files.createDirectories(contentDirectory.resolve("d1/vendor"));
+    Files.write(contentDirectory.resolve("d1/vendor/lib.js"), Collections.singletonList("lib"));
+    List<String> excludes = Collections.singletonList("**/vendor");
+
+    List<Path> sequential =
+        new DocsWalker(fileSystem, Collections.emptyList(), excludes).walk(contentDirectory);
+    Set<Path> found = ConcurrentHashMap.newKeySet();
+    List<Path> parallel =
+        new DocsWalker(fileSystem, Collections.emptyList(), excludes, 4)
+            .walk(contentDirectory, contentDirectory, found::add);
+
+    assertThat(parallel).containsExactlyElementsIn(sequential).inOrder();
+    assertThat(found).containsExactlyElementsIn(sequential);
+    assertThat(parallel).doesNotContain(contentDirectory.resolve("d1/vendor"));
+  }
+
+  @Test
+  void parallelDeleteContentsKeepsExcludedPaths() throws IOException {
+    Files.createDirectories(targetDirectory.resolve("api/v1"));
+    Files.write(targetDirectory.resolve("api/v1/index.html"), Collections.singletonList("api"));
+    for (int i = 0; i < 10; i++) {
+      Path directory = targetDirectory.resolve("guide" + i + "/part");
+      Files.createDirectories(directory);
+      Files.write(directory.resolve("intro.md"), Collections.singletonList("intro"));
+    }
+
+    new DocsWalker(fileSystem, Collections.emptyList(), Collections.singletonList("api"), 4)
+        .deleteContents(targetDirectory);
+
+    assertThat(Files.exists(targetDirectory.resolve("api/v1/index.html"))).isTrue();
+    try (Stream<Path> children = Files.list(targetDirectory)) {
+      assertThat(children.collect(Collectors.toList()))
+          .containsExactly(targetDirectory.resolve("api"));
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package com.github.ryancerf;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.WatchServiceConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DocsWatcherTest extends FileSystemTest {
+
+  @Override
+  Configuration fileSystemConfiguration() {
+    return Configuration.unix()
+        .toBuilder()
+        .setWatchServiceConfiguration(
+            WatchServiceConfiguration.polling(10, TimeUnit.MILLISECONDS))
+        .build();
+  }
+
+  @Test
+  void rebuildsWhenSourceFileChanges() throws Exception {
+    Path srcFile = sourceDirectory.resolve("test.java");
+    Files.write(srcFile, Arrays.asList("//@@ snip_one", "code", "//@@ snip_one"));
+    Path contentFile = contentDirectory.resolve("content.md");
+    Files.write(contentFile, Collections.singletonList(" @@snip [snip_one](" + srcFile + ")"));
+
+    LogMock log = new LogMock();
+    SnippetDirectiveParser snippetDirectiveParser = new SnippetDirectiveParser(pathFactory);
+    DocsBuilder docsBuilder =
+        new DocsBuilder(
+            FileSystems::getDefault,
+            pathFactory,
+            new ContentFileParser(snippetDirectiveParser, textFileReader),
+            new SnippetCache(sourceFileParser, new IndentationFormatter()),
+            new SnippetInjector(textFileReader),
+            log);
+    docsBuilder.build(contentDirectory.toString(), "./target/docs/main/", "glob:**/*.md");
+
+    try (WatchService watchService = fileSystem.newWatchService()) {
+      DocsWatcher docsWatcher = new DocsWatcher(docsBuilder, watchService, log, true);
+      Semaphore watching = new Semaphore(0);
+      docsWatcher.setOnWatching(watching::release);
+      Thread watcher =
+          new Thread(
+              () -> {
+                try {
+                  docsWatcher.watch();
+                } catch (InterruptedException e) {
+                  // Stopped by the test.
+                } catch (Exception e) {
+                  throw new IllegalStateException(e);
+                }
+              });
+      watcher.setDaemon(true);
+      watcher.start();
+      try {
+        assertTrue(watching.tryAcquire(10, TimeUnit.SECONDS), "watching");
+        Files.write(srcFile, Arrays.asList("//@@ snip_one", "new code", "//@@ snip_one"));
+        assertTrue(watching.tryAcquire(10, TimeUnit.SECONDS), "rebuilt");
+      } finally {
+        watcher.interrupt();
+        watcher.join(TimeUnit.SECONDS.toMillis(10));
+      }
+    }
+
+    assertEquals(
+        Collections.singletonList("new code"),
+        Files.readAllLines(targetDirectory.resolve("content.md")));
+  }
+}
@@ -5,6 +5,7 @@ import com.google.common.jimfs.Jimfs;
 import org.junit.jupiter.api.BeforeEach;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -17,18 +18,24 @@ abstract class FileSystemTest {
   Path sourceDirectory;
   Path contentDirectory;
   Path targetDirectory;
+  TextFileReader textFileReader;
   SourceFileParser sourceFileParser;
 
   @BeforeEach
   void setUp() throws IOException {
-    this.fileSystem = Jimfs.newFileSystem(Configuration.unix());
+    this.fileSystem = Jimfs.newFileSystem(fileSystemConfiguration());
     this.pathFactory = s -> fileSystem.getPath(s);
     this.contentDirectory = pathFactory.apply("./docs/main/");
     this.sourceDirectory = pathFactory.apply("./docs/src/main/resources");
     this.targetDirectory = pathFactory.apply("./target/docs/main/");
-    this.sourceFileParser = new SourceFileParser();
+    this.textFileReader = new TextFileReader(StandardCharsets.UTF_8);
+    this.sourceFileParser = new SourceFileParser(textFileReader);
 
     Files.createDirectories(sourceDirectory);
     Files.createDirectories(contentDirectory);
   }
+
+  Configuration fileSystemConfiguration() {
+    return Configuration.unix();
+  }
 }
@@ -0,0 +1,89 @@
+package com.github.ryancerf;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/** Runs git in a temporary repository. Skipped if git is not installed. */
+class GitChangesTest {
+
+  @TempDir Path repository;
+
+  @Test
+  void findsChangedDeletedAndUntrackedFiles() throws Exception {
+    assumeTrue(git("--version"));
+    assertThat(git("init", "-q")).isTrue();
+    Path module = Files.createDirectories(repository.resolve("module"));
+    Files.write(module.resolve("changed.java"), Collections.singletonList("code"));
+    Files.write(module.resolve("deleted.java"), Collections.singletonList("code"));
+    Files.write(module.resolve("same.java"), Collections.singletonList("code"));
+    Files.write(repository.resolve(".gitignore"), Collections.singletonList("*.log"));
+    assertThat(git("add", ".")).isTrue();
+    assertThat(commit()).isTrue();
+
+    Files.write(module.resolve("changed.java"), Collections.singletonList("new code"));
+    Files.delete(module.resolve("deleted.java"));
+    Files.write(module.resolve("untracked.md"), Collections.singletonList("doc"));
+    Files.write(module.resolve("ignored.log"), Collections.singletonList("log"));
+
+    assertThat(GitChanges.changedSince(module, "HEAD"))
+        .containsExactly(
+            repository.resolve("module/changed.java"),
+            repository.resolve("module/deleted.java"),
+            repository.resolve("module/untracked.md"));
+    assertThrows(IOException.class, () -> GitChanges.changedSince(module, "no-such-revision"));
+  }
+
+  @Test
+  void keepsTheSymbolicLinkTheWorkingTreeIsReachedThrough() throws Exception {
+    assumeTrue(git("--version"));
+    assertThat(git("init", "-q")).isTrue();
+    Files.write(repository.resolve("README.md"), Collections.singletonList("readme"));
+    assertThat(git("add", ".")).isTrue();
+    assertThat(commit()).isTrue();
+    // Outside the repository, so git does not list the link itself.
+    Path links = Files.createTempDirectory("choss-links");
+    Path link = links.resolve("checkout");
+    try {
+      Files.createSymbolicLink(link, repository);
+    } catch (IOException | UnsupportedOperationException e) {
+      Files.delete(links);
+      assumeTrue(false, "No symbolic links: " + e.getMessage());
+    }
+    try {
+      Path module = Files.createDirectories(link.resolve("module"));
+      Files.write(module.resolve("untracked.md"), Collections.singletonList("doc"));
+
+      assertThat(GitChanges.changedSince(module, "HEAD"))
+          .containsExactly(link.resolve("module/untracked.md"));
+    } finally {
+      Files.delete(link);
+      Files.delete(links);
+    }
+  }
+
+  private boolean commit() throws InterruptedException {
+    return git("-c", "user.name=test", "-c", "user.email=test@test", "commit", "-q", "-m", "a");
+  }
+
+  private boolean git(String... args) throws InterruptedException {
+    String[] command = new String[args.length + 1];
+    command[0] = "git";
+    System.arraycopy(args, 0, command, 1, args.length);
+    try {
+      Process process = new ProcessBuilder(command).directory(repository.toFile()).start();
+      return process.waitFor(30, TimeUnit.SECONDS) && process.exitValue() == 0;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package com.github.ryancerf;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ParsedSourceFilesTest extends FileSystemTest {
+
+  private AtomicInteger parseCount;
+  private ParsedSourceFiles parsedSourceFiles;
+
+  @Override
+  @BeforeEach
+  void setUp() throws IOException {
+    super.setUp();
+    this.parseCount = new AtomicInteger();
+    this.parsedSourceFiles =
+        new ParsedSourceFiles(
+            new SourceFileParser(textFileReader) {
+              @Override
+              ParseResult<List<Snippet>> extractSnippetBlocks(
+                  SnippetDirectiveDefinition directiveDefinition) {
+                parseCount.incrementAndGet();
+                return super.extractSnippetBlocks(directiveDefinition);
+              }
+            },
+            new IndentationFormatter());
+  }
+
+  @Test
+  void snippetCachesShareParsedFilesByCanonicalPath() throws IOException {
+    Path srcFile = sourceDirectory.resolve("test.java");
+    Files.write(srcFile, Arrays.asList("//@@ snip_one", "code", "//@@ snip_one"));
+    // The same file, written differently by the docs of another module.
+    Path otherSpelling = pathFactory.apply("./docs/src/main/../main/resources/test.java");
+
+    SnippetCache firstModule = new SnippetCache(parsedSourceFiles);
+    SnippetCache secondModule = new SnippetCache(parsedSourceFiles);
+    firstModule.parseOrGetSnippet(definition(srcFile));
+    ParseResult<?> result = secondModule.parseOrGetSnippet(definition(otherSpelling));
+
+    assertEquals(1, parseCount.get());
+    assertThat(result.getBuildErrors()).isEmpty();
+    SnippetDirective directive = SnippetDirective.create("snip_one", otherSpelling);
+    assertEquals(directive, secondModule.getSnippetMap().get(directive).getDirective());
+    assertThat(secondModule.getRenderedSnippetMap().get(directive).getLines())
+        .containsExactly("code");
+  }
+
+  @Test
+  void changedFileIsParsedAgain() throws IOException {
+    Path srcFile = sourceDirectory.resolve("test.java");
+    Files.write(srcFile, Arrays.asList("//@@ snip_one", "code", "//@@ snip_one"));
+    new SnippetCache(parsedSourceFiles).parseOrGetSnippet(definition(srcFile));
+
+    Files.write(srcFile, Arrays.asList("//@@ snip_one", "new code", "//@@ snip_one"));
+    Files.setLastModifiedTime(srcFile, FileTime.fromMillis(1000));
+    SnippetCache nextBuild = new SnippetCache(parsedSourceFiles);
+    nextBuild.parseOrGetSnippet(definition(srcFile));
+
+    assertEquals(2, parseCount.get());
+    assertThat(
+            nextBuild
+                .getSnippetMap()
+                .get(SnippetDirective.create("snip_one", srcFile))
+                .getLines())
+        .containsExactly("new code");
+  }
+
+  private SnippetDirectiveDefinition definition(Path srcFile) {
+    return SnippetDirectiveDefinition.create(
+        SnippetDirective.create("snip_one", srcFile), 1, pathFactory.apply("content.md"));
+  }
+}
@@ -0,0 +1,136 @@
+package com.github.ryancerf;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SnippetCacheTest extends FileSystemTest {
+
+  @Test
+  void sourceFileParsedOnceAcrossThreads() throws Exception {
+    Path srcFile = sourceDirectory.resolve("test.java");
+    Files.write(srcFile, Arrays.asList("//@@ snip_one", "code", "//@@ snip_one"));
+
+    AtomicInteger parseCount = new AtomicInteger();
+    SnippetCache snippetCache =
+        new SnippetCache(
+            new SourceFileParser(textFileReader) {
+              @Override
+              ParseResult<List<Snippet>> extractSnippetBlocks(
+                  SnippetDirectiveDefinition directiveDefinition) {
+                parseCount.incrementAndGet();
+                return super.extractSnippetBlocks(directiveDefinition);
+              }
+            },
+            new IndentationFormatter());
+
+    List<Callable<ParseResult<Optional<Snippet>>>> tasks = new ArrayList<>();
+    for (int i = 0; i < 64; i++) {
+      SnippetDirectiveDefinition definition =
+          SnippetDirectiveDefinition.create(
+              SnippetDirective.create("snip_one", srcFile), i, pathFactory.apply("content.md"));
+      tasks.add(() -> snippetCache.parseOrGetSnippet(definition));
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      for (Future<ParseResult<Optional<Snippet>>> future : executor.invokeAll(tasks)) {
+        assertThat(future.get().getResult().get().getLines()).containsExactly("code");
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(1, parseCount.get());
+  }
+
+  @Test
+  void snippetsRenderedOnceWithoutChangingParsedLines() throws IOException {
+    Path srcFile = sourceDirectory.resolve("test.java");
+    Files.write(
+        srcFile, Arrays.asList("  //@@ snip_one", "    one", "      two", "  //@@ snip_one"));
+    SnippetCache snippetCache =
+        new SnippetCache(new SourceFileParser(textFileReader), new IndentationFormatter());
+    SnippetDirective directive = SnippetDirective.create("snip_one", srcFile);
+
+    snippetCache.parseOrGetSnippet(
+        SnippetDirectiveDefinition.create(directive, 1, pathFactory.apply("content.md")));
+
+    assertThat(snippetCache.getSnippetMap().get(directive).getLines())
+        .containsExactly("    one", "      two");
+    RenderedSnippet rendered = snippetCache.getRenderedSnippetMap().get(directive);
+    assertThat(rendered.getLines()).containsExactly("one", "  two");
+    assertEquals("one\r\n  two", rendered.text("\r\n"));
+    assertThat(rendered.bytes("\n", StandardCharsets.UTF_8))
+        .isSameInstanceAs(rendered.bytes("\n", StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void onlyLookedUpSnippetsAreRendered() throws IOException {
+    Path srcFile = sourceDirectory.resolve("test.java");
+    Files.write(
+        srcFile,
+        Arrays.asList(
+            "//@@ snip_one", "    one", "//@@ snip_one", "//@@ snip_two", "two", "//@@ snip_two"));
+    SnippetCache snippetCache =
+        new SnippetCache(new SourceFileParser(textFileReader, 0), new IndentationFormatter());
+    SnippetDirective directive = SnippetDirective.create("snip_one", srcFile);
+
+    snippetCache.parseOrGetSnippet(
+        SnippetDirectiveDefinition.create(directive, 1, pathFactory.apply("content.md")));
+
+    assertThat(snippetCache.getSnippetMap()).hasSize(2);
+    assertThat(snippetCache.getSnippetMap().get(directive).isLazy()).isTrue();
+    assertThat(snippetCache.getRenderedSnippetMap().keySet()).containsExactly(directive);
+    assertThat(snippetCache.getRenderedSnippetMap().get(directive).getLines())
+        .containsExactly("one");
+  }
+
+  @Test
+  void memoryBudgetEvictsLeastRecentlyUsedSourceFiles() throws IOException {
+    Path first = sourceDirectory.resolve("first.java");
+    Files.write(first, Arrays.asList("//@@ snip_one", "one", "//@@ snip_one"));
+    Path second = sourceDirectory.resolve("second.java");
+    Files.write(second, Arrays.asList("//@@ snip_two", "two", "//@@ snip_two"));
+    // Room for one of the files.
+    SnippetCache snippetCache =
+        new SnippetCache(
+            new ParsedSourceFiles(new SourceFileParser(textFileReader), new IndentationFormatter()),
+            500);
+    SnippetDirectiveDefinition one =
+        SnippetDirectiveDefinition.create(
+            SnippetDirective.create("snip_one", first), 1, pathFactory.apply("content.md"));
+    SnippetDirectiveDefinition two =
+        SnippetDirectiveDefinition.create(
+            SnippetDirective.create("snip_two", second), 2, pathFactory.apply("content.md"));
+
+    assertThat(snippetCache.parseOrGetSnippet(one).getResult().isPresent()).isTrue();
+    assertThat(snippetCache.parseOrGetSnippet(two).getResult().isPresent()).isTrue();
+
+    assertEquals(1, snippetCache.getEvictions());
+    assertThat(snippetCache.getSnippetMap().keySet()).containsExactly(two.getDirective());
+    assertThat(snippetCache.getRenderedSnippetMap()).isEmpty();
+    // Parsed again.
+    assertThat(
+            snippetCache
+                .getRenderedSnippets(Collections.singletonList(one))
+                .get(one.getDirective())
+                .getLines())
+        .containsExactly("one");
+    assertEquals(2, snippetCache.getEvictions());
+  }
+}
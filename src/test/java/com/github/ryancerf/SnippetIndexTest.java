@@ -0,0 +1,139 @@
+package com.github.ryancerf;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SnippetIndexTest extends FileSystemTest {
+
+  private Path srcFile;
+  private Path indexPath;
+  private AtomicInteger parseCount;
+
+  @Override
+  @BeforeEach
+  void setUp() throws IOException {
+    super.setUp();
+    this.srcFile = sourceDirectory.resolve("test.java");
+    this.indexPath = pathFactory.apply("./target/choss/snippet-index.bin");
+    this.parseCount = new AtomicInteger();
+    Files.write(
+        srcFile,
+        Arrays.asList(
+            "//@@ snip_one", "  code", "//@@ snip_one", "//@@ twice", "//@@ twice", "//@@ twice"));
+    Files.setLastModifiedTime(srcFile, FileTime.fromMillis(1000));
+
+    SnippetCache firstInvocation = newSnippetCache();
+    firstInvocation.loadSnippetIndex(indexPath);
+    firstInvocation.parseOrGetSnippet(definition("snip_one"));
+    firstInvocation.saveSnippetIndex(indexPath);
+    assertEquals(1, parseCount.get());
+  }
+
+  @Test
+  void unchangedFileIsNotParsed() {
+    SnippetCache snippetCache = newSnippetCache();
+    snippetCache.loadSnippetIndex(indexPath);
+
+    ParseResult<Optional<Snippet>> snippet = snippetCache.parseOrGetSnippet(definition("snip_one"));
+
+    assertEquals(1, parseCount.get());
+    assertEquals(1, snippet.getResult().get().getLineNumber());
+    assertThat(snippet.getResult().get().getLines()).containsExactly("  code");
+    assertThat(
+            snippetCache
+                .getRenderedSnippetMap()
+                .get(SnippetDirective.create("snip_one", srcFile))
+                .getLines())
+        .containsExactly("code");
+    BuildError duplicateTag = snippet.getBuildErrors().get(0);
+    assertThat(duplicateTag).isInstanceOf(BuildError.DuplicateTagError.class);
+    assertThat(((BuildError.DuplicateTagError) duplicateTag).getLineNumbers())
+        .containsExactly(4, 6)
+        .inOrder();
+  }
+
+  @Test
+  void touchedFileWithSameContentIsNotParsed() throws IOException {
+    Files.setLastModifiedTime(srcFile, FileTime.fromMillis(2000));
+    SnippetCache snippetCache = newSnippetCache();
+    snippetCache.loadSnippetIndex(indexPath);
+
+    snippetCache.parseOrGetSnippet(definition("snip_one"));
+    assertEquals(1, parseCount.get());
+  }
+
+  @Test
+  void changedFileIsParsed() throws IOException {
+    Files.write(srcFile, Arrays.asList("//@@ snip_one", "new code", "//@@ snip_one"));
+    Files.setLastModifiedTime(srcFile, FileTime.fromMillis(2000));
+    SnippetCache snippetCache = newSnippetCache();
+    snippetCache.loadSnippetIndex(indexPath);
+
+    ParseResult<Optional<Snippet>> snippet = snippetCache.parseOrGetSnippet(definition("snip_one"));
+    assertEquals(2, parseCount.get());
+    assertThat(snippet.getResult().get().getLines()).containsExactly("new code");
+    assertThat(snippet.getBuildErrors()).isEmpty();
+  }
+
+  @Test
+  void memoryBudgetTurnsTheIndexOff() throws IOException {
+    Files.delete(indexPath);
+    SnippetCache snippetCache =
+        new SnippetCache(
+            new ParsedSourceFiles(new SourceFileParser(textFileReader), new IndentationFormatter()),
+            1024);
+    snippetCache.loadSnippetIndex(indexPath);
+
+    assertThat(snippetCache.parseOrGetSnippet(definition("snip_one")).getResult().isPresent())
+        .isTrue();
+    snippetCache.saveSnippetIndex(indexPath);
+    assertThat(Files.exists(indexPath)).isFalse();
+  }
+
+  @Test
+  void indexOfAnotherCharsetIsIgnored() {
+    String commentSyntaxes = CommentSyntaxes.DEFAULT.toString();
+    assertEquals(1, SnippetIndex.load(indexPath, StandardCharsets.UTF_8, commentSyntaxes).size());
+    assertEquals(
+        0, SnippetIndex.load(indexPath, StandardCharsets.ISO_8859_1, commentSyntaxes).size());
+  }
+
+  @Test
+  void indexOfOtherCommentSyntaxesIsIgnored() {
+    String commentSyntaxes =
+        new CommentSyntaxes(Collections.singletonMap("java", "//,#")).toString();
+    assertEquals(0, SnippetIndex.load(indexPath, StandardCharsets.UTF_8, commentSyntaxes).size());
+  }
+
+  private SnippetCache newSnippetCache() {
+    return new SnippetCache(
+        new SourceFileParser(textFileReader) {
+          @Override
+          ParseResult<List<Snippet>> extractSnippetBlocks(
+              SnippetDirectiveDefinition directiveDefinition) {
+            parseCount.incrementAndGet();
+            return super.extractSnippetBlocks(directiveDefinition);
+          }
+        },
+        new IndentationFormatter());
+  }
+
+  private SnippetDirectiveDefinition definition(String tag) {
+    return SnippetDirectiveDefinition.create(
+        SnippetDirective.create(tag, srcFile), 1, pathFactory.apply("content.md"));
+  }
+}
@@ -3,7 +3,9 @@ package com.github.ryancerf;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -13,21 +15,18 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 class SnippetInjectorTest extends FileSystemTest {
 
-  private SnippetDirectiveParser snippetDirectiveParser;
-  private IndentationFormatter indentationFormatter;
   private SnippetInjector snippetInjector;
 
   @Override
   @BeforeEach
   void setUp() throws IOException {
     super.setUp();
-    this.snippetDirectiveParser = new SnippetDirectiveParser(pathFactory);
-    this.indentationFormatter = new IndentationFormatter();
-    this.snippetInjector = new SnippetInjector(snippetDirectiveParser, indentationFormatter);
+    this.snippetInjector = new SnippetInjector(textFileReader);
   }
 
   @Test
@@ -39,17 +38,214 @@ class SnippetInjectorTest extends FileSystemTest {
         Arrays.asList("a", "@@snip [snip_one](./some/file/path)", "b"),
         StandardCharsets.UTF_8);
 
-    Map<SnippetDirective, Snippet> snippetCache = new HashMap<>();
+    Map<SnippetDirective, RenderedSnippet> snippetCache = new HashMap<>();
     SnippetDirective directive =
         SnippetDirective.create("snip_one", pathFactory.apply("./some/file/path"));
 
     // Put a parsed snippet into the cache.
-    snippetCache.put(
-        directive, new Snippet(directive, 0, Collections.singletonList("InjectedLine")));
+    snippetCache.put(directive, new RenderedSnippet(Collections.singletonList("InjectedLine")));
 
     Path path = pathFactory.apply(contentFile.toString());
-    List<String> injected = snippetInjector.injectSnippets(path, snippetCache);
+    List<String> injected =
+        snippetInjector.injectSnippets(
+            path,
+            Collections.singletonList(SnippetDirectiveDefinition.create(directive, 2, path)),
+            snippetCache);
 
     assertEquals(Arrays.asList("a", "InjectedLine", "b"), injected);
   }
+
+  @Test
+  void writeWithSnippets() throws IOException {
+    Path contentFile = contentDirectory.resolve("content.md");
+    Files.write(
+        contentFile,
+        Arrays.asList("a", "@@snip [snip_one](./some/file/path)", "b"),
+        StandardCharsets.UTF_8);
+
+    Map<SnippetDirective, RenderedSnippet> snippetCache = new HashMap<>();
+    SnippetDirective directive =
+        SnippetDirective.create("snip_one", pathFactory.apply("./some/file/path"));
+    snippetCache.put(directive, new RenderedSnippet(Arrays.asList("one", "two")));
+
+    Path destination = contentDirectory.resolve("written.md");
+    snippetInjector.writeWithSnippets(
+        contentFile,
+        Collections.singletonList(SnippetDirectiveDefinition.create(directive, 2, contentFile)),
+        snippetCache,
+        destination);
+
+    assertEquals(
+        Arrays.asList("a", "one", "two", "b"),
+        Files.readAllLines(destination, StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void onlyInjectsAtDirectiveLines() throws IOException {
+    // The second directive line was not reported by the content file parser, so it is kept as is.
+    Path contentFile = contentDirectory.resolve("content.md");
+    Files.write(
+        contentFile,
+        Arrays.asList("@@snip [snip_one](./some/file/path)", "@@snip [snip_one](./some/file/path)"),
+        StandardCharsets.UTF_8);
+
+    Map<SnippetDirective, RenderedSnippet> snippetCache = new HashMap<>();
+    SnippetDirective directive =
+        SnippetDirective.create("snip_one", pathFactory.apply("./some/file/path"));
+    snippetCache.put(directive, new RenderedSnippet(Collections.singletonList("Injected")));
+
+    List<String> injected =
+        snippetInjector.injectSnippets(
+            contentFile,
+            Collections.singletonList(SnippetDirectiveDefinition.create(directive, 1, contentFile)),
+            snippetCache);
+
+    assertEquals(Arrays.asList("Injected", "@@snip [snip_one](./some/file/path)"), injected);
+  }
+
+  @Test
+  void keepsLineEndings() throws IOException {
+    Path contentFile = contentDirectory.resolve("content.md");
+    Files.write(
+        contentFile,
+        "a\r\n@@snip [snip_one](./some/file/path)\r\nb".getBytes(StandardCharsets.UTF_8));
+
+    Map<SnippetDirective, RenderedSnippet> snippetCache = new HashMap<>();
+    SnippetDirective directive =
+        SnippetDirective.create("snip_one", pathFactory.apply("./some/file/path"));
+    snippetCache.put(directive, new RenderedSnippet(Arrays.asList("one", "two")));
+
+    Path destination = contentDirectory.resolve("written.md");
+    snippetInjector.writeWithSnippets(
+        contentFile,
+        Collections.singletonList(SnippetDirectiveDefinition.create(directive, 2, contentFile)),
+        snippetCache,
+        destination);
+
+    assertEquals(
+        "a\r\none\r\ntwo\r\nb",
+        new String(Files.readAllBytes(destination), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void copiesUntouchedBytesAsTheyAre() throws IOException {
+    Path contentFile = contentDirectory.resolve("content.md");
+    // Mixed line endings, trailing spaces and a byte that is not valid UTF-8.
+    byte[] before = "a  \r\n\u00e9\rb".getBytes(StandardCharsets.UTF_8);
+    byte[] directiveLine = "@@snip [snip_one](./some/file/path)\n".getBytes(StandardCharsets.UTF_8);
+    byte[] after = {'c', (byte) 0xff, '\n', '\n'};
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    content.write(before);
+    content.write('\n');
+    content.write(directiveLine);
+    content.write(after);
+    Files.write(contentFile, content.toByteArray());
+
+    Map<SnippetDirective, RenderedSnippet> snippetCache = new HashMap<>();
+    SnippetDirective directive =
+        SnippetDirective.create("snip_one", pathFactory.apply("./some/file/path"));
+    snippetCache.put(directive, new RenderedSnippet(Arrays.asList("one", "two")));
+
+    Path destination = contentDirectory.resolve("written.md");
+    snippetInjector.writeWithSnippets(
+        contentFile,
+        Collections.singletonList(SnippetDirectiveDefinition.create(directive, 4, contentFile)),
+        snippetCache,
+        destination);
+
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    expected.write(before);
+    expected.write("\none\ntwo\n".getBytes(StandardCharsets.UTF_8));
+    expected.write(after);
+    assertArrayEquals(expected.toByteArray(), Files.readAllBytes(destination));
+  }
+
+  @Test
+  void splicesLinesThatSpanSeveralReads() throws IOException {
+    Path contentFile = contentDirectory.resolve("content.md");
+    Files.write(
+        contentFile,
+        ("a\r\n@@snip [snip_one](./some/file/path)\r\nb\r"
+                + "@@snip [snip_one](./some/file/path)\r\n\nc\n"
+                + "@@snip [snip_one](./some/file/path)")
+            .getBytes(StandardCharsets.UTF_8));
+
+    Map<SnippetDirective, RenderedSnippet> snippetCache = new HashMap<>();
+    SnippetDirective directive =
+        SnippetDirective.create("snip_one", pathFactory.apply("./some/file/path"));
+    snippetCache.put(directive, new RenderedSnippet(Arrays.asList("one", "two")));
+    List<SnippetDirectiveDefinition> directives =
+        Arrays.asList(
+            SnippetDirectiveDefinition.create(directive, 2, contentFile),
+            SnippetDirectiveDefinition.create(directive, 4, contentFile),
+            SnippetDirectiveDefinition.create(directive, 7, contentFile));
+
+    Path destination = contentDirectory.resolve("written.md");
+    // Every size splits a line, or a "\r\n", between two reads somewhere.
+    for (int bufferSize = 1; bufferSize <= 16; bufferSize++) {
+      new SnippetInjector(textFileReader, bufferSize)
+          .writeWithSnippets(contentFile, directives, snippetCache, destination);
+
+      assertEquals(
+          "a\r\none\r\ntwo\r\nb\rone\r\ntwo\r\n\nc\none\ntwo",
+          new String(Files.readAllBytes(destination), StandardCharsets.UTF_8),
+          "buffer size " + bufferSize);
+    }
+  }
+
+  @Test
+  void writeWithSnippetsInCharsetWithByteOrderMark() throws IOException {
+    TextFileReader utf16 = new TextFileReader(StandardCharsets.UTF_16);
+    Path contentFile = contentDirectory.resolve("content.md");
+    Files.write(
+        contentFile,
+        Arrays.asList("a", "@@snip [snip_one](./some/file/path)", "b"),
+        StandardCharsets.UTF_16);
+
+    Map<SnippetDirective, RenderedSnippet> snippetCache = new HashMap<>();
+    SnippetDirective directive =
+        SnippetDirective.create("snip_one", pathFactory.apply("./some/file/path"));
+    snippetCache.put(directive, new RenderedSnippet(Arrays.asList("one", "tw\u00f6")));
+
+    Path destination = contentDirectory.resolve("written.md");
+    new SnippetInjector(utf16)
+        .writeWithSnippets(
+            contentFile,
+            Collections.singletonList(SnippetDirectiveDefinition.create(directive, 2, contentFile)),
+            snippetCache,
+            destination);
+
+    assertEquals(
+        Arrays.asList("a", "one", "tw\u00f6", "b"),
+        Files.readAllLines(destination, StandardCharsets.UTF_16));
+  }
+
+  @Test
+  void emptySnippetRemovesTheDirectiveLine() throws IOException {
+    // UTF-8 is spliced in the bytes of the content file, UTF-16LE reuses the bytes of rendered
+    // snippets and UTF-16 writes through a writer.
+    for (Charset charset :
+        Arrays.asList(
+            StandardCharsets.UTF_8, StandardCharsets.UTF_16LE, StandardCharsets.UTF_16)) {
+      Path contentFile = contentDirectory.resolve("content.md");
+      Files.write(
+          contentFile, Arrays.asList("a", "@@snip [snip_one](./some/file/path)", "b"), charset);
+
+      Map<SnippetDirective, RenderedSnippet> snippetCache = new HashMap<>();
+      SnippetDirective directive =
+          SnippetDirective.create("snip_one", pathFactory.apply("./some/file/path"));
+      snippetCache.put(directive, new RenderedSnippet(Collections.emptyList()));
+
+      Path destination = contentDirectory.resolve("written.md");
+      new SnippetInjector(new TextFileReader(charset))
+          .writeWithSnippets(
+              contentFile,
+              Collections.singletonList(
+                  SnippetDirectiveDefinition.create(directive, 2, contentFile)),
+              snippetCache,
+              destination);
+
+      assertEquals(Arrays.asList("a", "b"), Files.readAllLines(destination, charset));
+    }
+  }
 }
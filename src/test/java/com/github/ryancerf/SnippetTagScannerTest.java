@@ -0,0 +1,96 @@
+package com.github.ryancerf;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SnippetTagScannerTest {
+
+  @Test
+  void findsTags() {
+    assertEquals("snip", SnippetTagScanner.DEFAULT.findTag("//@@snip"));
+    assertEquals("snip", SnippetTagScanner.DEFAULT.findTag("  //  @@  snip"));
+    assertEquals(
+        "snip123_0House", SnippetTagScanner.DEFAULT.findTag("// @@  snip123_0House  GO!!"));
+    assertNull(SnippetTagScanner.DEFAULT.findTag("// @@  !#@snip123_0House  GO!!"));
+    assertNull(SnippetTagScanner.DEFAULT.findTag("int a = 1; // @@ snip"));
+    assertNull(SnippetTagScanner.DEFAULT.findTag("// @ @ snip"));
+    assertNull(SnippetTagScanner.DEFAULT.findTag(""));
+  }
+
+  @Test
+  void findsTagsInEveryCommentSyntax() {
+    SnippetTagScanner scanner =
+        new SnippetTagScanner(Arrays.asList("#", "--", "<!--", "/*", "//"));
+    assertEquals("snip", scanner.findTag("# @@ snip"));
+    assertEquals("snip", scanner.findTag("  --@@snip"));
+    assertEquals("snip", scanner.findTag("<!-- @@ snip -->"));
+    assertEquals("snip", scanner.findTag("/* @@ snip */"));
+    assertEquals("snip", scanner.findTag("// @@ snip"));
+    assertNull(scanner.findTag("- @@ snip"));
+    assertNull(scanner.findTag("<! @@ snip"));
+    assertNull(scanner.findTag("## @@ snip"));
+    assertNull(scanner.findTag("; @@ snip"));
+    assertNull(scanner.findTag("key: value # @@ snip"));
+  }
+
+  @Test
+  void rejectsInvalidCommentStarts() {
+    assertThrows(
+        IllegalArgumentException.class, () -> new SnippetTagScanner(Arrays.asList("#", "")));
+    assertThrows(
+        IllegalArgumentException.class, () -> new SnippetTagScanner(Arrays.asList("# #")));
+    assertThrows(
+        IllegalArgumentException.class, () -> new SnippetTagScanner(Arrays.asList("@")));
+  }
+
+  @Test
+  void matchesRegex() {
+    List<String> lines =
+        Arrays.asList(
+            "",
+            "/",
+            "//",
+            "//@@",
+            "//@@ ",
+            "//@@ 1snip",
+            "//@@ _snip",
+            "//@@ snip ",
+            "//@@ snip\u0085 trailing",
+            "//@@ snip\r",
+            "\n\t\u000B\f\r//\t@@\tsnip",
+            "// @@ snip-with-dash",
+            "/ / @@ snip",
+            "# @@ snip",
+            "public class Foo {");
+    for (String line : lines) {
+      assertMatchesRegex(line);
+    }
+
+    // Random lines built from the characters that matter to the grammar.
+    char[] alphabet = " \t\r\n\u000B\u0085\u2028/@aZ9_-!".toCharArray();
+    Random random = new Random(42);
+    for (int i = 0; i < 20_000; i++) {
+      StringBuilder line = new StringBuilder();
+      int length = random.nextInt(12);
+      for (int j = 0; j < length; j++) {
+        line.append(alphabet[random.nextInt(alphabet.length)]);
+      }
+      assertMatchesRegex(line.toString());
+      assertMatchesRegex("// @@" + line);
+    }
+  }
+
+  private static void assertMatchesRegex(String line) {
+    Matcher matcher = SourceFileParser.SNIPPET_TAG_REGEX.matcher(line);
+    String expected = matcher.matches() ? matcher.group(1) : null;
+    assertEquals(expected, SnippetTagScanner.DEFAULT.findTag(line), "line: " + line);
+  }
+}
@@ -7,6 +7,7 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -118,4 +119,77 @@ public class SourceFileParserTest extends FileSystemTest {
         Arrays.asList("snip", "snip123_0house"),
         foundSnippets.stream().map(Snippet::getTag).collect(Collectors.toList()));
   }
+
+  @Test
+  void lazySnippetsHaveTheSameLines() throws IOException {
+    Path srcFile = sourceDirectory.resolve("test.java");
+    String text =
+        "before\r\n"
+            + "//@@ snip_one\r\n"
+            + "  caf\u00e9 // @@ not a tag\r"
+            + "\r\n"
+            + "// @@ snip_one\n"
+            + "//@@ snip_two\n"
+            + "//@@ snip_one\n"
+            + "last line";
+    Files.write(srcFile, text.getBytes(StandardCharsets.UTF_8));
+    SnippetDirectiveDefinition definition = createSnippetDirectiveHelper(srcFile.toString());
+
+    ParseResult<List<Snippet>> eager = sourceFileParser.extractSnippetBlocks(definition);
+    ParseResult<List<Snippet>> lazy =
+        new SourceFileParser(textFileReader, 0).extractSnippetBlocks(definition);
+
+    assertEquals(2, lazy.getResult().size());
+    assertEquals(1, lazy.getBuildErrors().size());
+    assertEquals(eager.getBuildErrors(), lazy.getBuildErrors());
+    for (int i = 0; i < eager.getResult().size(); i++) {
+      Snippet lazySnippet = lazy.getResult().get(i);
+      assertThat(lazySnippet.isLazy()).isTrue();
+      assertEquals(eager.getResult().get(i).getTag(), lazySnippet.getTag());
+      assertEquals(eager.getResult().get(i).getLineNumber(), lazySnippet.getLineNumber());
+      assertEquals(eager.getResult().get(i).getLines(), lazySnippet.getLines());
+    }
+    assertEquals(
+        Arrays.asList("  caf\u00e9 // @@ not a tag", ""), lazy.getResult().get(0).getLines());
+  }
+
+  @Test
+  void findsTagsInTheCommentsOfTheFileExtension() throws IOException {
+    Path yamlFile = sourceDirectory.resolve("config.yaml");
+    Files.write(yamlFile, Arrays.asList("# @@ some_tag", "key: value", "# @@ some_tag"));
+    Path sqlFile = sourceDirectory.resolve("query.SQL");
+    Files.write(sqlFile, Arrays.asList("-- @@ some_tag", "SELECT 1;", "-- @@ some_tag"));
+    Path javaFile = sourceDirectory.resolve("Test.java");
+    Files.write(javaFile, Arrays.asList("# @@ some_tag", "code", "# @@ some_tag"));
+    // '//' is still a comment start of the built in extensions.
+    Path htmlFile = sourceDirectory.resolve("page.html");
+    Files.write(
+        htmlFile,
+        Arrays.asList("<script>", "// @@ some_tag", "run();", "// @@ some_tag", "</script>"));
+
+    for (long lazyThreshold : new long[] {SourceFileParser.NEVER_LAZY, 0}) {
+      SourceFileParser parser =
+          new SourceFileParser(textFileReader, lazyThreshold, CommentSyntaxes.DEFAULT);
+      assertThat(linesOf(parser, yamlFile)).containsExactly("key: value");
+      assertThat(linesOf(parser, sqlFile)).containsExactly("SELECT 1;");
+      assertThat(linesOf(parser, htmlFile)).containsExactly("run();");
+      SnippetDirectiveDefinition javaDirective =
+          createSnippetDirectiveHelper(javaFile.toString());
+      assertThat(parser.extractSnippetBlocks(javaDirective).getResult()).isEmpty();
+    }
+
+    SourceFileParser javaWithHashes =
+        new SourceFileParser(
+            textFileReader,
+            SourceFileParser.NEVER_LAZY,
+            new CommentSyntaxes(Collections.singletonMap(".java", "//, #")));
+    assertThat(linesOf(javaWithHashes, javaFile)).containsExactly("code");
+  }
+
+  private List<String> linesOf(SourceFileParser parser, Path sourceFile) {
+    SnippetDirectiveDefinition directive = createSnippetDirectiveHelper(sourceFile.toString());
+    List<Snippet> snippets = parser.extractSnippetBlocks(directive).getResult();
+    assertEquals(1, snippets.size());
+    return snippets.get(0).getLines();
+  }
 }
@@ -0,0 +1,249 @@
+package com.github.ryancerf;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A generated docs tree for benchmarks and load tests, on Jimfs or in a temporary directory on
+ * disk.
+ *
+ * <p>Directive j of content file i references snippet j % snippetsPerSourceFile of source file
+ * (i + j % fanOut) % sourceFiles, so every source file is shared by several content files once
+ * there are more content files than source files.
+ *
+ * <p>Shipped in the test jar, so the benchmarks use the same trees.
+ */
+final class SyntheticDocsTree implements AutoCloseable {
+  static final String CONTENT_GLOB = "glob:**/*.md";
+  static final String JIMFS = "jimfs";
+  static final String DISK = "disk";
+
+  final FileSystem fileSystem;
+  final Function<String, Path> pathFactory;
+  final Path root;
+  final Path contentDirectory;
+  final Path sourceDirectory;
+  final Path targetDirectory;
+  final List<Path> contentFiles = new ArrayList<>();
+  final List<Path> sourceFiles = new ArrayList<>();
+
+  private SyntheticDocsTree(FileSystem fileSystem, Path root) {
+    this.fileSystem = fileSystem;
+    this.pathFactory = fileSystem::getPath;
+    this.root = root;
+    this.contentDirectory = root.resolve("docs/main");
+    this.sourceDirectory = root.resolve("docs/src");
+    this.targetDirectory = root.resolve("target/docs/main");
+  }
+
+  /**
+   * A tree where each content file references every snippet of one source file.
+   *
+   * @param fileSystem {@link #JIMFS} or {@link #DISK}.
+   * @param contentFiles number of content files.
+   * @param sourceFiles number of source files.
+   * @param snippetsPerSourceFile snippets in each source file, each content file references all.
+   * @param linesPerSnippet lines of code in each snippet.
+   */
+  static SyntheticDocsTree create(
+      String fileSystem,
+      int contentFiles,
+      int sourceFiles,
+      int snippetsPerSourceFile,
+      int linesPerSnippet)
+      throws IOException {
+    return new Builder()
+        .fileSystem(fileSystem)
+        .contentFiles(contentFiles)
+        .sourceFiles(sourceFiles)
+        .snippetsPerSourceFile(snippetsPerSourceFile)
+        .linesPerSnippet(linesPerSnippet)
+        .create();
+  }
+
+  private static SyntheticDocsTree create(Builder builder) throws IOException {
+    SyntheticDocsTree tree;
+    if (JIMFS.equals(builder.fileSystem)) {
+      FileSystem jimfs = Jimfs.newFileSystem(Configuration.unix());
+      tree = new SyntheticDocsTree(jimfs, jimfs.getPath("/work"));
+    } else if (DISK.equals(builder.fileSystem)) {
+      tree =
+          new SyntheticDocsTree(
+              FileSystems.getDefault(), Files.createTempDirectory("choss-synthetic"));
+    } else {
+      throw new IllegalArgumentException("Unknown file system: " + builder.fileSystem);
+    }
+    Files.createDirectories(tree.contentDirectory);
+    Files.createDirectories(tree.sourceDirectory);
+    for (int i = 0; i < builder.sourceFiles; i++) {
+      Path sourceFile = tree.sourceDirectory.resolve("Source" + i + ".java");
+      writeSourceFile(sourceFile, i, builder);
+      tree.sourceFiles.add(sourceFile);
+    }
+    for (int i = 0; i < builder.contentFiles; i++) {
+      // Spread content files over directories, like real docs.
+      Path contentFile =
+          tree.contentDirectory.resolve(
+              "section" + i % builder.directories + "/page" + i + ".md");
+      Files.createDirectories(contentFile.getParent());
+      List<Path> referencedSources = new ArrayList<>();
+      List<Integer> referencedSnippets = new ArrayList<>();
+      for (int j = 0; j < builder.directivesPerContentFile(); j++) {
+        referencedSources.add(tree.sourceFiles.get((i + j % builder.fanOut) % builder.sourceFiles));
+        referencedSnippets.add(j % builder.snippetsPerSourceFile);
+      }
+      Files.write(
+          contentFile,
+          contentFileLines(referencedSources, referencedSnippets),
+          StandardCharsets.UTF_8);
+      tree.contentFiles.add(contentFile);
+    }
+    // Some files that are not content files.
+    Files.write(tree.contentDirectory.resolve("config.yaml"), new byte[256]);
+    Files.write(tree.contentDirectory.resolve("image.png"), new byte[64 * 1024]);
+    return tree;
+  }
+
+  /** Streamed, so a source file of many megabytes is never held in memory. */
+  private static void writeSourceFile(Path sourceFile, int index, Builder builder)
+      throws IOException {
+    try (BufferedWriter writer = Files.newBufferedWriter(sourceFile, StandardCharsets.UTF_8)) {
+      writer.write("package example;\n\npublic class Source" + index + " {\n");
+      for (int s = 0; s < builder.snippetsPerSourceFile; s++) {
+        // Padding between snippets, so large files are not all snippets.
+        for (int p = 0; p < builder.paddingLinesPerSnippet; p++) {
+          writer.write("  private int field" + s + "_" + p + " = " + p + "; // not in a snippet\n");
+        }
+        writer.write("  void method" + s + "() {\n");
+        writer.write("    // @@ snippet_" + s + "\n");
+        for (int l = 0; l < builder.linesPerSnippet; l++) {
+          writer.write("    int value" + l + " = compute(" + s + ", " + l + "); // some code\n");
+        }
+        writer.write("    // @@ snippet_" + s + "\n");
+        writer.write("  }\n");
+      }
+      writer.write("}\n");
+    }
+  }
+
+  static List<String> contentFileLines(List<Path> sourceFiles, List<Integer> snippets) {
+    List<String> lines = new ArrayList<>();
+    lines.add("# A page");
+    for (int d = 0; d < sourceFiles.size(); d++) {
+      int s = snippets.get(d);
+      lines.add("");
+      lines.add("Some prose that explains snippet " + s + ". It is long enough to look like docs.");
+      lines.add("```java");
+      lines.add(" @@snip [snippet_" + s + "](" + sourceFiles.get(d) + ")");
+      lines.add("```");
+    }
+    return lines;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (fileSystem == FileSystems.getDefault()) {
+      List<Path> paths;
+      try (Stream<Path> walk = Files.walk(root)) {
+        paths = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+      }
+      for (Path path : paths) {
+        Files.deleteIfExists(path);
+      }
+    } else {
+      fileSystem.close();
+    }
+  }
+
+  static class Builder {
+    private String fileSystem = JIMFS;
+    private int contentFiles = 100;
+    private int sourceFiles = 20;
+    private int snippetsPerSourceFile = 10;
+    private int linesPerSnippet = 20;
+    private int paddingLinesPerSnippet = 0;
+    // Negative to reference as many snippets as a source file has.
+    private int directivesPerContentFile = -1;
+    private int fanOut = 1;
+    private int directories = 10;
+
+    /** {@link #JIMFS} or {@link #DISK}. */
+    Builder fileSystem(String fileSystem) {
+      this.fileSystem = fileSystem;
+      return this;
+    }
+
+    Builder contentFiles(int contentFiles) {
+      this.contentFiles = contentFiles;
+      return this;
+    }
+
+    Builder sourceFiles(int sourceFiles) {
+      this.sourceFiles = sourceFiles;
+      return this;
+    }
+
+    Builder snippetsPerSourceFile(int snippetsPerSourceFile) {
+      this.snippetsPerSourceFile = snippetsPerSourceFile;
+      return this;
+    }
+
+    /** Lines of code in each snippet. */
+    Builder linesPerSnippet(int linesPerSnippet) {
+      this.linesPerSnippet = linesPerSnippet;
+      return this;
+    }
+
+    /** Lines of code before each snippet that are not in any snippet. About 50 bytes each. */
+    Builder paddingLinesPerSnippet(int paddingLinesPerSnippet) {
+      this.paddingLinesPerSnippet = paddingLinesPerSnippet;
+      return this;
+    }
+
+    /** Snippet directives in each content file. Defaults to snippetsPerSourceFile. */
+    Builder directivesPerContentFile(int directivesPerContentFile) {
+      this.directivesPerContentFile = directivesPerContentFile;
+      return this;
+    }
+
+    /** Number of different source files the directives of a content file reference. */
+    Builder fanOut(int fanOut) {
+      this.fanOut = fanOut;
+      return this;
+    }
+
+    /** Number of directories the content files are spread over. */
+    Builder directories(int directories) {
+      this.directories = directories;
+      return this;
+    }
+
+    SyntheticDocsTree create() throws IOException {
+      if (contentFiles < 0 || sourceFiles < 1 || snippetsPerSourceFile < 1) {
+        throw new IllegalArgumentException("Need at least one source file and snippet");
+      }
+      if (fanOut < 1 || directories < 1) {
+        throw new IllegalArgumentException("fanOut and directories must be at least 1");
+      }
+      return SyntheticDocsTree.create(this);
+    }
+
+    private int directivesPerContentFile() {
+      return directivesPerContentFile < 0 ? snippetsPerSourceFile : directivesPerContentFile;
+    }
+  }
+}
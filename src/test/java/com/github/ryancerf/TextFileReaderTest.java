@@ -0,0 +1,89 @@
+package com.github.ryancerf;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TextFileReaderTest extends FileSystemTest {
+
+  @Test
+  void keepsLineTerminators() throws IOException {
+    Path file = contentDirectory.resolve("content.md");
+    Files.write(file, "a\nb\r\nc\rd".getBytes(StandardCharsets.UTF_8));
+
+    assertEquals(Arrays.asList("a\n", "b\r\n", "c\r", "d"), readLines(textFileReader, file));
+  }
+
+  @Test
+  void linesSpanningBufferBoundaries() throws IOException {
+    // A buffer of 3 chars splits lines and the '\r\n' pairs across reads.
+    LineReader reader = new LineReader(new StringReader("abcdefg\r\nhi\r\n\r\nj"), 3);
+    List<String> lines = new ArrayList<>();
+    while (reader.nextLine()) {
+      lines.add(reader.line() + reader.lineTerminator());
+    }
+    assertEquals(Arrays.asList("abcdefg\r\n", "hi\r\n", "\r\n", "j"), lines);
+  }
+
+  @Test
+  void emptyFile() throws IOException {
+    Path file = contentDirectory.resolve("content.md");
+    Files.write(file, new byte[0]);
+
+    assertEquals(new ArrayList<>(), readLines(textFileReader, file));
+  }
+
+  @Test
+  void memoryMappedFile(@TempDir Path directory) throws IOException {
+    Path file = directory.resolve("large.java");
+    Files.write(file, "héllo\nwörld\n".getBytes(StandardCharsets.UTF_8));
+
+    // Map every file regardless of size.
+    TextFileReader mappingReader = new TextFileReader(StandardCharsets.UTF_8, 0);
+    assertEquals(Arrays.asList("héllo\n", "wörld\n"), readLines(mappingReader, file));
+  }
+
+  @Test
+  void neverMapReadsOntoTheHeap(@TempDir Path directory) throws IOException {
+    Path file = directory.resolve("large.java");
+    Files.write(file, "héllo\nwörld\n".getBytes(StandardCharsets.UTF_8));
+
+    assertTrue(new TextFileReader(StandardCharsets.UTF_8, 0).readBytes(file).isDirect());
+    TextFileReader heapReader =
+        new TextFileReader(StandardCharsets.UTF_8, TextFileReader.NEVER_MAP);
+    assertFalse(heapReader.readBytes(file).isDirect());
+    assertEquals(Arrays.asList("héllo\n", "wörld\n"), readLines(heapReader, file));
+  }
+
+  @Test
+  void configuredCharset() throws IOException {
+    Path file = contentDirectory.resolve("content.md");
+    Files.write(file, "héllo".getBytes(StandardCharsets.ISO_8859_1));
+
+    TextFileReader latin1Reader = new TextFileReader(StandardCharsets.ISO_8859_1);
+    assertEquals(Arrays.asList("héllo"), readLines(latin1Reader, file));
+  }
+
+  private static List<String> readLines(TextFileReader textFileReader, Path file)
+      throws IOException {
+    List<String> lines = new ArrayList<>();
+    try (LineReader reader = textFileReader.open(file)) {
+      while (reader.nextLine()) {
+        lines.add(reader.line() + reader.lineTerminator());
+      }
+    }
+    return lines;
+  }
+}